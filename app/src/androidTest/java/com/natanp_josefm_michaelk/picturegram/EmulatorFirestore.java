@@ -0,0 +1,45 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.MemoryCacheSettings;
+
+/**
+ * Firestore client for instrumented tests, pointed at the Firestore emulator.
+ * Start it with `firebase emulators:start --only firestore` from cloud-function/.
+ *
+ * A separate FirebaseApp is used so the app's own instance (already set up by
+ * PictureGramApp) is left alone. The emulator host defaults to the host
+ * machine as seen from the Android emulator; pass
+ * -e firestoreEmulatorHost <host> to run on a device.
+ */
+class EmulatorFirestore {
+
+    private static final String APP_NAME = "firestore-emulator-test";
+    private static final int PORT = 8080; // emulators.firestore.port in firebase.json
+
+    static synchronized FirebaseFirestore get() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        for (FirebaseApp app : FirebaseApp.getApps(context)) {
+            if (APP_NAME.equals(app.getName())) return FirebaseFirestore.getInstance(app);
+        }
+
+        FirebaseOptions options = FirebaseOptions.fromResource(context);
+        FirebaseApp app = FirebaseApp.initializeApp(context, options, APP_NAME);
+        FirebaseFirestore firestore = FirebaseFirestore.getInstance(app);
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        firestore.useEmulator(arguments.getString("firestoreEmulatorHost", "10.0.2.2"), PORT);
+        // No local cache: every read in a test goes to the emulator
+        firestore.setFirestoreSettings(new FirebaseFirestoreSettings.Builder()
+                .setLocalCacheSettings(MemoryCacheSettings.newBuilder().build())
+                .build());
+        return firestore;
+    }
+}
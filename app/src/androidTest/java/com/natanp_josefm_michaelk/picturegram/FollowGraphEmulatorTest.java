@@ -0,0 +1,78 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * A follow is one commit, against the Firestore emulator (see
+ * EmulatorFirestore): both edges and the notification come from a single
+ * batch, so the server gives them the same commit time.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FollowGraphEmulatorTest {
+
+    private static FirebaseFirestore firestore;
+
+    @BeforeClass
+    public static void setUp() {
+        firestore = EmulatorFirestore.get();
+    }
+
+    @Test
+    public void followIsOneCommit() throws Exception {
+        String userId = "follower-" + UUID.randomUUID();
+        String targetId = "followed-" + UUID.randomUUID();
+        Notification notification = new Notification("follow", userId, targetId, targetId);
+
+        WriteBatch batch = FollowGraph.addFollow(firestore.batch(), firestore, userId, targetId, notification);
+        Tasks.await(batch.commit(), 30, TimeUnit.SECONDS);
+
+        DocumentSnapshot following = read(FollowGraph.followingRef(firestore, userId, targetId));
+        DocumentSnapshot follower = read(FollowGraph.followerRef(firestore, targetId, userId));
+        assertTrue(following.exists());
+        assertTrue(follower.exists());
+        // serverTimestamp() resolves to the commit time
+        Timestamp followedAt = following.getTimestamp("followedAt");
+        assertNotNull(followedAt);
+        assertEquals(followedAt, follower.getTimestamp("followedAt"));
+
+        QuerySnapshot notifications = Tasks.await(firestore.collection("notifications")
+                .whereEqualTo("toUserId", targetId).get(), 30, TimeUnit.SECONDS);
+        assertEquals(1, notifications.size());
+        assertEquals(userId, notifications.getDocuments().get(0).getString("fromUser"));
+    }
+
+    @Test
+    public void unfollowIsOneCommit() throws Exception {
+        String userId = "follower-" + UUID.randomUUID();
+        String targetId = "followed-" + UUID.randomUUID();
+        Tasks.await(FollowGraph.addFollow(firestore.batch(), firestore, userId, targetId, null).commit(),
+                30, TimeUnit.SECONDS);
+
+        Tasks.await(FollowGraph.addUnfollow(firestore.batch(), firestore, userId, targetId).commit(),
+                30, TimeUnit.SECONDS);
+
+        assertFalse(read(FollowGraph.followingRef(firestore, userId, targetId)).exists());
+        assertFalse(read(FollowGraph.followerRef(firestore, targetId, userId)).exists());
+    }
+
+    private static DocumentSnapshot read(DocumentReference ref) throws Exception {
+        return Tasks.await(ref.get(), 30, TimeUnit.SECONDS);
+    }
+}
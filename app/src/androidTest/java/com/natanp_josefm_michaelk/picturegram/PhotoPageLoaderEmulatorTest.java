@@ -0,0 +1,117 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * First-page latency of the profile grid on a 5,000-photo profile, against the
+ * Firestore emulator (see EmulatorFirestore). The paged query is compared with
+ * the single unbounded read the grid used to do.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhotoPageLoaderEmulatorTest {
+
+    private static final String TAG = "PhotoPageLoaderTest";
+    private static final int PHOTO_COUNT = 5000;
+    private static final int BATCH_SIZE = 500;
+
+    private static FirebaseFirestore firestore;
+    private static String authorId;
+
+    @BeforeClass
+    public static void seedProfile() throws Exception {
+        firestore = EmulatorFirestore.get();
+        authorId = "author-" + UUID.randomUUID();
+        long now = System.currentTimeMillis();
+        for (int start = 0; start < PHOTO_COUNT; start += BATCH_SIZE) {
+            WriteBatch batch = firestore.batch();
+            for (int i = start; i < start + BATCH_SIZE; i++) {
+                Map<String, Object> photo = new HashMap<>();
+                photo.put("authorId", authorId);
+                photo.put("uploadedBy", "author");
+                photo.put("description", "photo " + i);
+                photo.put("storageUrl", "https://example.com/" + i + ".jpg");
+                photo.put("timestamp", now - i * 1000L);
+                photo.put("likeCount", 0);
+                batch.set(firestore.collection("photos").document(), photo);
+            }
+            Tasks.await(batch.commit(), 60, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void firstPageIsOnePageNewestFirstAndFasterThanReadingEverything() throws Exception {
+        PhotoPageLoader loader = new PhotoPageLoader(
+                PhotoPageLoader.authorQuery(firestore, authorId), ProfileActivity.PHOTO_PAGE_SIZE);
+
+        long pageStarted = System.nanoTime();
+        List<UserPhoto> page = loadPage(loader);
+        long pageMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pageStarted);
+
+        long allStarted = System.nanoTime();
+        int all = Tasks.await(firestore.collection("photos").whereEqualTo("authorId", authorId).get(),
+                60, TimeUnit.SECONDS).size();
+        long allMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - allStarted);
+
+        Log.i(TAG, "First page of " + page.size() + " photos: " + pageMs + " ms; all "
+                + all + " photos: " + allMs + " ms");
+
+        assertEquals(ProfileActivity.PHOTO_PAGE_SIZE, page.size());
+        assertEquals("photo 0", page.get(0).getDescription());
+        assertTrue(loader.hasMore());
+        assertEquals(PHOTO_COUNT, all);
+        assertTrue("first page " + pageMs + " ms, everything " + allMs + " ms", pageMs < allMs);
+    }
+
+    @Test
+    public void pagesContinueWhereThePreviousOneEnded() throws Exception {
+        PhotoPageLoader loader = new PhotoPageLoader(
+                PhotoPageLoader.authorQuery(firestore, authorId), ProfileActivity.PHOTO_PAGE_SIZE);
+        loadPage(loader);
+        List<UserPhoto> second = loadPage(loader);
+
+        assertEquals("photo " + ProfileActivity.PHOTO_PAGE_SIZE, second.get(0).getDescription());
+    }
+
+    // loadNextPage calls back on the main thread; wait for it here
+    private static List<UserPhoto> loadPage(PhotoPageLoader loader) throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        List<UserPhoto> result = new ArrayList<>();
+        Exception[] error = new Exception[1];
+        loader.loadNextPage(new PhotoPageLoader.PageCallback() {
+            @Override
+            public void onPageLoaded(List<UserPhoto> photos, boolean hasMore) {
+                result.addAll(photos);
+                done.countDown();
+            }
+
+            @Override
+            public void onPageFailed(Exception e) {
+                error[0] = e;
+                done.countDown();
+            }
+        });
+        assertTrue("page did not load", done.await(30, TimeUnit.SECONDS));
+        if (error[0] != null) throw error[0];
+        return result;
+    }
+}
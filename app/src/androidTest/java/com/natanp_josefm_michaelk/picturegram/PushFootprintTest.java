@@ -0,0 +1,148 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.Manifest;
+import android.app.ActivityManager;
+import android.app.Instrumentation;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Resident memory and wakeups of the push path, now that pushes are handled in
+ * FCMTokenService and a worker instead of a START_STICKY foreground service.
+ *
+ * Each test measures the app process before and after a burst of data
+ * messages: PSS through ActivityManager, and the alarm wakeups of the package
+ * from `dumpsys alarm`. The figures are sent as instrumentation results
+ * (pss_kb_idle, pss_kb_after_burst, wakeups_burst), so a run on a build that
+ * still has the service can be compared with `am instrument -r`. The
+ * assertions cover what the old service cost on every launch: a foreground
+ * service and its notification, and its own wakeups.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PushFootprintTest {
+
+    private static final String TAG = "PushFootprintTest";
+
+    private static final int BURST_SIZE = 20;
+    // Burst window of NotificationRenderer plus time for the render worker
+    private static final long SETTLE_MS = 8000;
+    // Rendering 20 alerts should not need more than this on top of the idle process
+    private static final int MAX_PSS_GROWTH_KB = 20 * 1024;
+    // One render, maybe a second one for the end of the burst window
+    private static final int MAX_BURST_WAKEUPS = 2;
+
+    private static final Pattern WAKEUPS = Pattern.compile("(\\d+) wakeups");
+
+    private Instrumentation instrumentation;
+    private Context context;
+
+    @Before
+    public void setUp() {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        context = instrumentation.getTargetContext();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            instrumentation.getUiAutomation().grantRuntimePermission(
+                    context.getPackageName(), Manifest.permission.POST_NOTIFICATIONS);
+        }
+    }
+
+    @Test
+    public void burstOfPushesStaysSmallAndWakesRarely() throws IOException {
+        SystemClock.sleep(SETTLE_MS); // work left over from start-up
+        int idlePss = totalPssKb();
+        int idleWakeups = alarmWakeups();
+
+        for (int i = 0; i < BURST_SIZE; i++) {
+            Map<String, String> data = new HashMap<>();
+            data.put("type", NotificationRenderer.TYPE_NEW_PHOTO);
+            data.put("authorId", "footprint-author-" + (i % 3));
+            data.put("authorName", "author " + (i % 3));
+            data.put("body", "photo " + i);
+            // Same entry point as FCMTokenService.onMessageReceived
+            NotificationRenderer.onMessage(context, data);
+        }
+        SystemClock.sleep(SETTLE_MS);
+
+        int burstPss = totalPssKb();
+        int burstWakeups = alarmWakeups() - idleWakeups;
+        report(idlePss, burstPss, burstWakeups);
+
+        assertTrue("PSS grew by " + (burstPss - idlePss) + " kB", burstPss - idlePss <= MAX_PSS_GROWTH_KB);
+        assertTrue(burstWakeups + " alarm wakeups for one burst", burstWakeups <= MAX_BURST_WAKEUPS);
+    }
+
+    @Test
+    public void noForegroundServiceIsKeptRunning() throws IOException {
+        String services = shell("dumpsys activity services " + context.getPackageName());
+        assertFalse("A foreground service is running:\n" + services, services.contains("isForeground=true"));
+
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        for (StatusBarNotification notification : manager.getActiveNotifications()) {
+            assertEquals("Foreground service notification is shown: " + notification,
+                    0, notification.getNotification().flags & android.app.Notification.FLAG_FOREGROUND_SERVICE);
+        }
+    }
+
+    private int totalPssKb() {
+        ActivityManager manager = context.getSystemService(ActivityManager.class);
+        return manager.getProcessMemoryInfo(new int[]{Process.myPid()})[0].getTotalPss();
+    }
+
+    // Wakeup alarms of this package so far, from the per-package stats of dumpsys alarm
+    private int alarmWakeups() throws IOException {
+        String packageName = context.getPackageName();
+        int wakeups = 0;
+        for (String line : shell("dumpsys alarm").split("\n")) {
+            if (!line.contains(":" + packageName + " ")) continue;
+            Matcher matcher = WAKEUPS.matcher(line);
+            if (matcher.find()) wakeups += Integer.parseInt(matcher.group(1));
+        }
+        return wakeups;
+    }
+
+    private String shell(String command) throws IOException {
+        ParcelFileDescriptor output = instrumentation.getUiAutomation().executeShellCommand(command);
+        StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ParcelFileDescriptor.AutoCloseInputStream(output)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                text.append(line).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private void report(int idlePss, int burstPss, int burstWakeups) {
+        Log.i(TAG, "PSS idle " + idlePss + " kB, after burst " + burstPss + " kB, wakeups " + burstWakeups);
+        Bundle results = new Bundle();
+        results.putInt("pss_kb_idle", idlePss);
+        results.putInt("pss_kb_after_burst", burstPss);
+        results.putInt("wakeups_burst", burstWakeups);
+        instrumentation.sendStatus(0, results);
+    }
+}
@@ -0,0 +1,138 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.messaging.FirebaseMessaging;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * FCM topic subscriptions of this device: one topic per followed author,
+ * "author_{uid}". For authors with many followers the onPhotoUpload function
+ * publishes a single message to that topic instead of one per follower token.
+ *
+ * Follow and unfollow update the subscription once OutboxFlushWorker has
+ * written them, so a follow that never reaches Firestore (undone before the
+ * flush, or rejected) does not leave this device subscribed. Subscriptions
+ * belong to the device, not the user, so sync() (run at start-up, at most once
+ * a day, after sign-in and after a token refresh) lines them up with
+ * users/{uid}/following, which also covers follows made on another device.
+ * Sign-out drops them all.
+ */
+public class AuthorTopics {
+
+    private static final String TAG = "AuthorTopics";
+
+    private static final String PREFS = "author_topics_prefs";
+    private static final String KEY_TOPICS = "subscribed_topics";
+    private static final String KEY_SYNCED_USER = "synced_user";
+    private static final String KEY_SYNCED_AT = "synced_at";
+    private static final long SYNC_INTERVAL_MS = 24L * 60 * 60 * 1000;
+
+    // Keep in sync with authorTopic() in the functions
+    public static String topic(String authorId) {
+        return "author_" + authorId;
+    }
+
+    public static void subscribe(Context context, String authorId) {
+        String topic = topic(authorId);
+        FirebaseMessaging.getInstance().subscribeToTopic(topic)
+            .addOnFailureListener(e -> Log.w(TAG, "Error subscribing to " + topic, e));
+        updateTopics(context, topic, true);
+    }
+
+    public static void unsubscribe(Context context, String authorId) {
+        String topic = topic(authorId);
+        FirebaseMessaging.getInstance().unsubscribeFromTopic(topic)
+            .addOnFailureListener(e -> Log.w(TAG, "Error unsubscribing from " + topic, e));
+        updateTopics(context, topic, false);
+    }
+
+    /**
+     * Subscribe to every author the signed-in user follows and drop topics of
+     * authors they no longer follow. Skipped if done for this user within the
+     * last day.
+     */
+    public static void sync(Context context) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) return;
+        SharedPreferences prefs = prefs(context);
+        boolean sameUser = user.getUid().equals(prefs.getString(KEY_SYNCED_USER, null));
+        if (sameUser && System.currentTimeMillis() - prefs.getLong(KEY_SYNCED_AT, 0) < SYNC_INTERVAL_MS) {
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+        FollowGraph.userRef(FirebaseFirestore.getInstance(), user.getUid())
+            .collection(FollowGraph.FOLLOWING)
+            .get()
+            .addOnSuccessListener(following -> {
+                Set<String> wanted = new HashSet<>();
+                for (DocumentSnapshot doc : following.getDocuments()) {
+                    wanted.add(topic(doc.getId()));
+                }
+                Set<String> subscribed = new HashSet<>(prefs(appContext).getStringSet(KEY_TOPICS, new HashSet<>()));
+                FirebaseMessaging messaging = FirebaseMessaging.getInstance();
+                for (String topic : subscribed) {
+                    if (!wanted.contains(topic)) messaging.unsubscribeFromTopic(topic);
+                }
+                // Subscribing again is harmless and repairs a subscription that was lost
+                for (String topic : wanted) {
+                    messaging.subscribeToTopic(topic);
+                }
+                prefs(appContext).edit()
+                        .putStringSet(KEY_TOPICS, wanted)
+                        .putString(KEY_SYNCED_USER, user.getUid())
+                        .putLong(KEY_SYNCED_AT, System.currentTimeMillis())
+                        .apply();
+                Log.d(TAG, "Synced " + wanted.size() + " author topics");
+            })
+            .addOnFailureListener(e -> Log.w(TAG, "Error loading followed authors", e));
+    }
+
+    // Sync now even if done recently, e.g. after FCM replaced the token of this device
+    public static void resync(Context context) {
+        prefs(context).edit().remove(KEY_SYNCED_AT).apply();
+        sync(context);
+    }
+
+    // On sign-out: this device should no longer get the user's author messages.
+    // Completes once FCM has taken every unsubscribe (fails if one of them failed).
+    public static Task<Void> unsubscribeAll(Context context) {
+        SharedPreferences prefs = prefs(context);
+        FirebaseMessaging messaging = FirebaseMessaging.getInstance();
+        List<Task<Void>> unsubscribes = new ArrayList<>();
+        for (String topic : prefs.getStringSet(KEY_TOPICS, new HashSet<>())) {
+            unsubscribes.add(messaging.unsubscribeFromTopic(topic));
+        }
+        prefs.edit().clear().apply();
+        return Tasks.whenAll(unsubscribes);
+    }
+
+    // The returned set of getStringSet must not be modified, so it is copied
+    private static synchronized void updateTopics(Context context, String topic, boolean subscribed) {
+        SharedPreferences prefs = prefs(context);
+        Set<String> topics = new HashSet<>(prefs.getStringSet(KEY_TOPICS, new HashSet<>()));
+        if (subscribed) {
+            topics.add(topic);
+        } else {
+            topics.remove(topic);
+        }
+        prefs.edit().putStringSet(KEY_TOPICS, topics).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -1,123 +0,0 @@
-package com.natanp_josefm_michaelk.picturegram;
-
-import android.app.NotificationChannel;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.app.Service;
-import android.content.Context;
-import android.content.Intent;
-import android.os.Build;
-import android.os.Handler;
-import android.os.IBinder;
-import android.os.Looper;
-import android.util.Log;
-
-import androidx.core.app.NotificationCompat;
-
-import com.google.firebase.messaging.RemoteMessage;
-
-public class BackgroundNotificationService extends Service {
-    private static final String CHANNEL_ID = "background_notification_channel";
-    private static final int NOTIFICATION_ID = 1;
-    private static final int FOREGROUND_NOTIFICATION_ID = 2;
-    private static final String TAG = "BackgroundNotificationService";
-    private Handler handler;
-    private Runnable notificationRunnable;
-
-    @Override
-    public void onCreate() {
-        super.onCreate();
-        createNotificationChannel();
-        handler = new Handler(Looper.getMainLooper());
-    }
-
-    @Override
-    public int onStartCommand(Intent intent, int flags, int startId) {
-        // Start as a foreground service
-        startForeground(FOREGROUND_NOTIFICATION_ID, createForegroundNotification());
-        
-        // Handle incoming FCM message if present
-        if (intent != null && intent.hasExtra("message")) {
-            RemoteMessage message = intent.getParcelableExtra("message");
-            if (message != null) {
-                handleFCMessage(message);
-            }
-        }
-        
-        return START_STICKY;
-    }
-
-    private void handleFCMessage(RemoteMessage message) {
-        String title = message.getNotification() != null ? 
-            message.getNotification().getTitle() : "New Message";
-        String body = message.getNotification() != null ? 
-            message.getNotification().getBody() : "You have a new message";
-
-        showNotification(title, body);
-    }
-
-    @Override
-    public void onDestroy() {
-        super.onDestroy();
-        // Remove callbacks when service is destroyed
-        if (handler != null && notificationRunnable != null) {
-            handler.removeCallbacks(notificationRunnable);
-        }
-    }
-
-    @Override
-    public IBinder onBind(Intent intent) {
-        return null;
-    }
-
-    private void createNotificationChannel() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            NotificationChannel channel = new NotificationChannel(
-                    CHANNEL_ID,
-                    "Background Notifications",
-                    NotificationManager.IMPORTANCE_HIGH
-            );
-            NotificationManager manager = getSystemService(NotificationManager.class);
-            manager.createNotificationChannel(channel);
-        }
-    }
-
-    private android.app.Notification createForegroundNotification() {
-        Intent notificationIntent = new Intent(this, SplashActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                this,
-                0,
-                notificationIntent,
-                PendingIntent.FLAG_IMMUTABLE
-        );
-
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setSmallIcon(R.drawable.ic_launcher_foreground)
-                .setContentTitle("PictureGram Service")
-                .setContentText("Running in background")
-                .setPriority(NotificationCompat.PRIORITY_LOW)
-                .setContentIntent(pendingIntent)
-                .build();
-    }
-
-    private void showNotification(String title, String body) {
-        Intent notificationIntent = new Intent(this, SplashActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                this,
-                0,
-                notificationIntent,
-                PendingIntent.FLAG_IMMUTABLE
-        );
-
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setSmallIcon(R.drawable.ic_launcher_foreground)
-                .setContentTitle(title)
-                .setContentText(body)
-                .setPriority(NotificationCompat.PRIORITY_HIGH)
-                .setContentIntent(pendingIntent)
-                .setAutoCancel(true);
-
-        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        manager.notify(NOTIFICATION_ID, builder.build());
-    }
-} 
\ No newline at end of file
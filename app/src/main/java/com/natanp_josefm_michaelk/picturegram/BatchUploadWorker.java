@@ -0,0 +1,154 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background upload of a multi-select batch. The files of all photos are
+ * uploaded in parallel through UploadScheduler, and once they are all in Storage
+ * the photo documents are written together in one WriteBatch, so the grid gets
+ * the whole batch at once instead of one round trip per photo.
+ *
+ * Uploaded URLs are saved in the pending queue as each photo finishes, so a
+ * retry only uploads the photos that are still missing. Only photos whose
+ * document was committed leave the queue; whatever is still missing after the
+ * last attempt stays queued (the work fails) and is resumed on the next start.
+ */
+public class BatchUploadWorker extends Worker {
+
+    private static final String TAG = "BatchUploadWorker";
+    private static final int MAX_ATTEMPTS = 8;
+
+    // Firestore limit of writes per batch
+    private static final int MAX_BATCH_WRITES = 500;
+
+    public static final String KEY_BATCH_ID = "batchId";
+
+    public BatchUploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        String batchId = getInputData().getString(KEY_BATCH_ID);
+        if (batchId == null) {
+            Log.e(TAG, "Missing batch ID");
+            return Result.failure();
+        }
+
+        List<PhotoUploadQueue.PendingUpload> batch = PhotoUploadQueue.getBatch(context, batchId);
+        List<PhotoUploadQueue.PendingUpload> toUpload = new ArrayList<>();
+        for (PhotoUploadQueue.PendingUpload upload : batch) {
+            // A cancelled photo has its local copy removed
+            if (!upload.isUploaded() && new File(upload.localPath).exists()) {
+                toUpload.add(upload);
+            }
+        }
+        Log.d(TAG, "Batch " + batchId + ": " + batch.size() + " photos, " + toUpload.size() + " to upload");
+
+        UploadScheduler scheduler = new UploadScheduler(
+                PhotoUploadQueue.getBatchConcurrency(context, UploadScheduler.DEFAULT_CONCURRENCY));
+        List<UploadScheduler.UploadJob> jobs = new ArrayList<>();
+        for (PhotoUploadQueue.PendingUpload upload : toUpload) {
+            jobs.add(() -> {
+                PhotoUploadJob.UploadedUrls urls = PhotoUploadJob.upload(
+                        context, upload.authorId, upload.photoId, new File(upload.localPath));
+                upload.storageUrl = urls.storageUrl;
+                upload.thumbUrl = urls.thumbUrl;
+                upload.mediumUrl = urls.mediumUrl;
+                return urls.bytes;
+            });
+        }
+
+        int[] failed = {0};
+        try {
+            scheduler.runAll(jobs, (index, error) -> {
+                PhotoUploadQueue.PendingUpload upload = toUpload.get(index);
+                if (error != null) {
+                    failed[0]++;
+                    Log.e(TAG, "Upload failed for photo: " + upload.photoId, error);
+                } else {
+                    PhotoUploadQueue.updatePending(context, upload);
+                }
+            });
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Batch upload interrupted: " + batchId);
+            return Result.retry();
+        }
+        PhotoUploadQueue.setBatchConcurrency(context, scheduler.getConcurrency());
+
+        boolean lastAttempt = getRunAttemptCount() + 1 >= MAX_ATTEMPTS;
+        if (failed[0] > 0 && !lastAttempt) {
+            Log.d(TAG, failed[0] + " uploads failed, retrying batch " + batchId);
+            return Result.retry();
+        }
+
+        // Photos deleted while uploading are no longer in the queue
+        List<PhotoUploadQueue.PendingUpload> ready = new ArrayList<>();
+        for (PhotoUploadQueue.PendingUpload upload : batch) {
+            if (upload.isUploaded() && PhotoUploadQueue.isPending(context, upload.photoId)) {
+                ready.add(upload);
+            }
+        }
+
+        try {
+            commitPhotoDocuments(ready);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to save photo documents for batch: " + batchId, e);
+            // Everything stays queued; on the last attempt PictureGramApp resumes it on the next start
+            return lastAttempt ? Result.failure() : Result.retry();
+        }
+        finish(ready);
+        Log.d(TAG, "Batch " + batchId + " saved: " + ready.size() + " photos");
+
+        if (failed[0] > 0) {
+            // Out of attempts: the photos that did not upload keep their record and
+            // local copy, and are tried again when the app next starts
+            Log.w(TAG, failed[0] + " photos of batch " + batchId + " kept in the queue");
+            return Result.failure();
+        }
+        return Result.success();
+    }
+
+    private void commitPhotoDocuments(List<PhotoUploadQueue.PendingUpload> uploads) throws Exception {
+        FirebaseFirestore firestore = FirebaseFirestore.getInstance();
+        for (int start = 0; start < uploads.size(); start += MAX_BATCH_WRITES) {
+            WriteBatch writeBatch = firestore.batch();
+            for (PhotoUploadQueue.PendingUpload upload
+                    : uploads.subList(start, Math.min(start + MAX_BATCH_WRITES, uploads.size()))) {
+                PhotoUploadJob.UploadedUrls urls = new PhotoUploadJob.UploadedUrls(
+                        upload.storageUrl, upload.thumbUrl, upload.mediumUrl, 0);
+                writeBatch.set(firestore.collection("photos").document(upload.photoId),
+                        PhotoUploadJob.photoDocument(upload.description, urls,
+                                upload.authorId, upload.authorName, upload.createdAt));
+            }
+            Tasks.await(writeBatch.commit());
+        }
+    }
+
+    // Drop committed photos from the queue and delete their local copies
+    private void finish(List<PhotoUploadQueue.PendingUpload> committed) {
+        for (PhotoUploadQueue.PendingUpload upload : committed) {
+            PhotoUploadQueue.removePending(getApplicationContext(), upload.photoId);
+            PhotoUploadJob.clearSession(getApplicationContext(), upload.photoId);
+            File localFile = new File(upload.localPath);
+            if (localFile.exists() && !localFile.delete()) {
+                Log.w(TAG, "Could not delete local copy: " + localFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.installations.FirebaseInstallations;
+import com.google.firebase.messaging.FirebaseMessaging;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * FCM tokens of a user, one per device: users/{uid}/devices/{installationId}
+ * holds the token of that app installation and when it was last seen. A second
+ * phone adds a document instead of overwriting the first one's token.
+ *
+ * register() runs on every start and sign-in, but only writes when the user,
+ * installation or token changed (checked against a hash kept in prefs), or
+ * when lastSeen is a day old. The pruneDeviceTokens function deletes devices
+ * that have not been seen for a month.
+ */
+public class DeviceTokenRegistry {
+
+    private static final String TAG = "DeviceTokenRegistry";
+
+    private static final String PREFS = "device_token_prefs";
+    private static final String KEY_HASH = "registered_hash";
+    private static final String KEY_WRITTEN_AT = "written_at";
+    private static final String KEY_LEGACY_CLEARED = "legacy_token_cleared";
+    // Refresh lastSeen this often even if nothing changed, so active devices are not pruned
+    private static final long LAST_SEEN_REFRESH_MS = 24L * 60 * 60 * 1000;
+    // Longest sign-out waits for the device delete and the topic unsubscribes
+    private static final long UNREGISTER_TIMEOUT_MS = 5000;
+
+    public static final String FIELD_TOKEN = "token";
+    public static final String FIELD_USER_ID = "userId";
+    public static final String FIELD_LAST_SEEN = "lastSeen";
+
+    public static DocumentReference deviceRef(FirebaseFirestore firestore, String userId, String installationId) {
+        return FollowGraph.userRef(firestore, userId).collection("devices").document(installationId);
+    }
+
+    // Register the current token of this device for the signed-in user
+    public static void register(Context context) {
+        if (FirebaseAuth.getInstance().getCurrentUser() == null) return;
+        FirebaseMessaging.getInstance().getToken()
+            .addOnSuccessListener(token -> register(context, token))
+            .addOnFailureListener(e -> Log.w(TAG, "Fetching FCM registration token failed", e));
+    }
+
+    // Register a token handed out by FCM (FCMTokenService.onNewToken)
+    public static void register(Context context, String token) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            Log.w(TAG, "No authenticated user found, cannot register FCM token");
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        FirebaseInstallations.getInstance().getId()
+            .addOnSuccessListener(installationId -> {
+                SharedPreferences prefs = prefs(appContext);
+                String hash = hash(user.getUid(), installationId, token);
+                boolean fresh = System.currentTimeMillis() - prefs.getLong(KEY_WRITTEN_AT, 0) < LAST_SEEN_REFRESH_MS;
+                if (hash.equals(prefs.getString(KEY_HASH, null)) && fresh) {
+                    Log.d(TAG, "FCM token unchanged, skipping write");
+                    return;
+                }
+                write(appContext, user.getUid(), installationId, token, hash);
+            })
+            .addOnFailureListener(e -> Log.w(TAG, "Fetching installation ID failed", e));
+    }
+
+    private static void write(Context context, String userId, String installationId, String token, String hash) {
+        FirebaseFirestore firestore = FirebaseFirestore.getInstance();
+        Map<String, Object> device = new HashMap<>();
+        device.put(FIELD_TOKEN, token);
+        device.put(FIELD_USER_ID, userId); // for the collection group queries of the functions
+        device.put(FIELD_LAST_SEEN, FieldValue.serverTimestamp());
+
+        SharedPreferences prefs = prefs(context);
+        boolean clearLegacy = !prefs.getBoolean(KEY_LEGACY_CLEARED, false);
+        Task<Void> commit;
+        if (clearLegacy) {
+            // The single fcmToken field of older versions would otherwise be sent to as well
+            commit = firestore.batch()
+                    .set(deviceRef(firestore, userId, installationId), device)
+                    .set(FollowGraph.userRef(firestore, userId),
+                            Collections.singletonMap("fcmToken", FieldValue.delete()), SetOptions.merge())
+                    .commit();
+        } else {
+            commit = deviceRef(firestore, userId, installationId).set(device);
+        }
+        commit
+            .addOnSuccessListener(aVoid -> {
+                prefs.edit()
+                        .putString(KEY_HASH, hash)
+                        .putLong(KEY_WRITTEN_AT, System.currentTimeMillis())
+                        .putBoolean(KEY_LEGACY_CLEARED, true)
+                        .apply();
+                Log.d(TAG, "FCM token registered for device " + installationId);
+            })
+            .addOnFailureListener(e -> Log.w(TAG, "Error registering FCM token", e));
+    }
+
+    /**
+     * Remove this device from the signed-in user and drop its author topics,
+     * so their notifications stop coming to it. Sign out only once the
+     * returned task completes (it never fails): a delete still pending at
+     * sign-out stays parked with the user who is leaving. Offline the delete
+     * cannot be confirmed, so the task gives up waiting after a few seconds.
+     */
+    public static Task<Void> unregister(Context context) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        prefs(context).edit().remove(KEY_HASH).remove(KEY_WRITTEN_AT).apply();
+
+        Task<Void> topics = AuthorTopics.unsubscribeAll(context)
+            .addOnFailureListener(e -> Log.w(TAG, "Error unsubscribing from author topics", e));
+        Task<Void> device = user == null ? Tasks.forResult(null)
+            : FirebaseInstallations.getInstance().getId()
+                .onSuccessTask(installationId ->
+                        deviceRef(FirebaseFirestore.getInstance(), user.getUid(), installationId).delete())
+                .addOnFailureListener(e -> Log.w(TAG, "Error removing this device", e));
+
+        TaskCompletionSource<Void> done = new TaskCompletionSource<>();
+        Tasks.whenAllComplete(device, topics).addOnCompleteListener(task -> done.trySetResult(null));
+        new Handler(Looper.getMainLooper()).postDelayed(() -> {
+            if (done.trySetResult(null)) {
+                Log.w(TAG, "Unregistering timed out, signing out anyway");
+            }
+        }, UNREGISTER_TIMEOUT_MS);
+        return done.getTask();
+    }
+
+    private static String hash(String userId, String installationId, String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest((userId + "|" + installationId + "|" + token)
+                    .getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : bytes) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,114 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.LiveData;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.List;
+
+/**
+ * Home feed: the newest photos of everyone the user follows. The list pages
+ * from the local mirror (FeedRepository / LocalDatabase), so the feed stored
+ * last time shows immediately; pages of feeds/{uid}/items are read from
+ * Firestore into the mirror as the list nears its end.
+ */
+public class FeedActivity extends AppCompatActivity {
+
+    private static final String TAG = "FeedActivity";
+    private static final int FEED_PREFETCH_DISTANCE = 3;
+
+    private RecyclerView feedRecyclerView;
+    private TextView emptyTextView;
+    private FeedAdapter feedAdapter;
+    private FeedRepository feedRepository;
+    private PhotoLikeStore photoLikeStore;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_feed);
+
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser == null) {
+            Toast.makeText(this, "You must be logged in to see your feed", Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+
+        feedRecyclerView = findViewById(R.id.feedRecyclerView);
+        emptyTextView = findViewById(R.id.feedEmptyTextView);
+
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        feedRecyclerView.setLayoutManager(layoutManager);
+        feedAdapter = new FeedAdapter();
+        feedRecyclerView.setAdapter(feedAdapter);
+
+        FirebaseFirestore firestore = FirebaseFirestore.getInstance();
+        photoLikeStore = new PhotoLikeStore(firestore, currentUser.getUid(), currentUser.getDisplayName(),
+                MutationOutbox.withPendingLikes(this, feedAdapter::onLikesChanged));
+        feedRepository = new FeedRepository(this, firestore, currentUser.getUid());
+
+        // The list follows the local mirror
+        LiveData<PagingData<PhotoEntity>> feed =
+                PagingLiveData.cachedIn(feedRepository.pagingData(), getLifecycle());
+        feed.observe(this, pagingData -> feedAdapter.submitData(getLifecycle(), pagingData));
+
+        // Fetch older items from the server when the stored ones run out
+        feedRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0) return;
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (lastVisible >= feedAdapter.getItemCount() - FEED_PREFETCH_DISTANCE
+                        && feedRepository.canLoadMore()) {
+                    feedRepository.loadOlder(pageCallback(false));
+                }
+            }
+        });
+
+        // Newest page from the server, merged into what is stored
+        feedRepository.refresh(pageCallback(true));
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (photoLikeStore != null) {
+            photoLikeStore.stop();
+        }
+    }
+
+    private FeedRepository.PageCallback pageCallback(boolean firstPage) {
+        return new FeedRepository.PageCallback() {
+            @Override
+            public void onPageSaved(List<UserPhoto> photos, boolean hasMore) {
+                Log.d(TAG, "Stored feed page of " + photos.size() + " photos, hasMore=" + hasMore);
+                // Like counts live on the photo documents, not on the feed copies
+                photoLikeStore.watch(photos);
+                if (firstPage) {
+                    emptyTextView.setVisibility(photos.isEmpty() ? View.VISIBLE : View.GONE);
+                }
+            }
+
+            @Override
+            public void onPageFailed(Exception e) {
+                Log.e(TAG, "Error loading feed", e);
+                Toast.makeText(FeedActivity.this, "Failed to load feed", Toast.LENGTH_SHORT).show();
+            }
+        };
+    }
+}
@@ -0,0 +1,155 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Intent;
+import android.graphics.Color;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.paging.ItemSnapshotList;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Full-width photo cards for the home feed, paged from the local mirror (see
+ * FeedRepository). Tapping the author opens their profile.
+ *
+ * Live like data from PhotoLikeStore is kept next to the paged items and laid
+ * over them when a card is bound, since the pages are replaced whenever the
+ * database changes.
+ */
+public class FeedAdapter extends PagingDataAdapter<PhotoEntity, FeedAdapter.FeedViewHolder> {
+
+    // Partial-bind payload: only the like count and star need refreshing
+    private static final String PAYLOAD_LIKES = "likes";
+
+    private static final DiffUtil.ItemCallback<PhotoEntity> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<PhotoEntity>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull PhotoEntity oldItem, @NonNull PhotoEntity newItem) {
+                    return oldItem.id.equals(newItem.id);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull PhotoEntity oldItem, @NonNull PhotoEntity newItem) {
+                    return oldItem.sameContents(newItem);
+                }
+            };
+
+    private final Map<String, Integer> likeCounts = new HashMap<>();
+    private final Map<String, Boolean> likedByMe = new HashMap<>();
+
+    public FeedAdapter() {
+        super(DIFF_CALLBACK);
+    }
+
+    @NonNull
+    @Override
+    public FeedViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_feed, parent, false);
+        return new FeedViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull FeedViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && payloads.contains(PAYLOAD_LIKES)) {
+            UserPhoto photo = photoAt(position);
+            if (photo != null) updateLikeUI(holder, photo);
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull FeedViewHolder holder, int position) {
+        UserPhoto photo = photoAt(position);
+        if (photo == null) return;
+
+        holder.authorTextView.setText(photo.getAuthorName());
+        holder.descriptionTextView.setText(photo.getDescription());
+        holder.descriptionTextView.setVisibility(
+                photo.getDescription() == null || photo.getDescription().isEmpty() ? View.GONE : View.VISIBLE);
+
+        Glide.with(holder.photoImageView.getContext())
+                .load(photo.getFeedImageUrl())
+                .placeholder(R.mipmap.ic_launcher)
+                .error(R.mipmap.ic_launcher)
+                .into(holder.photoImageView);
+
+        updateLikeUI(holder, photo);
+
+        holder.authorTextView.setOnClickListener(v -> {
+            Intent intent = new Intent(v.getContext(), ProfileActivity.class);
+            intent.putExtra("USER_ID", photo.getAuthorId());
+            intent.putExtra("USER_NAME", photo.getAuthorName());
+            v.getContext().startActivity(intent);
+        });
+    }
+
+    private void updateLikeUI(FeedViewHolder holder, UserPhoto photo) {
+        holder.likeCountTextView.setText(String.valueOf(photo.getLikeCount()));
+        if (photo.isLikedByMe()) {
+            holder.likeImageView.setImageResource(android.R.drawable.btn_star_big_on);
+            holder.likeImageView.setColorFilter(Color.RED);
+        } else {
+            holder.likeImageView.setImageResource(android.R.drawable.btn_star_big_off);
+            holder.likeImageView.clearColorFilter();
+        }
+    }
+
+    // The stored photo at a position, with the latest like data on top
+    private UserPhoto photoAt(int position) {
+        PhotoEntity entity = getItem(position);
+        if (entity == null) return null;
+        UserPhoto photo = entity.toPhoto();
+        Integer likeCount = likeCounts.get(entity.id);
+        if (likeCount != null) photo.setLikeCount(likeCount);
+        Boolean liked = likedByMe.get(entity.id);
+        if (liked != null) photo.setLikedByMe(liked);
+        return photo;
+    }
+
+    /**
+     * Called by PhotoLikeStore when new like data arrives for a photo
+     */
+    public void onLikesChanged(String photoId, int likeCount, boolean likedByMe) {
+        likeCounts.put(photoId, likeCount);
+        this.likedByMe.put(photoId, likedByMe);
+        ItemSnapshotList<PhotoEntity> shown = snapshot();
+        List<PhotoEntity> items = shown.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            if (photoId.equals(items.get(i).id)) {
+                notifyItemChanged(shown.getPlaceholdersBefore() + i, PAYLOAD_LIKES);
+                return;
+            }
+        }
+    }
+
+    static class FeedViewHolder extends RecyclerView.ViewHolder {
+        TextView authorTextView;
+        ImageView photoImageView;
+        ImageView likeImageView;
+        TextView likeCountTextView;
+        TextView descriptionTextView;
+
+        FeedViewHolder(View itemView) {
+            super(itemView);
+            authorTextView = itemView.findViewById(R.id.feedAuthorTextView);
+            photoImageView = itemView.findViewById(R.id.feedPhotoImageView);
+            likeImageView = itemView.findViewById(R.id.feedLikeImageView);
+            likeCountTextView = itemView.findViewById(R.id.feedLikeCountTextView);
+            descriptionTextView = itemView.findViewById(R.id.feedDescriptionTextView);
+        }
+    }
+}
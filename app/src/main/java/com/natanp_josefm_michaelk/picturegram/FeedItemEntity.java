@@ -0,0 +1,27 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * A photo in the home feed of a user (feeds/{uid}/items). The photo itself is
+ * stored once in the photos table; this only records that it is in the feed.
+ */
+@Entity(tableName = "feed_items", primaryKeys = {"ownerId", "photoId"},
+        indices = {@Index({"ownerId", "timestamp"})})
+public class FeedItemEntity {
+    @NonNull
+    public String ownerId = "";
+    @NonNull
+    public String photoId = "";
+    public long timestamp;
+
+    public static FeedItemEntity of(String ownerId, PhotoEntity photo) {
+        FeedItemEntity item = new FeedItemEntity();
+        item.ownerId = ownerId;
+        item.photoId = photo.id;
+        item.timestamp = photo.timestamp;
+        return item;
+    }
+}
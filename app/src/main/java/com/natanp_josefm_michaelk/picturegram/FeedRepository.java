@@ -0,0 +1,141 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Home feed of one user. The list pages from LocalDatabase (newest first);
+ * Firestore pages of feeds/{uid}/items are written into it, and Room
+ * invalidation updates the list.
+ *
+ * Like NotificationRepository, the stored feed is always one unbroken range
+ * from the newest item downwards: if the newest page from the server shares
+ * nothing with what is stored, the old range is dropped, and older pages are
+ * fetched from the oldest stored item. Items are ordered by timestamp and
+ * then photo ID, so the cursor is exact even when several share a timestamp.
+ */
+public class FeedRepository {
+
+    private static final String TAG = "FeedRepository";
+    public static final int PAGE_SIZE = 10;
+
+    public interface PageCallback {
+        void onPageSaved(List<UserPhoto> photos, boolean hasMore);
+        void onPageFailed(Exception e);
+    }
+
+    private final PhotoDao photoDao;
+    private final Query baseQuery;
+    private final String userId;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private boolean loading = false;
+    private boolean hasMore = true;
+
+    public FeedRepository(Context context, FirebaseFirestore firestore, String userId) {
+        this.photoDao = LocalDatabase.getInstance(context).photoDao();
+        this.userId = userId;
+        this.baseQuery = PhotoPageLoader.feedQuery(firestore, userId)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+    }
+
+    // What the feed shows: the stored items, paged from the database
+    public LiveData<PagingData<PhotoEntity>> pagingData() {
+        Pager<Integer, PhotoEntity> pager = new Pager<>(
+                new PagingConfig(PAGE_SIZE), () -> photoDao.feed(userId));
+        return PagingLiveData.getLiveData(pager);
+    }
+
+    public boolean canLoadMore() {
+        return !loading && hasMore;
+    }
+
+    // Fetch the newest page from the server and store it
+    public void refresh(PageCallback callback) {
+        fetch(baseQuery.limit(PAGE_SIZE), true, callback);
+    }
+
+    // Fetch the page below the oldest stored item
+    public void loadOlder(PageCallback callback) {
+        if (!canLoadMore()) return;
+        loading = true;
+        LocalDatabase.IO.execute(() -> {
+            FeedItemEntity oldest = photoDao.oldestFeedItem(userId);
+            mainHandler.post(() -> {
+                loading = false;
+                Query query = baseQuery.limit(PAGE_SIZE);
+                if (oldest != null) {
+                    // The timestamp alone would skip the rest of a page-boundary tie
+                    query = query.startAfter(oldest.timestamp, oldest.photoId);
+                }
+                fetch(query, false, callback);
+            });
+        });
+    }
+
+    private void fetch(Query query, boolean newest, PageCallback callback) {
+        if (loading) return;
+        loading = true;
+        query.get()
+            .addOnSuccessListener(snapshot -> {
+                List<UserPhoto> photos = toPhotos(snapshot.getDocuments());
+                List<PhotoEntity> entities = new ArrayList<>();
+                List<FeedItemEntity> items = new ArrayList<>();
+                for (UserPhoto photo : photos) {
+                    PhotoEntity entity = PhotoEntity.fromPhoto(photo);
+                    entities.add(entity);
+                    items.add(FeedItemEntity.of(userId, entity));
+                }
+                boolean pageFull = snapshot.size() == PAGE_SIZE;
+                LocalDatabase.IO.execute(() -> {
+                    if (newest && pageFull && !items.isEmpty()) {
+                        List<String> ids = new ArrayList<>();
+                        for (FeedItemEntity item : items) ids.add(item.photoId);
+                        // A gap between this page and the stored range: start over
+                        if (photoDao.countFeedItems(userId, ids) == 0) {
+                            photoDao.deleteFeed(userId);
+                        }
+                    }
+                    photoDao.saveFeedPage(entities, items);
+                    mainHandler.post(() -> {
+                        loading = false;
+                        // A short page means there is nothing older on the server
+                        if (!newest || !pageFull) hasMore = pageFull;
+                        callback.onPageSaved(photos, hasMore);
+                    });
+                });
+            })
+            .addOnFailureListener(e -> {
+                loading = false;
+                callback.onPageFailed(e);
+            });
+    }
+
+    private static List<UserPhoto> toPhotos(List<DocumentSnapshot> documents) {
+        List<UserPhoto> photos = new ArrayList<>();
+        for (DocumentSnapshot document : documents) {
+            try {
+                photos.add(PhotoPageLoader.toUserPhoto(document));
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing feed item: " + document.getId(), e);
+            }
+        }
+        return photos;
+    }
+}
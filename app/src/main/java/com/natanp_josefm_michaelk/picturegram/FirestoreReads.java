@@ -0,0 +1,122 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One-shot reads with a per-call cache policy.
+ *
+ * A plain get() waits for the server whenever it is reachable, even if the
+ * local cache (see PictureGramApp) already has the data. With CACHE_THEN_NETWORK
+ * the cached copy is delivered right away and the server copy afterwards, but
+ * only if it differs, so the screen paints from disk and re-renders only when
+ * something actually changed.
+ */
+public class FirestoreReads {
+
+    private static final String TAG = "FirestoreReads";
+
+    public enum Policy {
+        CACHE_ONLY,          // never touch the network
+        CACHE_THEN_NETWORK,  // cached copy now, server copy if it differs
+        NETWORK_ONLY         // fresh data is required (e.g. just written by a worker)
+    }
+
+    public interface Callback<T> {
+        void onResult(T snapshot);
+
+        default void onError(Exception e) {
+            Log.e(TAG, "Read failed", e);
+        }
+    }
+
+    private interface Fetcher<T> {
+        Task<T> fetch(Source source);
+    }
+
+    private interface HasData<T> {
+        boolean test(T snapshot);
+    }
+
+    private interface Comparison<T> {
+        boolean same(T first, T second);
+    }
+
+    public static void get(DocumentReference document, Policy policy, Callback<DocumentSnapshot> callback) {
+        read(document::get, policy, callback,
+                snapshot -> snapshot.exists(),
+                (a, b) -> a.exists() == b.exists() && Objects.equals(a.getData(), b.getData()));
+    }
+
+    public static void get(Query query, Policy policy, Callback<QuerySnapshot> callback) {
+        read(query::get, policy, callback,
+                snapshot -> !snapshot.isEmpty(),
+                (a, b) -> sameDocuments(a.getDocuments(), b.getDocuments()));
+    }
+
+    /**
+     * hasData tells a cache hit from a miss: a document or query that was never
+     * read is not in the cache, and then only the server result is delivered.
+     */
+    private static <T> void read(Fetcher<T> fetcher, Policy policy, Callback<T> callback,
+                                 HasData<T> hasData, Comparison<T> comparison) {
+        if (policy != Policy.CACHE_THEN_NETWORK) {
+            fetcher.fetch(policy == Policy.CACHE_ONLY ? Source.CACHE : Source.SERVER)
+                .addOnSuccessListener(callback::onResult)
+                .addOnFailureListener(callback::onError);
+            return;
+        }
+
+        // Last snapshot handed to the callback, and whether the server answered
+        Object[] delivered = new Object[1];
+        boolean[] serverDone = new boolean[1];
+
+        // A cache miss on a document fails; that is fine, the server read follows
+        fetcher.fetch(Source.CACHE)
+            .addOnSuccessListener(cached -> {
+                if (serverDone[0] || !hasData.test(cached)) return;
+                delivered[0] = cached;
+                callback.onResult(cached);
+            });
+
+        fetcher.fetch(Source.SERVER)
+            .addOnSuccessListener(fresh -> {
+                serverDone[0] = true;
+                @SuppressWarnings("unchecked")
+                T cached = (T) delivered[0];
+                if (cached != null && comparison.same(cached, fresh)) {
+                    return; // nothing changed since the cached copy
+                }
+                delivered[0] = fresh;
+                callback.onResult(fresh);
+            })
+            .addOnFailureListener(e -> {
+                if (delivered[0] == null) {
+                    callback.onError(e);
+                } else {
+                    Log.w(TAG, "Revalidation failed, keeping cached copy", e);
+                }
+            });
+    }
+
+    private static boolean sameDocuments(List<DocumentSnapshot> first, List<DocumentSnapshot> second) {
+        if (first.size() != second.size()) return false;
+        for (int i = 0; i < first.size(); i++) {
+            DocumentSnapshot a = first.get(i);
+            DocumentSnapshot b = second.get(i);
+            if (!a.getId().equals(b.getId()) || !Objects.equals(a.getData(), b.getData())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
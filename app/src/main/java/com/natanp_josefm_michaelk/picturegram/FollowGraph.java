@@ -0,0 +1,77 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Layout of the follow graph in Firestore. Each follow is two small documents:
+ *   users/{follower}/following/{followed}
+ *   users/{followed}/followers/{follower}
+ * and the totals are kept as counter fields on the user documents, so a profile
+ * read never downloads the list itself. The counters are moved by the
+ * onFollowerCreate / onFollowerDelete functions when the followers edge comes
+ * or goes, so following someone twice does not count twice.
+ */
+public class FollowGraph {
+
+    public static final String FOLLOWERS = "followers";
+    public static final String FOLLOWING = "following";
+    public static final String FIELD_FOLLOWERS_COUNT = "followersCount";
+    public static final String FIELD_FOLLOWING_COUNT = "followingCount";
+
+    public static DocumentReference userRef(FirebaseFirestore firestore, String userId) {
+        return firestore.collection("users").document(userId);
+    }
+
+    // users/{userId}/following/{targetUserId}
+    public static DocumentReference followingRef(FirebaseFirestore firestore, String userId, String targetUserId) {
+        return userRef(firestore, userId).collection(FOLLOWING).document(targetUserId);
+    }
+
+    // users/{userId}/followers/{followerId}
+    public static DocumentReference followerRef(FirebaseFirestore firestore, String userId, String followerId) {
+        return userRef(firestore, userId).collection(FOLLOWERS).document(followerId);
+    }
+
+    // Contents of an edge document
+    public static Map<String, Object> edge() {
+        Map<String, Object> edge = new HashMap<>();
+        edge.put("followedAt", FieldValue.serverTimestamp());
+        return edge;
+    }
+
+    /**
+     * Everything a follow writes, added to a batch: both edges and the follow
+     * notification. Committing it is a single round trip, and
+     * either all of it is applied or none of it.
+     */
+    public static WriteBatch addFollow(WriteBatch batch, FirebaseFirestore firestore, String userId,
+                                       String targetUserId, Notification notification) {
+        batch.set(followingRef(firestore, userId, targetUserId), edge())
+                .set(followerRef(firestore, targetUserId, userId), edge());
+        if (notification != null) {
+            batch.set(firestore.collection("notifications").document(), notification);
+        }
+        return batch;
+    }
+
+    // The reverse of addFollow (no notification for unfollows)
+    public static WriteBatch addUnfollow(WriteBatch batch, FirebaseFirestore firestore,
+                                         String userId, String targetUserId) {
+        return batch
+                .delete(followingRef(firestore, userId, targetUserId))
+                .delete(followerRef(firestore, targetUserId, userId));
+    }
+
+    // Single document lookup instead of scanning a follower list
+    public static Task<Boolean> isFollowing(FirebaseFirestore firestore, String userId, String targetUserId) {
+        return followingRef(firestore, userId, targetUserId).get()
+                .continueWith(task -> task.getResult().exists());
+    }
+}
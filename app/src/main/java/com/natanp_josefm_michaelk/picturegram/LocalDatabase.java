@@ -0,0 +1,56 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+
+import androidx.room.Database;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local mirror of the Firestore data the screens show: photos (and which of
+ * them are in the home feed), users and notifications. Repositories write
+ * what they read from Firestore through to it, and lists page from it, so
+ * scrolling and filtering do not wait for the network. Firestore stays the
+ * source of truth; the mirror can be dropped at any time (it is on sign-out).
+ */
+@Database(entities = {PhotoEntity.class, FeedItemEntity.class, UserEntity.class, NotificationEntity.class},
+        version = 2, exportSchema = false)
+public abstract class LocalDatabase extends RoomDatabase {
+
+    private static final String DATABASE_NAME = "picturegram.db";
+
+    // Room does not allow queries on the main thread
+    public static final ExecutorService IO = Executors.newSingleThreadExecutor();
+
+    private static volatile LocalDatabase instance;
+
+    public abstract PhotoDao photoDao();
+
+    public abstract UserDao userDao();
+
+    public abstract NotificationDao notificationDao();
+
+    public static LocalDatabase getInstance(Context context) {
+        if (instance == null) {
+            synchronized (LocalDatabase.class) {
+                if (instance == null) {
+                    // Only a cache, so a schema change just starts it over
+                    instance = Room.databaseBuilder(context.getApplicationContext(),
+                                    LocalDatabase.class, DATABASE_NAME)
+                            .fallbackToDestructiveMigration()
+                            .build();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Drop everything, e.g. when the user signs out
+    public static void clear(Context context) {
+        LocalDatabase database = getInstance(context);
+        IO.execute(database::clearAllTables);
+    }
+}
@@ -75,8 +75,10 @@ public class LoginActivity extends AppCompatActivity {
                             Log.d(TAG, "signInWithEmail:success");
                             FirebaseUser user = mAuth.getCurrentUser();
                             
-                            // Update FCM token for the signed-in user
-                            FCMTokenService.updateCurrentUserToken();
+                            // Register this device's FCM token for the signed-in user
+                            DeviceTokenRegistry.register(LoginActivity.this);
+                            AuthorTopics.sync(LoginActivity.this);
+                            NotificationPrefs.pull(LoginActivity.this);
                             
                             navigateToProfile(user);
                         } else {
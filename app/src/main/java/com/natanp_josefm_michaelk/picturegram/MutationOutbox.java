@@ -0,0 +1,329 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent outbox for likes, follows and description edits, flushed by
+ * OutboxFlushWorker.
+ *
+ * The UI applies a mutation right away and queues it here instead of writing
+ * to Firestore. Mutations on the same key are coalesced before anything is
+ * sent: a like followed by an unlike of the same photo cancels out, and only
+ * the last description edit of a photo is kept. Whatever is left is written
+ * in one WriteBatch a couple of seconds later, once there is a connection.
+ */
+public class MutationOutbox {
+
+    private static final String TAG = "MutationOutbox";
+
+    public static final String TYPE_LIKE = "like";
+    public static final String TYPE_UNLIKE = "unlike";
+    public static final String TYPE_FOLLOW = "follow";
+    public static final String TYPE_UNFOLLOW = "unfollow";
+    public static final String TYPE_DESCRIPTION = "description";
+
+    private static final String OUTBOX_PREFS = "mutation_outbox_prefs";
+    private static final String OUTBOX_KEY = "pending_mutations";
+    private static final String STAT_QUEUED = "stat_queued";
+    private static final String STAT_COALESCED = "stat_coalesced";
+    private static final String STAT_FLUSHED = "stat_flushed";
+    private static final String STAT_COMMITS = "stat_commits";
+
+    private static final String FLUSH_WORK = "mutation_outbox_flush";
+    // Taps within this window end up in the same commit
+    private static final long FLUSH_DELAY_SECONDS = 2;
+
+    private static final Gson gson = new Gson();
+
+    // Loaded from prefs on first use
+    private static List<Mutation> pending;
+    // Mutations of the commit in progress; they can no longer be coalesced
+    private static final Set<String> inFlight = new HashSet<>();
+
+    /**
+     * One queued change. key identifies what it changes (one photo's like, one
+     * follow edge, one photo's description).
+     */
+    public static class Mutation {
+        public String id;
+        public String key;
+        public String type;
+        public String userId;
+        public String username;
+        public String targetId;   // photo ID, or user ID for follows
+        public String targetName; // name of the photo author / followed user, for notifications
+        public String recipientId; // ID of the photo author / followed user
+        public String description;
+        public boolean legacyLike; // like stored in the photo's likedBy array
+        public long createdAt;
+        public int failedAttempts; // commits of this mutation alone that failed, see OutboxFlushWorker
+
+        public Mutation() {
+        }
+
+        Mutation(String key, String type, String userId, String username, String targetId, String targetName) {
+            this.id = UUID.randomUUID().toString();
+            this.key = key;
+            this.type = type;
+            this.userId = userId;
+            this.username = username;
+            this.targetId = targetId;
+            this.targetName = targetName;
+            this.createdAt = System.currentTimeMillis();
+        }
+    }
+
+    public static void like(Context context, UserPhoto photo, String userId, String username, boolean liking) {
+        Mutation mutation = new Mutation(likeKey(photo.getFirestoreId()), liking ? TYPE_LIKE : TYPE_UNLIKE,
+                userId, username, photo.getFirestoreId(), photo.getAuthorName());
+        mutation.recipientId = photo.getAuthorId();
+        mutation.legacyLike = !liking && photo.getLikedByUsers().contains(username);
+        enqueue(context, mutation);
+    }
+
+    public static void follow(Context context, String userId, String username,
+                              String targetUserId, String targetUserName, boolean following) {
+        Mutation mutation = new Mutation(followKey(targetUserId), following ? TYPE_FOLLOW : TYPE_UNFOLLOW,
+                userId, username, targetUserId, targetUserName);
+        mutation.recipientId = targetUserId;
+        enqueue(context, mutation);
+    }
+
+    public static void editDescription(Context context, String userId, String photoId, String description) {
+        Mutation mutation = new Mutation(descriptionKey(photoId), TYPE_DESCRIPTION, userId, null, photoId, null);
+        mutation.description = description;
+        enqueue(context, mutation);
+    }
+
+    private static synchronized void enqueue(Context context, Mutation mutation) {
+        int coalesced = coalesce(load(context), mutation, inFlight);
+        save(context);
+
+        SharedPreferences prefs = prefs(context);
+        prefs.edit()
+                .putLong(STAT_QUEUED, prefs.getLong(STAT_QUEUED, 0) + 1)
+                .putLong(STAT_COALESCED, prefs.getLong(STAT_COALESCED, 0) + coalesced)
+                .apply();
+        if (coalesced < 2) {
+            scheduleFlush(context);
+        }
+    }
+
+    /**
+     * Add mutation to the queue, merged with a queued mutation on the same key
+     * that is not part of a running commit. Returns how many mutations were
+     * coalesced away: 0, 1 if it replaced the older one, 2 if both cancel out.
+     */
+    static int coalesce(List<Mutation> mutations, Mutation mutation, Set<String> inFlight) {
+        Mutation previous = findQueued(mutations, mutation.key, inFlight);
+        if (previous == null) {
+            mutations.add(mutation);
+            return 0;
+        }
+        mutations.remove(previous);
+        if (isOpposite(previous.type, mutation.type)) {
+            // like + unlike, follow + unfollow: nothing to send at all
+            return 2;
+        }
+        // A newer value of the same thing replaces the older one
+        mutations.add(mutation);
+        return 1;
+    }
+
+    // Latest state queued for a photo's like, or null if nothing is queued
+    public static synchronized Boolean pendingLike(Context context, String photoId) {
+        Mutation mutation = findLatest(load(context), likeKey(photoId));
+        return mutation == null ? null : TYPE_LIKE.equals(mutation.type);
+    }
+
+    public static synchronized Boolean pendingFollow(Context context, String targetUserId) {
+        Mutation mutation = findLatest(load(context), followKey(targetUserId));
+        return mutation == null ? null : TYPE_FOLLOW.equals(mutation.type);
+    }
+
+    /**
+     * Apply queued description edits to photos just read from Firestore, so a
+     * page loaded before the flush does not show the old text. Likes are
+     * overlaid by withPendingLikes.
+     */
+    public static synchronized void applyPending(Context context, List<UserPhoto> photos) {
+        List<Mutation> mutations = load(context);
+        if (mutations.isEmpty()) return;
+        for (UserPhoto photo : photos) {
+            if (!photo.hasFirestoreId()) continue;
+            Mutation description = findLatest(mutations, descriptionKey(photo.getFirestoreId()));
+            if (description != null) {
+                photo.setDescription(description.description);
+            }
+        }
+    }
+
+    /**
+     * Wraps a like listener so the counts it receives include likes that are
+     * queued but not written yet
+     */
+    public static PhotoLikeStore.LikesListener withPendingLikes(Context context,
+                                                                PhotoLikeStore.LikesListener listener) {
+        return (photoId, likeCount, likedByMe) -> {
+            Boolean pendingLike = pendingLike(context, photoId);
+            if (pendingLike != null && pendingLike != likedByMe) {
+                likeCount = Math.max(0, likeCount + (pendingLike ? 1 : -1));
+                likedByMe = pendingLike;
+            }
+            listener.onLikesChanged(photoId, likeCount, likedByMe);
+        };
+    }
+
+    /**
+     * Take up to maxMutations queued mutations for a commit. They stay in the
+     * outbox until endFlush, but new mutations no longer coalesce with them.
+     */
+    static synchronized List<Mutation> beginFlush(Context context, int maxMutations) {
+        List<Mutation> batch = new ArrayList<>();
+        for (Mutation mutation : load(context)) {
+            if (batch.size() >= maxMutations) break;
+            batch.add(mutation);
+            inFlight.add(mutation.id);
+        }
+        return batch;
+    }
+
+    /**
+     * Finish a commit started with beginFlush. With remove set the mutations are
+     * dropped from the outbox (writes is 0 if they were given up on); otherwise
+     * they stay queued for the next attempt, with their failedAttempts. Returns
+     * true if more mutations are waiting.
+     */
+    static synchronized boolean endFlush(Context context, List<Mutation> batch, int writes, boolean remove) {
+        List<Mutation> mutations = load(context);
+        for (Mutation mutation : batch) {
+            inFlight.remove(mutation.id);
+        }
+        if (remove) {
+            Set<String> flushed = new HashSet<>();
+            for (Mutation mutation : batch) {
+                flushed.add(mutation.id);
+            }
+            for (Iterator<Mutation> it = mutations.iterator(); it.hasNext(); ) {
+                if (flushed.contains(it.next().id)) it.remove();
+            }
+        }
+        save(context);
+
+        if (remove && writes > 0) {
+            SharedPreferences prefs = prefs(context);
+            long queued = prefs.getLong(STAT_QUEUED, 0);
+            long flushedWrites = prefs.getLong(STAT_FLUSHED, 0) + writes;
+            long commits = prefs.getLong(STAT_COMMITS, 0) + 1;
+            prefs.edit()
+                    .putLong(STAT_FLUSHED, flushedWrites)
+                    .putLong(STAT_COMMITS, commits)
+                    .apply();
+            Log.d(TAG, "Flushed " + batch.size() + " mutations (" + writes + " writes). Totals: "
+                    + queued + " queued, " + prefs.getLong(STAT_COALESCED, 0) + " coalesced, "
+                    + flushedWrites + " writes in " + commits + " commits");
+        }
+        return !mutations.isEmpty();
+    }
+
+    static synchronized boolean hasPending(Context context) {
+        return !load(context).isEmpty();
+    }
+
+    static void scheduleFlush(Context context) {
+        scheduleFlush(context, ExistingWorkPolicy.KEEP);
+    }
+
+    // Called by a flush that succeeded, which KEEP would treat as already
+    // scheduled. Never from one that fails or retries: work appended behind a
+    // failed one fails with it, and a retry picks up the rest anyway.
+    static void scheduleNextFlush(Context context) {
+        scheduleFlush(context, ExistingWorkPolicy.APPEND_OR_REPLACE);
+    }
+
+    private static void scheduleFlush(Context context, ExistingWorkPolicy policy) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(OutboxFlushWorker.class)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setInitialDelay(FLUSH_DELAY_SECONDS, TimeUnit.SECONDS)
+                .build();
+        // KEEP: a flush that is already waiting picks up this mutation too.
+        // A running flush schedules the next one itself when it is done.
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(FLUSH_WORK, policy, request);
+    }
+
+    private static boolean isOpposite(String first, String second) {
+        return (TYPE_LIKE.equals(first) && TYPE_UNLIKE.equals(second))
+                || (TYPE_UNLIKE.equals(first) && TYPE_LIKE.equals(second))
+                || (TYPE_FOLLOW.equals(first) && TYPE_UNFOLLOW.equals(second))
+                || (TYPE_UNFOLLOW.equals(first) && TYPE_FOLLOW.equals(second));
+    }
+
+    // Queued mutation for key that is not part of a running commit
+    private static Mutation findQueued(List<Mutation> mutations, String key, Set<String> inFlight) {
+        for (Mutation mutation : mutations) {
+            if (mutation.key.equals(key) && !inFlight.contains(mutation.id)) return mutation;
+        }
+        return null;
+    }
+
+    private static Mutation findLatest(List<Mutation> mutations, String key) {
+        Mutation latest = null;
+        for (Mutation mutation : mutations) {
+            if (mutation.key.equals(key)) latest = mutation;
+        }
+        return latest;
+    }
+
+    private static String likeKey(String photoId) {
+        return "like:" + photoId;
+    }
+
+    private static String followKey(String targetUserId) {
+        return "follow:" + targetUserId;
+    }
+
+    private static String descriptionKey(String photoId) {
+        return "desc:" + photoId;
+    }
+
+    private static List<Mutation> load(Context context) {
+        if (pending == null) {
+            String json = prefs(context).getString(OUTBOX_KEY, null);
+            Type type = new TypeToken<List<Mutation>>() {}.getType();
+            List<Mutation> stored = json != null ? gson.fromJson(json, type) : null;
+            pending = stored != null ? stored : new ArrayList<>();
+        }
+        return pending;
+    }
+
+    private static void save(Context context) {
+        prefs(context).edit().putString(OUTBOX_KEY, gson.toJson(pending)).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(OUTBOX_PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -1,15 +1,16 @@
 package com.natanp_josefm_michaelk.picturegram;
 
 /**
- * Model class for notification data stored in Firestore
+ * Model class for notification data stored in Firestore.
+ * Whether it was read is not stored here, see NotificationWatermark.
  */
 public class Notification {
     private String id; // Firestore document ID
     private String type; // "like" or "follow"
     private String fromUser; // sender's username
     private String toUser; // recipient's username
+    private String toUserId; // recipient's user ID, when the sender knows it
     private long timestamp; // timestamp in milliseconds
-    private boolean isRead; // whether the notification has been read
 
     // Empty constructor required for Firestore
     public Notification() {
@@ -25,7 +26,12 @@ public class Notification {
         this.fromUser = fromUser;
         this.toUser = toUser;
         this.timestamp = System.currentTimeMillis();
-        this.isRead = false;
+    }
+
+    // The recipient's ID saves the unread counter function a username lookup
+    public Notification(String type, String fromUser, String toUser, String toUserId) {
+        this(type, fromUser, toUser);
+        this.toUserId = toUserId;
     }
 
     // Getters and setters
@@ -61,19 +67,19 @@ public class Notification {
         this.toUser = toUser;
     }
 
-    public long getTimestamp() {
-        return timestamp;
+    public String getToUserId() {
+        return toUserId;
     }
 
-    public void setTimestamp(long timestamp) {
-        this.timestamp = timestamp;
+    public void setToUserId(String toUserId) {
+        this.toUserId = toUserId;
     }
 
-    public boolean isRead() {
-        return isRead;
+    public long getTimestamp() {
+        return timestamp;
     }
 
-    public void setRead(boolean read) {
-        isRead = read;
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
     }
 } 
\ No newline at end of file
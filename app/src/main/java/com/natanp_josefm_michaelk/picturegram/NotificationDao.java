@@ -0,0 +1,30 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import androidx.paging.PagingSource;
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Upsert;
+
+import java.util.List;
+
+@Dao
+public interface NotificationDao {
+
+    @Upsert
+    void upsertAll(List<NotificationEntity> notifications);
+
+    // Newest first, in the same order as NotificationRepository's query; Room
+    // invalidates the source whenever the table changes
+    @Query("SELECT * FROM notifications WHERE toUser = :toUser ORDER BY timestamp DESC, id DESC")
+    PagingSource<Integer, NotificationEntity> newestFirst(String toUser);
+
+    @Query("SELECT COUNT(*) FROM notifications WHERE id IN (:ids)")
+    int countStored(List<String> ids);
+
+    // Last stored notification in newestFirst order, null if nothing is stored for the user
+    @Query("SELECT * FROM notifications WHERE toUser = :toUser ORDER BY timestamp, id LIMIT 1")
+    NotificationEntity oldest(String toUser);
+
+    @Query("DELETE FROM notifications WHERE toUser = :toUser")
+    void deleteFor(String toUser);
+}
@@ -0,0 +1,41 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import java.util.Objects;
+
+/**
+ * Local copy of a notification document (see LocalDatabase)
+ */
+@Entity(tableName = "notifications", indices = {@Index({"toUser", "timestamp"})})
+public class NotificationEntity {
+    @PrimaryKey
+    @NonNull
+    public String id = "";
+    public String type;
+    public String fromUser;
+    public String toUser;
+    public String toUserId;
+    public long timestamp;
+
+    public static NotificationEntity fromNotification(Notification notification) {
+        NotificationEntity entity = new NotificationEntity();
+        entity.id = notification.getId();
+        entity.type = notification.getType();
+        entity.fromUser = notification.getFromUser();
+        entity.toUser = notification.getToUser();
+        entity.toUserId = notification.getToUserId();
+        entity.timestamp = notification.getTimestamp();
+        return entity;
+    }
+
+    // For DiffUtil
+    public boolean sameContents(NotificationEntity other) {
+        return timestamp == other.timestamp
+                && Objects.equals(type, other.type)
+                && Objects.equals(fromUser, other.fromUser);
+    }
+}
@@ -0,0 +1,225 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Notification settings: the global switch, one switch per alert type and
+ * optional quiet hours. Kept in the AppSettings prefs and mirrored to
+ * users/{uid}.notificationPrefs, so onPhotoUpload can leave out followers who
+ * do not want the push before it looks up any of their devices.
+ *
+ * pushFiltered on the user document is true whenever anything differs from
+ * the defaults; the function only reads the preferences of those users.
+ * Topic messages reach every subscribed device, so allows() is also checked
+ * on the device before an alert is shown.
+ */
+public class NotificationPrefs {
+
+    private static final String TAG = "NotificationPrefs";
+
+    private static final String SETTINGS_PREFS = "AppSettings";
+    public static final String SETTING_ENABLED = "notifications";
+    public static final String SETTING_NEW_PHOTOS = "notifyNewPhotos";
+    public static final String SETTING_LIKES = "notifyLikes";
+    public static final String SETTING_FOLLOWS = "notifyFollows";
+    public static final String SETTING_QUIET_HOURS = "quietHours";
+    private static final String SETTING_QUIET_START = "quietStart";
+    private static final String SETTING_QUIET_END = "quietEnd";
+
+    // Minutes after midnight
+    private static final int DEFAULT_QUIET_START = 22 * 60;
+    private static final int DEFAULT_QUIET_END = 7 * 60;
+
+    // Sync state: set when a change has not reached the user document yet
+    private static final String SYNC_PREFS = "notification_prefs_sync";
+    private static final String KEY_DIRTY = "dirty";
+    private static final String KEY_SYNCED_TIME_ZONE = "synced_time_zone";
+
+    // Field names on the user document, read by the functions
+    private static final String FIELD_PREFS = "notificationPrefs";
+    private static final String FIELD_FILTERED = "pushFiltered";
+
+    public static boolean getBoolean(Context context, String key) {
+        return settings(context).getBoolean(key, !SETTING_QUIET_HOURS.equals(key));
+    }
+
+    public static int getQuietStart(Context context) {
+        return settings(context).getInt(SETTING_QUIET_START, DEFAULT_QUIET_START);
+    }
+
+    public static int getQuietEnd(Context context) {
+        return settings(context).getInt(SETTING_QUIET_END, DEFAULT_QUIET_END);
+    }
+
+    public static void setBoolean(Context context, String key, boolean value) {
+        settings(context).edit().putBoolean(key, value).apply();
+        changed(context);
+    }
+
+    public static void setQuietHours(Context context, int startMinute, int endMinute) {
+        settings(context).edit()
+                .putInt(SETTING_QUIET_START, startMinute)
+                .putInt(SETTING_QUIET_END, endMinute)
+                .apply();
+        changed(context);
+    }
+
+    /** Whether an alert of this type should be shown now. */
+    public static boolean allows(Context context, String type) {
+        if (!getBoolean(context, SETTING_ENABLED)) return false;
+        String setting = settingFor(type);
+        if (setting != null && !getBoolean(context, setting)) return false;
+        if (!getBoolean(context, SETTING_QUIET_HOURS)) return true;
+
+        Calendar now = Calendar.getInstance();
+        int minute = now.get(Calendar.HOUR_OF_DAY) * 60 + now.get(Calendar.MINUTE);
+        return !isQuiet(minute, getQuietStart(context), getQuietEnd(context));
+    }
+
+    /**
+     * Whether a minute of the day falls in quiet hours from start (inclusive)
+     * to end (exclusive), all in minutes after midnight. Same rule as
+     * wantsPush() in the functions.
+     */
+    static boolean isQuiet(int minute, int start, int end) {
+        if (start == end) return false;
+        // Quiet hours may wrap past midnight, e.g. 22:00-07:00
+        return start < end
+                ? minute >= start && minute < end
+                : minute >= start || minute < end;
+    }
+
+    private static String settingFor(String type) {
+        switch (type) {
+            case NotificationRenderer.TYPE_NEW_PHOTO:
+                return SETTING_NEW_PHOTOS;
+            case NotificationRenderer.TYPE_LIKE:
+                return SETTING_LIKES;
+            case NotificationRenderer.TYPE_FOLLOW:
+                return SETTING_FOLLOWS;
+            default:
+                return null;
+        }
+    }
+
+    private static void changed(Context context) {
+        syncState(context).edit().putBoolean(KEY_DIRTY, true).apply();
+        push(context);
+    }
+
+    /**
+     * Write the settings to the user document if a change has not been
+     * written yet, or if the device moved to another time zone (quiet hours
+     * are evaluated in it). Called on every change and at start-up.
+     */
+    public static void push(Context context) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) return;
+        SharedPreferences state = syncState(context);
+        String timeZone = TimeZone.getDefault().getID();
+        if (!state.getBoolean(KEY_DIRTY, false) && timeZone.equals(state.getString(KEY_SYNCED_TIME_ZONE, null))) {
+            return;
+        }
+
+        Context appContext = context.getApplicationContext();
+        FollowGraph.userRef(FirebaseFirestore.getInstance(), user.getUid())
+            .update(FIELD_PREFS, toMap(appContext, timeZone), FIELD_FILTERED, isFiltered(appContext))
+            .addOnSuccessListener(aVoid -> {
+                syncState(appContext).edit()
+                        .putBoolean(KEY_DIRTY, false)
+                        .putString(KEY_SYNCED_TIME_ZONE, timeZone)
+                        .apply();
+                Log.d(TAG, "Notification settings synced");
+            })
+            .addOnFailureListener(e -> Log.w(TAG, "Error syncing notification settings", e));
+    }
+
+    /**
+     * After sign-in: take over the settings stored on the user document, so
+     * a new device does not reset them to the defaults. Users without stored
+     * settings get this device's.
+     */
+    public static void pull(Context context) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) return;
+        Context appContext = context.getApplicationContext();
+        FollowGraph.userRef(FirebaseFirestore.getInstance(), user.getUid())
+            .get()
+            .addOnSuccessListener(document -> {
+                Object stored = document.get(FIELD_PREFS);
+                if (!(stored instanceof Map)) {
+                    syncState(appContext).edit().putBoolean(KEY_DIRTY, true).apply();
+                    push(appContext);
+                    return;
+                }
+                fromMap(appContext, (Map<?, ?>) stored);
+                syncState(appContext).edit()
+                        .putBoolean(KEY_DIRTY, false)
+                        .remove(KEY_SYNCED_TIME_ZONE) // written again if the time zone differs
+                        .apply();
+                push(appContext);
+            })
+            .addOnFailureListener(e -> Log.w(TAG, "Error loading notification settings", e));
+    }
+
+    // Anything but the defaults; only these users' settings are read by the functions
+    private static boolean isFiltered(Context context) {
+        return !getBoolean(context, SETTING_ENABLED)
+                || !getBoolean(context, SETTING_NEW_PHOTOS)
+                || !getBoolean(context, SETTING_LIKES)
+                || !getBoolean(context, SETTING_FOLLOWS)
+                || getBoolean(context, SETTING_QUIET_HOURS);
+    }
+
+    // Keep the field names in sync with wantsPush() in the functions
+    private static Map<String, Object> toMap(Context context, String timeZone) {
+        Map<String, Object> prefs = new HashMap<>();
+        prefs.put("enabled", getBoolean(context, SETTING_ENABLED));
+        prefs.put("newPhoto", getBoolean(context, SETTING_NEW_PHOTOS));
+        prefs.put("like", getBoolean(context, SETTING_LIKES));
+        prefs.put("follow", getBoolean(context, SETTING_FOLLOWS));
+        if (getBoolean(context, SETTING_QUIET_HOURS)) {
+            prefs.put("quietStart", getQuietStart(context));
+            prefs.put("quietEnd", getQuietEnd(context));
+        }
+        prefs.put("timeZone", timeZone);
+        return prefs;
+    }
+
+    private static void fromMap(Context context, Map<?, ?> prefs) {
+        SharedPreferences.Editor editor = settings(context).edit()
+                .putBoolean(SETTING_ENABLED, !Boolean.FALSE.equals(prefs.get("enabled")))
+                .putBoolean(SETTING_NEW_PHOTOS, !Boolean.FALSE.equals(prefs.get("newPhoto")))
+                .putBoolean(SETTING_LIKES, !Boolean.FALSE.equals(prefs.get("like")))
+                .putBoolean(SETTING_FOLLOWS, !Boolean.FALSE.equals(prefs.get("follow")));
+        Object start = prefs.get("quietStart");
+        Object end = prefs.get("quietEnd");
+        boolean quietHours = start instanceof Number && end instanceof Number;
+        editor.putBoolean(SETTING_QUIET_HOURS, quietHours);
+        if (quietHours) {
+            // Firestore hands integers back as Long
+            editor.putInt(SETTING_QUIET_START, ((Number) start).intValue())
+                    .putInt(SETTING_QUIET_END, ((Number) end).intValue());
+        }
+        editor.apply();
+    }
+
+    private static SharedPreferences settings(Context context) {
+        return context.getApplicationContext().getSharedPreferences(SETTINGS_PREFS, Context.MODE_PRIVATE);
+    }
+
+    private static SharedPreferences syncState(Context context) {
+        return context.getApplicationContext().getSharedPreferences(SYNC_PREFS, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,88 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.ForegroundInfo;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.bumptech.glide.Glide;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders the alerts queued in NotificationRenderer. For authors with a new
+ * photo it first reads the photo document, stores it in the local mirror (so
+ * tapping the notification paints the photo from disk) and downloads the
+ * thumbnail shown next to the author's alerts.
+ *
+ * Scheduled as expedited work, or delayed to the end of a burst window (see
+ * NotificationRenderer). Whatever fails, the notifications are still shown,
+ * just without the picture.
+ */
+public class NotificationRenderWorker extends Worker {
+
+    private static final String TAG = "NotificationRender";
+    // Keep the job short, the user is waiting for the notification
+    private static final long FETCH_TIMEOUT_SECONDS = 10;
+    private static final int PICTURE_SIZE_PX = 256;
+
+    public NotificationRenderWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        List<NotificationRenderer.AuthorGroup> groups = NotificationRenderer.takeDirty(context);
+        for (NotificationRenderer.AuthorGroup group : groups) {
+            String photoId = group.latestPhotoId();
+            if (photoId != null) {
+                group.picture = loadPicture(context, photoId);
+            }
+        }
+        NotificationRenderer.render(context, groups);
+
+        // Alerts that arrived while this render was running
+        NotificationRenderer.scheduleIfDirty(context);
+        // Never retried: a second attempt would only repeat the notifications
+        return Result.success();
+    }
+
+    private Bitmap loadPicture(Context context, String photoId) {
+        try {
+            DocumentSnapshot document = Tasks.await(
+                    FirebaseFirestore.getInstance().collection("photos").document(photoId).get(),
+                    FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!document.exists()) return null;
+            UserPhoto photo = PhotoPageLoader.toUserPhoto(document);
+            new PhotoRepository(context).save(Collections.singletonList(photo));
+            return Glide.with(context)
+                    .asBitmap()
+                    .load(photo.getGridImageUrl())
+                    .centerCrop()
+                    .submit(PICTURE_SIZE_PX, PICTURE_SIZE_PX)
+                    .get(FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            Log.w(TAG, "Showing notification without picture for photo " + photoId, e);
+            return null;
+        }
+    }
+
+    // Only used before Android 12, where expedited work runs as a short foreground job
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        return new ForegroundInfo(NotificationHelper.NOTIFICATION_WORK,
+                NotificationHelper.buildWorkNotification(getApplicationContext()));
+    }
+}
@@ -0,0 +1,434 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.Manifest;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.service.notification.StatusBarNotification;
+import android.util.Log;
+
+import androidx.core.app.ActivityCompat;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.WorkManager;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns incoming alerts (FCM data messages and local like/follow events) into
+ * system notifications.
+ *
+ * Alerts are grouped per author: each author has one notification, tagged
+ * with the author, whose InboxStyle lists their latest alerts, and a group
+ * summary covers all authors. A new alert updates the author's notification
+ * instead of replacing whatever was shown last.
+ *
+ * Alerts are kept in prefs and rendered by NotificationRenderWorker. The first
+ * alert after a quiet period is rendered right away; alerts arriving within
+ * BURST_WINDOW_MS of a render wait for the end of the window and are shown in
+ * one update, so a burst of uploads does not buzz the phone for each photo.
+ * Every render is posted with a single NotificationManagerCompat call.
+ *
+ * Notifications the user dismissed or tapped start over on the next alert.
+ */
+public class NotificationRenderer {
+
+    private static final String TAG = "NotificationRenderer";
+
+    public static final String TYPE_NEW_PHOTO = "new_photo";
+    public static final String TYPE_LIKE = "like";
+    public static final String TYPE_FOLLOW = "follow";
+    public static final String TYPE_MESSAGE = "message";
+
+    private static final String PREFS = "notification_renderer_prefs";
+    private static final String KEY_GROUPS = "groups";
+    private static final String KEY_LAST_RENDER = "last_render_at";
+
+    private static final String RENDER_WORK = "notification_render";
+    // Alerts closer together than this are shown in one update
+    private static final long BURST_WINDOW_MS = 3000;
+    // InboxStyle shows about five lines; older alerts only add to the count
+    static final int MAX_LINES = 5;
+
+    private static final String GROUP_KEY = "com.natanp_josefm_michaelk.picturegram.ALERTS";
+    private static final String TAG_AUTHOR = "author";
+    private static final int SUMMARY_ID = 0;
+
+    private static final Gson gson = new Gson();
+
+    // Loaded from prefs on first use, keyed by AuthorGroup.key
+    private static Map<String, AuthorGroup> groups;
+
+    /** One alert, as parsed from a data message. */
+    public static class Alert {
+        public String type;
+        public String photoId;
+        public String authorId;
+        public String authorName;
+        public String title;
+        public String body;
+        public long receivedAt;
+
+        public Alert() {
+        }
+
+        Alert(String type, String authorId, String authorName) {
+            this.type = type;
+            this.authorId = authorId;
+            this.authorName = authorName;
+            this.receivedAt = System.currentTimeMillis();
+        }
+
+        // Parse the data payload of a message; null if there is nobody to attribute it to
+        static Alert fromData(Map<String, String> data) {
+            String type = data.get("type");
+            String authorId = data.get("authorId");
+            if (authorId == null) authorId = data.get("userId"); // deep link field of older messages
+            Alert alert = new Alert(type != null ? type : TYPE_MESSAGE, authorId, data.get("authorName"));
+            alert.photoId = data.get("photoId");
+            alert.title = data.get("title");
+            alert.body = data.get("body");
+            if (alert.authorId == null && alert.authorName == null && alert.title == null) {
+                return null;
+            }
+            return alert;
+        }
+
+        // One line of the author's InboxStyle
+        String line() {
+            switch (type) {
+                case TYPE_NEW_PHOTO:
+                    return body != null && !body.isEmpty() ? body : "Posted a new photo";
+                case TYPE_LIKE:
+                    return "Liked your photo";
+                case TYPE_FOLLOW:
+                    return "Started following you";
+                default:
+                    return body != null ? body : "You have a new message";
+            }
+        }
+    }
+
+    /** All alerts of one author that are on screen or about to be. */
+    static class AuthorGroup {
+        String key;
+        String authorId;
+        String authorName;
+        List<Alert> alerts = new ArrayList<>(); // newest first, at most MAX_LINES
+        int count;                              // alerts since the notification was last cleared
+        int unrendered;                         // alerts since the last render
+        long renderedAt;                        // 0 until first shown
+        boolean dirty;
+        transient Bitmap picture;               // not stored; set by the worker before rendering
+
+        int notificationId() {
+            return key.hashCode();
+        }
+
+        String latestPhotoId() {
+            for (Alert alert : alerts) {
+                if (alert.photoId != null) return alert.photoId;
+            }
+            return null;
+        }
+
+        // Newest first; alerts beyond MAX_LINES drop off but stay in the count
+        void add(Alert alert) {
+            if (alert.authorId != null) authorId = alert.authorId;
+            if (alert.authorName != null) authorName = alert.authorName;
+            alerts.add(0, alert);
+            while (alerts.size() > MAX_LINES) {
+                alerts.remove(alerts.size() - 1);
+            }
+            count++;
+            unrendered++;
+            dirty = true;
+        }
+
+        // The notification was dismissed or tapped: keep only what arrived after it was last posted
+        void startOver() {
+            Iterator<Alert> iterator = alerts.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().receivedAt <= renderedAt) iterator.remove();
+            }
+            count = unrendered;
+        }
+
+        void markRendered(long now) {
+            dirty = false;
+            unrendered = 0;
+            renderedAt = now;
+        }
+
+        // Snapshot for rendering; the stored group keeps changing as alerts arrive
+        AuthorGroup copy() {
+            AuthorGroup copy = new AuthorGroup();
+            copy.key = key;
+            copy.authorId = authorId;
+            copy.authorName = authorName;
+            copy.alerts = new ArrayList<>(alerts);
+            copy.count = count;
+            copy.unrendered = unrendered;
+            copy.renderedAt = renderedAt;
+            copy.dirty = dirty;
+            return copy;
+        }
+    }
+
+    // The group an alert belongs to, created if the author has none yet
+    static AuthorGroup groupFor(Map<String, AuthorGroup> all, Alert alert) {
+        String key = groupKey(alert);
+        AuthorGroup group = all.get(key);
+        if (group == null) {
+            group = new AuthorGroup();
+            group.key = key;
+            all.put(key, group);
+        }
+        return group;
+    }
+
+    // Alert from an FCM data message
+    public static void onMessage(Context context, Map<String, String> data) {
+        Alert alert = Alert.fromData(data);
+        if (alert == null) {
+            Log.w(TAG, "Ignoring message without author or title: " + data);
+            return;
+        }
+        add(context, alert);
+    }
+
+    // Alert for something that happened on this device
+    public static void onLocalAlert(Context context, String type, String username) {
+        add(context, new Alert(type, null, username));
+    }
+
+    // Alert from a notification message (the app was in the foreground)
+    public static void onNotificationMessage(Context context, String title, String body) {
+        Alert alert = new Alert(TYPE_MESSAGE, null, null);
+        alert.title = title;
+        alert.body = body;
+        add(context, alert);
+    }
+
+    private static synchronized void add(Context context, Alert alert) {
+        // The functions already leave out muted users, but topic messages reach every subscriber
+        if (!NotificationPrefs.allows(context, alert.type)) {
+            Log.d(TAG, "Notifications of type " + alert.type + " are off, dropping alert");
+            return;
+        }
+        groupFor(load(context), alert).add(alert);
+        save(context);
+
+        schedule(context, ExistingWorkPolicy.KEEP);
+    }
+
+    /**
+     * KEEP: a render that is already waiting picks this alert up too. A running
+     * render schedules the next one itself (APPEND_OR_REPLACE) if alerts came in
+     * while it was posting.
+     */
+    private static void schedule(Context context, ExistingWorkPolicy policy) {
+        long wait = prefs(context).getLong(KEY_LAST_RENDER, 0) + BURST_WINDOW_MS - System.currentTimeMillis();
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(NotificationRenderWorker.class);
+        if (wait > 0) {
+            // Inside a burst: wait for the window to close (expedited work cannot be delayed)
+            builder.setInitialDelay(wait, TimeUnit.MILLISECONDS);
+        } else {
+            builder.setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST);
+        }
+        WorkManager.getInstance(context).enqueueUniqueWork(RENDER_WORK, policy, builder.build());
+    }
+
+    static synchronized void scheduleIfDirty(Context context) {
+        for (AuthorGroup group : load(context).values()) {
+            if (group.dirty) {
+                schedule(context, ExistingWorkPolicy.APPEND_OR_REPLACE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copies of the groups with new alerts, to be rendered by the caller while
+     * new alerts keep coming in. Groups whose notification is gone (dismissed
+     * or tapped) are reset first, so they only show what arrived after that.
+     */
+    static synchronized List<AuthorGroup> takeDirty(Context context) {
+        Map<String, AuthorGroup> all = load(context);
+        Set<Integer> shown = activeAuthorNotifications(context);
+
+        List<AuthorGroup> dirty = new ArrayList<>();
+        Iterator<AuthorGroup> iterator = all.values().iterator();
+        while (iterator.hasNext()) {
+            AuthorGroup group = iterator.next();
+            if (group.renderedAt > 0 && !shown.contains(group.notificationId())) {
+                group.startOver();
+            }
+            if (group.alerts.isEmpty()) {
+                iterator.remove();
+                continue;
+            }
+            if (group.dirty) {
+                group.markRendered(System.currentTimeMillis());
+                dirty.add(group.copy());
+            }
+        }
+        prefs(context).edit().putLong(KEY_LAST_RENDER, System.currentTimeMillis()).apply();
+        save(context);
+        return dirty;
+    }
+
+    /**
+     * Post the given groups and the summary of everything still shown, in one
+     * call. Runs on the worker thread.
+     */
+    static void render(Context context, List<AuthorGroup> dirty) {
+        if (dirty.isEmpty()) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ActivityCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS)
+                        != PackageManager.PERMISSION_GRANTED) {
+            Log.w(TAG, "No notification permission granted");
+            return;
+        }
+
+        List<NotificationManagerCompat.NotificationWithIdAndTag> notifications = new ArrayList<>();
+        for (AuthorGroup group : dirty) {
+            notifications.add(new NotificationManagerCompat.NotificationWithIdAndTag(
+                    TAG_AUTHOR, group.notificationId(), buildGroup(context, group).build()));
+        }
+        notifications.add(new NotificationManagerCompat.NotificationWithIdAndTag(
+                SUMMARY_ID, buildSummary(context).build()));
+
+        try {
+            NotificationManagerCompat.from(context).notify(notifications);
+            Log.d(TAG, "Rendered " + dirty.size() + " author notifications");
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception when showing notifications", e);
+        }
+    }
+
+    private static NotificationCompat.Builder buildGroup(Context context, AuthorGroup group) {
+        Alert latest = group.alerts.get(0);
+        String name = group.authorName != null ? group.authorName : "PictureGram";
+
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                .setBigContentTitle(name);
+        for (Alert alert : group.alerts) {
+            style.addLine(alert.line());
+        }
+        if (group.count > group.alerts.size()) {
+            style.setSummaryText("+" + (group.count - group.alerts.size()) + " more");
+        }
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, NotificationHelper.CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(group.count > 1 ? name + " (" + group.count + ")"
+                        : latest.title != null ? latest.title : name)
+                .setContentText(latest.line())
+                .setStyle(style)
+                .setNumber(group.count)
+                .setWhen(latest.receivedAt)
+                .setGroup(GROUP_KEY)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setContentIntent(groupIntent(context, group))
+                .setAutoCancel(true);
+        if (group.picture != null) {
+            builder.setLargeIcon(group.picture);
+        }
+        return builder;
+    }
+
+    private static synchronized NotificationCompat.Builder buildSummary(Context context) {
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        int total = 0;
+        for (AuthorGroup group : load(context).values()) {
+            String name = group.authorName != null ? group.authorName : "PictureGram";
+            style.addLine(name + ": " + group.alerts.get(0).line());
+            total += group.count;
+        }
+        style.setSummaryText(total + " new");
+
+        Intent intent = new Intent(context, FeedActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        return new NotificationCompat.Builder(context, NotificationHelper.CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle("PictureGram")
+                .setContentText(total + " new")
+                .setStyle(style)
+                .setGroup(GROUP_KEY)
+                .setGroupSummary(true)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_CHILDREN)
+                .setContentIntent(PendingIntent.getActivity(context, SUMMARY_ID, intent,
+                        PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE))
+                .setAutoCancel(true);
+    }
+
+    // Tapping an author's notification opens their profile, other alerts the notification list
+    private static PendingIntent groupIntent(Context context, AuthorGroup group) {
+        Intent intent;
+        if (group.authorName != null) {
+            intent = new Intent(context, ProfileActivity.class);
+            intent.putExtra("USER_NAME", group.authorName);
+            if (group.authorId != null) intent.putExtra("USER_ID", group.authorId);
+        } else {
+            intent = new Intent(context, NotificationsActivity.class);
+        }
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        return PendingIntent.getActivity(context, group.notificationId(), intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private static Set<Integer> activeAuthorNotifications(Context context) {
+        Set<Integer> ids = new HashSet<>();
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        if (manager == null) return ids;
+        for (StatusBarNotification notification : manager.getActiveNotifications()) {
+            if (TAG_AUTHOR.equals(notification.getTag())) ids.add(notification.getId());
+        }
+        return ids;
+    }
+
+    private static String groupKey(Alert alert) {
+        if (alert.authorId != null) return "id:" + alert.authorId;
+        if (alert.authorName != null) return "name:" + alert.authorName;
+        return TYPE_MESSAGE;
+    }
+
+    private static Map<String, AuthorGroup> load(Context context) {
+        if (groups == null) {
+            String json = prefs(context).getString(KEY_GROUPS, null);
+            Type type = new TypeToken<LinkedHashMap<String, AuthorGroup>>() { }.getType();
+            groups = json != null ? gson.fromJson(json, type) : null;
+            if (groups == null) groups = new LinkedHashMap<>();
+        }
+        return groups;
+    }
+
+    private static void save(Context context) {
+        prefs(context).edit().putString(KEY_GROUPS, gson.toJson(groups)).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
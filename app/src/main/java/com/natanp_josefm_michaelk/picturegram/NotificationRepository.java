@@ -0,0 +1,164 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LiveData;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Notifications of one user. The list pages from LocalDatabase (newest first);
+ * Firestore pages and new notifications are written into it, and Room
+ * invalidation updates the list.
+ *
+ * The stored notifications are always one unbroken range from the newest
+ * downwards: if the newest page from the server shares nothing with what is
+ * stored, the old range is dropped, and older pages are then fetched from the
+ * oldest stored notification. Notifications are ordered by timestamp and then
+ * document ID, so the cursor is exact even when several share a timestamp.
+ */
+public class NotificationRepository {
+
+    private static final String TAG = "NotificationRepository";
+    public static final int PAGE_SIZE = 20;
+
+    public interface PageCallback {
+        /** newestTimestamp is 0 when the page was empty */
+        void onPageSaved(int count, long newestTimestamp, boolean hasMore);
+        void onPageFailed(Exception e);
+    }
+
+    public interface NewNotificationsListener {
+        void onNewNotifications(long newestTimestamp);
+    }
+
+    private final NotificationDao notificationDao;
+    private final Query baseQuery;
+    private final String username;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private boolean loading = false;
+    private boolean hasMore = true;
+
+    public NotificationRepository(Context context, FirebaseFirestore firestore, String username) {
+        this.notificationDao = LocalDatabase.getInstance(context).notificationDao();
+        this.username = username;
+        this.baseQuery = firestore.collection("notifications")
+                .whereEqualTo("toUser", username)
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+    }
+
+    // What the list shows: the stored notifications, paged from the database
+    public LiveData<PagingData<NotificationEntity>> pagingData() {
+        Pager<Integer, NotificationEntity> pager = new Pager<>(
+                new PagingConfig(PAGE_SIZE), () -> notificationDao.newestFirst(username));
+        return PagingLiveData.getLiveData(pager);
+    }
+
+    public boolean canLoadMore() {
+        return !loading && hasMore;
+    }
+
+    // Fetch the newest page from the server and store it
+    public void refresh(PageCallback callback) {
+        fetch(baseQuery.limit(PAGE_SIZE), true, callback);
+    }
+
+    // Fetch the page below the oldest stored notification
+    public void loadOlder(PageCallback callback) {
+        if (!canLoadMore()) return;
+        loading = true;
+        LocalDatabase.IO.execute(() -> {
+            NotificationEntity oldest = notificationDao.oldest(username);
+            mainHandler.post(() -> {
+                loading = false;
+                Query query = baseQuery.limit(PAGE_SIZE);
+                if (oldest != null) {
+                    // The timestamp alone would skip the rest of a page-boundary tie
+                    query = query.startAfter(oldest.timestamp, oldest.id);
+                }
+                fetch(query, false, callback);
+            });
+        });
+    }
+
+    /**
+     * Store notifications newer than the given timestamp as they arrive.
+     * The listener is removed when the owner is destroyed.
+     */
+    public void listenForNew(LifecycleOwner owner, long newerThan, NewNotificationsListener listener) {
+        SnapshotListenerRegistry.observe(owner, baseQuery.whereGreaterThan("timestamp", newerThan),
+            (snapshot, e) -> {
+                if (e != null) {
+                    Log.e(TAG, "Error listening for new notifications", e);
+                    return;
+                }
+                if (snapshot == null || snapshot.isEmpty()) return;
+                List<NotificationEntity> entities = toEntities(snapshot.getDocuments());
+                LocalDatabase.IO.execute(() -> notificationDao.upsertAll(entities));
+                listener.onNewNotifications(entities.isEmpty() ? 0 : entities.get(0).timestamp);
+            });
+    }
+
+    private void fetch(Query query, boolean newest, PageCallback callback) {
+        if (loading) return;
+        loading = true;
+        query.get()
+            .addOnSuccessListener(snapshot -> {
+                List<NotificationEntity> entities = toEntities(snapshot.getDocuments());
+                boolean pageFull = snapshot.size() == PAGE_SIZE;
+                LocalDatabase.IO.execute(() -> {
+                    if (newest && pageFull && !entities.isEmpty()) {
+                        List<String> ids = new ArrayList<>();
+                        for (NotificationEntity entity : entities) ids.add(entity.id);
+                        // A gap between this page and the stored range: start over
+                        if (notificationDao.countStored(ids) == 0) {
+                            notificationDao.deleteFor(username);
+                        }
+                    }
+                    notificationDao.upsertAll(entities);
+                    mainHandler.post(() -> {
+                        loading = false;
+                        // A short page means there is nothing older on the server
+                        if (!newest || !pageFull) hasMore = pageFull;
+                        callback.onPageSaved(entities.size(),
+                                entities.isEmpty() ? 0 : entities.get(0).timestamp, hasMore);
+                    });
+                });
+            })
+            .addOnFailureListener(e -> {
+                loading = false;
+                callback.onPageFailed(e);
+            });
+    }
+
+    private static List<NotificationEntity> toEntities(List<DocumentSnapshot> documents) {
+        List<NotificationEntity> entities = new ArrayList<>();
+        for (DocumentSnapshot document : documents) {
+            try {
+                Notification notification = document.toObject(Notification.class);
+                if (notification == null) continue;
+                notification.setId(document.getId());
+                entities.add(NotificationEntity.fromNotification(notification));
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing notification document: " + document.getId(), e);
+            }
+        }
+        return entities;
+    }
+}
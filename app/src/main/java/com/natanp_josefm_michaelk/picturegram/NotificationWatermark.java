@@ -0,0 +1,50 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Read state of notifications, kept as one watermark on the user document:
+ * users/{uid}.lastReadAt is the timestamp of the newest notification the user
+ * has seen, and every notification after it is unread.
+ *
+ * The number of unread notifications is kept in users/{uid}/meta/unread by the
+ * functions, which count the notifications newer than the lastReadAt copied
+ * into that document, both when a notification arrives and when the watermark
+ * moves. The client never writes the count itself: resetting it here could
+ * wipe out a notification counted at the same moment.
+ *
+ * Marking everything read is a single batch (both watermarks) however many
+ * notifications there are, instead of one isRead update per notification.
+ */
+public class NotificationWatermark {
+
+    public static final String FIELD_LAST_READ_AT = "lastReadAt";
+    public static final String FIELD_COUNT = "count";
+
+    // Watermark of a user document, 0 if the user never opened their notifications
+    public static long lastReadAt(DocumentSnapshot userDocument) {
+        Long lastReadAt = userDocument.getLong(FIELD_LAST_READ_AT);
+        return lastReadAt != null ? lastReadAt : 0;
+    }
+
+    // Counter document for the bell badge
+    public static DocumentReference unreadCounterRef(FirebaseFirestore firestore, String userId) {
+        return FollowGraph.userRef(firestore, userId).collection("meta").document("unread");
+    }
+
+    // Mark every notification up to and including this timestamp as read
+    public static Task<Void> markReadUpTo(FirebaseFirestore firestore, String userId, long timestamp) {
+        Map<String, Object> watermark = Collections.singletonMap(FIELD_LAST_READ_AT, timestamp);
+        return firestore.batch()
+                .set(FollowGraph.userRef(firestore, userId), watermark, SetOptions.merge())
+                .set(unreadCounterRef(firestore, userId), watermark, SetOptions.merge())
+                .commit();
+    }
+}
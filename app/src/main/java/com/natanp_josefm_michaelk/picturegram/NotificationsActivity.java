@@ -13,30 +13,53 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.LiveData;
+import androidx.paging.PagingData;
+import androidx.paging.PagingDataAdapter;
+import androidx.paging.PagingLiveData;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.WriteBatch;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
+/**
+ * Notifications of the signed-in user, newest first. The list pages from the
+ * local mirror (NotificationRepository / LocalDatabase), so it shows what was
+ * stored last time immediately. Firestore pages (toUser + timestamp desc, see
+ * firestore.indexes.json) and new notifications are written into the mirror,
+ * and PagingDataAdapter/DiffUtil only animates what changed.
+ */
 public class NotificationsActivity extends AppCompatActivity {
 
     private static final String TAG = "NotificationsActivity";
+    // Start loading the next page this many items before the end of the list
+    private static final int PREFETCH_DISTANCE = 5;
+
+    private static final DiffUtil.ItemCallback<NotificationEntity> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<NotificationEntity>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull NotificationEntity oldItem,
+                                               @NonNull NotificationEntity newItem) {
+                    return oldItem.id.equals(newItem.id);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull NotificationEntity oldItem,
+                                                  @NonNull NotificationEntity newItem) {
+                    return oldItem.sameContents(newItem);
+                }
+            };
     
     private RecyclerView recyclerView;
     private NotificationAdapter adapter;
-    private List<Notification> notificationList;
     private FirebaseFirestore firestore;
     private FirebaseAuth auth;
+    private NotificationRepository repository;
+    private long markedReadUpTo = 0;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -49,189 +72,103 @@ public class NotificationsActivity extends AppCompatActivity {
         
         // Initialize UI components
         recyclerView = findViewById(R.id.notificationsRecyclerView);
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
         recyclerView.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
         
-        notificationList = new ArrayList<>();
-        adapter = new NotificationAdapter(notificationList);
+        adapter = new NotificationAdapter();
         recyclerView.setAdapter(adapter);
         
-        // Load notifications
-        loadNotifications();
-        
-        // Mark all notifications as read immediately when this activity is opened
-        markAllNotificationsAsRead();
-    }
-    
-    private void loadNotifications() {
         FirebaseUser user = auth.getCurrentUser();
         if (user == null || user.getDisplayName() == null) {
             Toast.makeText(this, "You need to be signed in to view notifications", Toast.LENGTH_SHORT).show();
             Log.e(TAG, "Error: User is null or has no display name");
             return;
         }
-        
-        Log.d(TAG, "Attempting to load notifications for user: " + user.getDisplayName());
-        
-        try {
-            // Query Firestore for this user's notifications - simplified query
-            firestore.collection("notifications")
-                .whereEqualTo("toUser", user.getDisplayName())
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    Log.d(TAG, "Query succeeded. Document count: " + 
-                          (queryDocumentSnapshots != null ? queryDocumentSnapshots.size() : "null"));
-                    
-                    if (queryDocumentSnapshots == null || queryDocumentSnapshots.isEmpty()) {
-                        Toast.makeText(NotificationsActivity.this, "No notifications", Toast.LENGTH_SHORT).show();
-                        return;
-                    }
-                    
-                    notificationList.clear();
-                    List<DocumentSnapshot> documents = queryDocumentSnapshots.getDocuments();
-                    
-                    // Prepare a batch to mark all notifications as read
-                    WriteBatch batch = firestore.batch();
-                    
-                    for (DocumentSnapshot document : documents) {
-                        try {
-                            Log.d(TAG, "Processing document: " + document.getId());
-                            Notification notification = document.toObject(Notification.class);
-                            if (notification != null) {
-                                // Set the document ID
-                                notification.setId(document.getId());
-                                
-                                // Log each notification for debugging
-                                Log.d(TAG, "Retrieved notification: id=" + notification.getId() + 
-                                      ", type=" + notification.getType() + 
-                                      ", from=" + notification.getFromUser() + 
-                                      ", timestamp=" + notification.getTimestamp());
-                                
-                                // Make sure timestamp is valid (might be very old test data)
-                                if (notification.getTimestamp() <= 1) {
-                                    notification.setTimestamp(System.currentTimeMillis());
-                                }
-                                
-                                notificationList.add(notification);
-                                
-                                // Mark as read in the batch
-                                batch.update(document.getReference(), "isRead", true);
-                            } else {
-                                Log.w(TAG, "Document couldn't be converted to Notification: " + document.getId());
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error processing notification document: " + document.getId(), e);
-                        }
-                    }
-                    
-                    // Sort the list by timestamp (newest first) after loading
-                    Collections.sort(notificationList, (a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
-                    
-                    // Commit the batch to mark all as read
-                    if (!notificationList.isEmpty()) {
-                        batch.commit()
-                            .addOnSuccessListener(aVoid -> {
-                                Log.d(TAG, "All notifications marked as read");
-                            })
-                            .addOnFailureListener(e -> {
-                                String errorMessage = e.getMessage();
-                                Log.e(TAG, "Error marking notifications as read: " + errorMessage, e);
-                                
-                                // Check if this is a missing index error
-                                if (errorMessage != null && errorMessage.contains("FAILED_PRECONDITION") && 
-                                    errorMessage.contains("index")) {
-                                    // This is likely a missing index error
-                                    Toast.makeText(NotificationsActivity.this, 
-                                        "First-time setup: Please check logs and create the required index in Firebase console", 
-                                        Toast.LENGTH_LONG).show();
-                                    Log.w(TAG, "Missing index detected. Please follow the URL in the error message to create it in Firebase console.");
-                                } else {
-                                    Toast.makeText(NotificationsActivity.this, 
-                                        "Error marking notifications as read: " + errorMessage, Toast.LENGTH_SHORT).show();
-                                }
-                            });
-                    } else {
-                        Log.w(TAG, "No notifications to mark as read");
-                    }
-                    
-                    adapter.notifyDataSetChanged();
-                })
-                .addOnFailureListener(e -> {
-                    String errorMessage = e.getMessage();
-                    Log.e(TAG, "Error loading notifications: " + errorMessage, e);
-                    
-                    // Check if this is a missing index error
-                    if (errorMessage != null && errorMessage.contains("FAILED_PRECONDITION") && 
-                        errorMessage.contains("index")) {
-                        // This is likely a missing index error
-                        Toast.makeText(NotificationsActivity.this, 
-                            "First-time setup: Please check logs and create the required index in Firebase console", 
-                            Toast.LENGTH_LONG).show();
-                        Log.w(TAG, "Missing index detected. Please follow the URL in the error message to create it in Firebase console.");
-                    } else {
-                        Toast.makeText(NotificationsActivity.this, 
-                            "Error loading notifications: " + errorMessage, Toast.LENGTH_SHORT).show();
-                    }
-                });
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error in loadNotifications: " + e.getMessage(), e);
-            Toast.makeText(this, "Unexpected error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-        }
+        repository = new NotificationRepository(this, firestore, user.getDisplayName());
+
+        // The list follows the local mirror
+        LiveData<PagingData<NotificationEntity>> notifications =
+                PagingLiveData.cachedIn(repository.pagingData(), getLifecycle());
+        notifications.observe(this, pagingData -> adapter.submitData(getLifecycle(), pagingData));
+
+        // Fetch older notifications from the server when the stored ones run out
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0) return;
+                int lastVisibleItem = layoutManager.findLastVisibleItemPosition();
+                if (lastVisibleItem >= adapter.getItemCount() - PREFETCH_DISTANCE
+                        && repository.canLoadMore()) {
+                    repository.loadOlder(pageCallback(false));
+                }
+            }
+        });
+
+        // Newest page from the server; they are marked read as soon as they are shown
+        repository.refresh(pageCallback(true));
+    }
+
+    private NotificationRepository.PageCallback pageCallback(boolean firstPage) {
+        return new NotificationRepository.PageCallback() {
+            @Override
+            public void onPageSaved(int count, long newestTimestamp, boolean hasMore) {
+                Log.d(TAG, "Stored page of " + count + " notifications, hasMore=" + hasMore);
+                if (!firstPage) return;
+                if (count == 0) {
+                    Toast.makeText(NotificationsActivity.this, "No notifications", Toast.LENGTH_SHORT).show();
+                } else {
+                    markReadUpTo(newestTimestamp);
+                }
+                repository.listenForNew(NotificationsActivity.this, newestTimestamp,
+                        NotificationsActivity.this::markReadUpTo);
+            }
+
+            @Override
+            public void onPageFailed(Exception e) {
+                String errorMessage = e.getMessage();
+                Log.e(TAG, "Error loading notifications: " + errorMessage, e);
+                
+                // Check if this is a missing index error
+                if (errorMessage != null && errorMessage.contains("FAILED_PRECONDITION") && 
+                    errorMessage.contains("index")) {
+                    // The composite index from firestore.indexes.json is not deployed
+                    Toast.makeText(NotificationsActivity.this, 
+                        "First-time setup: Please check logs and create the required index in Firebase console", 
+                        Toast.LENGTH_LONG).show();
+                    Log.w(TAG, "Missing index detected. Deploy firestore.indexes.json or follow the URL in the error message.");
+                } else {
+                    Toast.makeText(NotificationsActivity.this, 
+                        "Error loading notifications: " + errorMessage, Toast.LENGTH_SHORT).show();
+                }
+            }
+        };
     }
     
-    private void markAllNotificationsAsRead() {
+    /**
+     * Everything up to the newest notification shown is read now. This is one
+     * write to the user document (see NotificationWatermark), whatever the
+     * number of unread notifications.
+     */
+    private void markReadUpTo(long timestamp) {
         FirebaseUser user = auth.getCurrentUser();
-        if (user == null || user.getDisplayName() == null) {
-            Log.e(TAG, "Cannot mark notifications as read: User not signed in");
+        if (user == null || timestamp <= markedReadUpTo) {
             return;
         }
-        
-        // Get all unread notifications for this user
-        firestore.collection("notifications")
-            .whereEqualTo("toUser", user.getDisplayName())
-            .whereEqualTo("isRead", false)
-            .get()
-            .addOnSuccessListener(queryDocumentSnapshots -> {
-                if (queryDocumentSnapshots.isEmpty()) {
-                    Log.d(TAG, "No unread notifications to mark as read");
-                    return;
-                }
-                
-                // Create a batch to update all notifications at once
-                WriteBatch batch = firestore.batch();
-                int count = 0;
-                
-                for (DocumentSnapshot doc : queryDocumentSnapshots) {
-                    batch.update(doc.getReference(), "isRead", true);
-                    count++;
-                }
-                
-                // Create a final copy of count for use in the lambda
-                final int finalCount = count;
-                
-                // Commit the batch update
-                batch.commit()
-                    .addOnSuccessListener(aVoid -> {
-                        Log.d(TAG, "Successfully marked " + finalCount + " notifications as read");
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Error marking notifications as read: " + e.getMessage());
-                    });
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error querying notifications: " + e.getMessage());
-            });
+        markedReadUpTo = timestamp;
+        NotificationWatermark.markReadUpTo(firestore, user.getUid(), timestamp)
+            .addOnSuccessListener(aVoid -> Log.d(TAG, "Notifications marked read up to " + timestamp))
+            .addOnFailureListener(e -> Log.e(TAG, "Error marking notifications as read: " + e.getMessage()));
     }
     
     /**
      * Adapter for the notifications RecyclerView
      */
-    private class NotificationAdapter extends RecyclerView.Adapter<NotificationAdapter.NotificationViewHolder> {
+    private class NotificationAdapter
+            extends PagingDataAdapter<NotificationEntity, NotificationAdapter.NotificationViewHolder> {
         
-        private final List<Notification> notifications;
-        
-        NotificationAdapter(List<Notification> notifications) {
-            this.notifications = notifications;
+        NotificationAdapter() {
+            super(DIFF_CALLBACK);
         }
         
         @NonNull
@@ -244,33 +181,38 @@ public class NotificationsActivity extends AppCompatActivity {
         
         @Override
         public void onBindViewHolder(@NonNull NotificationViewHolder holder, int position) {
-            Notification notification = notifications.get(position);
+            NotificationEntity notification = getItem(position);
+            if (notification == null) return;
             
             // Set the icon based on notification type
-            String type = notification.getType();
+            String type = notification.type;
             Log.d(TAG, "Binding notification with type: " + type);
             
             if ("like".equals(type)) {
                 holder.iconView.setImageResource(android.R.drawable.btn_star_big_on);
-                holder.messageView.setText(notification.getFromUser() + " liked your photo");
+                holder.messageView.setText(notification.fromUser + " liked your photo");
             } else if ("follow".equals(type)) {
                 holder.iconView.setImageResource(android.R.drawable.ic_menu_add);
-                holder.messageView.setText(notification.getFromUser() + " started following you");
+                holder.messageView.setText(notification.fromUser + " started following you");
             } else {
                 // Default case for any unexpected types
                 holder.iconView.setImageResource(android.R.drawable.ic_dialog_info);
-                holder.messageView.setText(notification.getFromUser() + " interacted with your profile");
+                holder.messageView.setText(notification.fromUser + " interacted with your profile");
                 Log.w(TAG, "Unknown notification type: " + type);
             }
             
-            // Set the time
+            // Set the time (very old test data has no real timestamp)
             try {
-                CharSequence timeAgo = DateUtils.getRelativeTimeSpanString(
-                        notification.getTimestamp(),
-                        System.currentTimeMillis(),
-                        DateUtils.MINUTE_IN_MILLIS
-                );
-                holder.timeView.setText(timeAgo);
+                if (notification.timestamp <= 1) {
+                    holder.timeView.setText("Recently");
+                } else {
+                    CharSequence timeAgo = DateUtils.getRelativeTimeSpanString(
+                            notification.timestamp,
+                            System.currentTimeMillis(),
+                            DateUtils.MINUTE_IN_MILLIS
+                    );
+                    holder.timeView.setText(timeAgo);
+                }
             } catch (Exception e) {
                 Log.e(TAG, "Error formatting time", e);
                 holder.timeView.setText("Recently");
@@ -279,16 +221,11 @@ public class NotificationsActivity extends AppCompatActivity {
             // Set click listener to navigate to the sender's profile
             holder.itemView.setOnClickListener(v -> {
                 Intent intent = new Intent(NotificationsActivity.this, ProfileActivity.class);
-                intent.putExtra("USER_NAME", notification.getFromUser());
+                intent.putExtra("USER_NAME", notification.fromUser);
                 startActivity(intent);
             });
         }
         
-        @Override
-        public int getItemCount() {
-            return notifications.size();
-        }
-        
         class NotificationViewHolder extends RecyclerView.ViewHolder {
             ImageView iconView;
             TextView messageView;
@@ -0,0 +1,187 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Writes the mutations queued in MutationOutbox to Firestore, as one WriteBatch
+ * per run. If the batch is rejected, the mutations are sent one at a time so
+ * a single bad one (e.g. an edit of a deleted photo) does not hold back the
+ * rest. If more mutations were queued while the batch was committing, another
+ * flush is scheduled.
+ */
+public class OutboxFlushWorker extends Worker {
+
+    private static final String TAG = "OutboxFlushWorker";
+    // After this many rejected commits of its own a mutation is dropped
+    private static final int MAX_ATTEMPTS = 5;
+
+    // No mutation has more than 3 writes; stay well under the 500 writes of a batch
+    private static final int MAX_MUTATIONS_PER_BATCH = 100;
+
+    public OutboxFlushWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        List<MutationOutbox.Mutation> mutations = MutationOutbox.beginFlush(context, MAX_MUTATIONS_PER_BATCH);
+        if (mutations.isEmpty()) {
+            return Result.success();
+        }
+
+        FirebaseFirestore firestore = FirebaseFirestore.getInstance();
+        boolean morePending;
+        try {
+            int writes = commit(firestore, mutations);
+            morePending = MutationOutbox.endFlush(context, mutations, writes, true);
+            updateTopics(context, mutations);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to flush " + mutations.size() + " mutations", e);
+            if (isTransient(e)) {
+                MutationOutbox.endFlush(context, mutations, 0, false);
+                return Result.retry();
+            }
+            if (!flushOneByOne(context, firestore, mutations)) {
+                return Result.retry();
+            }
+            morePending = MutationOutbox.hasPending(context);
+        }
+
+        if (morePending) {
+            MutationOutbox.scheduleNextFlush(context);
+        }
+        return Result.success();
+    }
+
+    /**
+     * Commit each mutation on its own. The ones the server rejects are kept
+     * for the next run, and dropped once the photo or user is gone or after
+     * MAX_ATTEMPTS. Returns false if any are kept.
+     */
+    private boolean flushOneByOne(Context context, FirebaseFirestore firestore,
+                                  List<MutationOutbox.Mutation> mutations) {
+        boolean allDone = true;
+        for (MutationOutbox.Mutation mutation : mutations) {
+            List<MutationOutbox.Mutation> single = Collections.singletonList(mutation);
+            try {
+                int writes = commit(firestore, single);
+                MutationOutbox.endFlush(context, single, writes, true);
+                updateTopics(context, single);
+            } catch (Exception e) {
+                if (!isTransient(e)) mutation.failedAttempts++;
+                if (isNotFound(e) || mutation.failedAttempts >= MAX_ATTEMPTS) {
+                    Log.w(TAG, "Dropping " + mutation.type + " of " + mutation.targetId + " after "
+                            + mutation.failedAttempts + " failed attempts", e);
+                    MutationOutbox.endFlush(context, single, 0, true);
+                } else {
+                    Log.w(TAG, "Keeping " + mutation.type + " of " + mutation.targetId + " for another attempt", e);
+                    MutationOutbox.endFlush(context, single, 0, false);
+                    allDone = false;
+                }
+            }
+        }
+        return allDone;
+    }
+
+    // New photos of big accounts come through the author's topic; only follow
+    // it once the follow is really written, and only for the user still signed in
+    private static void updateTopics(Context context, List<MutationOutbox.Mutation> committed) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) return;
+        for (MutationOutbox.Mutation mutation : committed) {
+            if (!user.getUid().equals(mutation.userId)) continue;
+            if (MutationOutbox.TYPE_FOLLOW.equals(mutation.type)) {
+                AuthorTopics.subscribe(context, mutation.targetId);
+            } else if (MutationOutbox.TYPE_UNFOLLOW.equals(mutation.type)) {
+                AuthorTopics.unsubscribe(context, mutation.targetId);
+            }
+        }
+    }
+
+    // Commit the mutations in one batch and return how many writes it had
+    private int commit(FirebaseFirestore firestore, List<MutationOutbox.Mutation> mutations) throws Exception {
+        WriteBatch batch = firestore.batch();
+        int writes = 0;
+        for (MutationOutbox.Mutation mutation : mutations) {
+            writes += addToBatch(batch, firestore, mutation);
+        }
+        Tasks.await(batch.commit());
+        return writes;
+    }
+
+    // Errors that say nothing about the mutations themselves (no connection, stopped)
+    private static boolean isTransient(Exception e) {
+        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+        if (!(cause instanceof FirebaseFirestoreException)) return true;
+        switch (((FirebaseFirestoreException) cause).getCode()) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case ABORTED:
+            case RESOURCE_EXHAUSTED:
+            case CANCELLED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // update() of a document that was deleted meanwhile; retrying will not help
+    private static boolean isNotFound(Exception e) {
+        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+        return cause instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) cause).getCode() == FirebaseFirestoreException.Code.NOT_FOUND;
+    }
+
+    // Add the writes of one mutation to the batch and return how many there were
+    private int addToBatch(WriteBatch batch, FirebaseFirestore firestore, MutationOutbox.Mutation mutation) {
+        switch (mutation.type) {
+            case MutationOutbox.TYPE_LIKE:
+                PhotoLikes.addLike(batch, firestore, mutation.targetId, mutation.userId, mutation.username);
+                // Notify the author, unless they liked their own photo
+                if (mutation.targetName != null && !mutation.targetName.equals(mutation.username)) {
+                    batch.set(firestore.collection("notifications").document(),
+                            new Notification("like", mutation.username, mutation.targetName, mutation.recipientId));
+                    return 2;
+                }
+                return 1;
+            case MutationOutbox.TYPE_UNLIKE:
+                PhotoLikes.addUnlike(batch, firestore, mutation.targetId, mutation.userId,
+                        mutation.username, mutation.legacyLike);
+                return mutation.legacyLike ? 2 : 1;
+            case MutationOutbox.TYPE_FOLLOW:
+                FollowGraph.addFollow(batch, firestore, mutation.userId, mutation.targetId,
+                        new Notification("follow", mutation.username, mutation.targetName, mutation.recipientId));
+                return 3;
+            case MutationOutbox.TYPE_UNFOLLOW:
+                FollowGraph.addUnfollow(batch, firestore, mutation.userId, mutation.targetId);
+                return 2;
+            case MutationOutbox.TYPE_DESCRIPTION:
+                // update() rather than a merge, so an edit of a deleted photo fails
+                // with NOT_FOUND and is dropped instead of leaving a stub photo
+                batch.update(firestore.collection("photos").document(mutation.targetId),
+                        "description", mutation.description);
+                return 1;
+            default:
+                Log.w(TAG, "Unknown mutation type: " + mutation.type);
+                return 0;
+        }
+    }
+}
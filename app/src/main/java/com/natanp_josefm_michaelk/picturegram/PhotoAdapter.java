@@ -22,19 +22,17 @@ import java.util.ArrayList;
 import com.bumptech.glide.Glide;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHolder> {
     
     private static final String TAG = "PhotoAdapter";
+    // Partial-bind payload: only the like count and star need refreshing
+    private static final String PAYLOAD_LIKES = "likes";
     
     private List<UserPhoto> photoList;
     private OnPhotoClickListener listener;
     private ItemTouchHelper touchHelper;
-    private String currentUsername; // Username of the current user
     private FirebaseAuth auth;
-    private FirebaseFirestore firestore;
     
     public interface OnPhotoClickListener {
         void onPhotoClick(UserPhoto photo, int position);
@@ -43,12 +41,10 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         void onEditDescriptionClick(UserPhoto photo, int position);
     }
     
-    public PhotoAdapter(List<UserPhoto> photoList, OnPhotoClickListener listener, String username) {
+    public PhotoAdapter(List<UserPhoto> photoList, OnPhotoClickListener listener) {
         this.photoList = photoList;
         this.listener = listener;
-        this.currentUsername = username;
         this.auth = FirebaseAuth.getInstance();
-        this.firestore = FirebaseFirestore.getInstance();
     }
     
     public void setTouchHelper(ItemTouchHelper touchHelper) {
@@ -63,6 +59,16 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         return new PhotoViewHolder(view);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull PhotoViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && payloads.contains(PAYLOAD_LIKES)) {
+            // Like data changed - skip reloading the image and listeners
+            updateLikeUI(holder, photoList.get(position));
+            return;
+        }
+        super.onBindViewHolder(holder, position, payloads);
+    }
+
     @Override
     public void onBindViewHolder(@NonNull PhotoViewHolder holder, int position) {
         UserPhoto photo = photoList.get(position);
@@ -72,10 +78,11 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
             try {
                 // For new photos with file path (from gallery or camera)
                 if (photo.getStorageUrl() != null && !photo.getStorageUrl().isEmpty()) {
-                    // Use Firebase storage URL
+                    // Use the grid thumbnail from Firebase storage (original for older photos)
                     Glide.with(holder.photoImageView.getContext())
-                        .load(photo.getStorageUrl())
+                        .load(photo.getGridImageUrl())
                         .centerCrop()
+                        .listener(StartupTrace.firstPhotoListener(holder.photoImageView.getContext()))
                         .into(holder.photoImageView);
                 } else {
                     // Use local file path
@@ -95,17 +102,15 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
             holder.photoImageView.setImageResource(photo.getImageResourceId());
         }
         
+        // Queued uploads are shown dimmed until they commit
+        holder.itemView.setAlpha(photo.isPendingUpload() ? 0.5f : 1f);
+        
         // Set other data
         holder.photoDescriptionTextView.setText(photo.getDescription());
         
-        // Set up like count and icon
+        // Set up like count and icon (kept fresh by PhotoLikeStore, no read here)
         updateLikeUI(holder, photo);
         
-        // If this photo has a Firestore ID, check for current likes in Firestore
-        if (photo.hasFirestoreId()) {
-            loadLikesFromFirestore(holder, photo);
-        }
-        
         // Check if current user is the author - make it final for lambda capture
         final boolean isAuthor;
         FirebaseUser currentUser = auth.getCurrentUser();
@@ -158,7 +163,7 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
     
     private void updateLikeUI(PhotoViewHolder holder, UserPhoto photo) {
         holder.likeCountTextView.setText(String.valueOf(photo.getLikeCount()));
-        if (photo.isLikedByUser(currentUsername)) {
+        if (photo.isLikedByMe()) {
             holder.likeImageView.setImageResource(android.R.drawable.btn_star_big_on);
             holder.likeImageView.setColorFilter(Color.RED);
         } else {
@@ -167,32 +172,21 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
         }
     }
     
-    private void loadLikesFromFirestore(PhotoViewHolder holder, UserPhoto photo) {
-        // Load fresh like data from Firestore
-        firestore.collection("photos").document(photo.getFirestoreId())
-            .get()
-            .addOnSuccessListener(documentSnapshot -> {
-                if (documentSnapshot.exists()) {
-                    // Update like count
-                    Long likeCount = documentSnapshot.getLong("likeCount");
-                    if (likeCount != null) {
-                        photo.setLikeCount(likeCount.intValue());
-                    }
-                    
-                    // Update likedBy list
-                    List<String> likedBy = (List<String>) documentSnapshot.get("likedBy");
-                    if (likedBy != null) {
-                        photo.getLikedByUsers().clear();
-                        photo.getLikedByUsers().addAll(likedBy);
-                    }
-                    
-                    // Update UI
-                    updateLikeUI(holder, photo);
-                }
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error loading likes from Firestore for photo: " + photo.getFirestoreId(), e);
-            });
+    /**
+     * Called by PhotoLikeStore when new like data arrives for a photo.
+     * The photo is looked up by ID rather than through a captured ViewHolder,
+     * so a late update can never land on a holder that was recycled for another photo.
+     */
+    public void onLikesChanged(String photoId, int likeCount, boolean likedByMe) {
+        for (int i = 0; i < photoList.size(); i++) {
+            UserPhoto photo = photoList.get(i);
+            if (photoId.equals(photo.getFirestoreId())) {
+                photo.setLikeCount(likeCount);
+                photo.setLikedByMe(likedByMe);
+                notifyItemChanged(i, PAYLOAD_LIKES);
+                return;
+            }
+        }
     }
 
     @Override
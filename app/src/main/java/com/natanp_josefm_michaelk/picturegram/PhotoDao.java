@@ -0,0 +1,49 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import androidx.paging.PagingSource;
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import androidx.room.Upsert;
+
+import java.util.List;
+
+@Dao
+public interface PhotoDao {
+
+    @Upsert
+    void upsertAll(List<PhotoEntity> photos);
+
+    @Query("SELECT * FROM photos WHERE authorId = :authorId ORDER BY timestamp DESC LIMIT :limit")
+    List<PhotoEntity> latestByAuthor(String authorId, int limit);
+
+    @Query("DELETE FROM photos WHERE id = :photoId")
+    void delete(String photoId);
+
+    @Upsert
+    void upsertFeedItems(List<FeedItemEntity> items);
+
+    // A page of the feed: the photos and their place in it, in one invalidation
+    @Transaction
+    default void saveFeedPage(List<PhotoEntity> photos, List<FeedItemEntity> items) {
+        upsertAll(photos);
+        upsertFeedItems(items);
+    }
+
+    // Newest first, in the same order as FeedRepository's query; Room
+    // invalidates the source whenever either table changes
+    @Query("SELECT photos.* FROM feed_items INNER JOIN photos ON photos.id = feed_items.photoId "
+            + "WHERE feed_items.ownerId = :ownerId "
+            + "ORDER BY feed_items.timestamp DESC, feed_items.photoId DESC")
+    PagingSource<Integer, PhotoEntity> feed(String ownerId);
+
+    @Query("SELECT COUNT(*) FROM feed_items WHERE ownerId = :ownerId AND photoId IN (:photoIds)")
+    int countFeedItems(String ownerId, List<String> photoIds);
+
+    // Last stored item in feed order, null if nothing is stored for the user
+    @Query("SELECT * FROM feed_items WHERE ownerId = :ownerId ORDER BY timestamp, photoId LIMIT 1")
+    FeedItemEntity oldestFeedItem(String ownerId);
+
+    @Query("DELETE FROM feed_items WHERE ownerId = :ownerId")
+    void deleteFeed(String ownerId);
+}
@@ -0,0 +1,64 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Local copy of a photo document (see LocalDatabase)
+ */
+@Entity(tableName = "photos", indices = {@Index("authorId"), @Index("timestamp")})
+public class PhotoEntity {
+    @PrimaryKey
+    @NonNull
+    public String id = "";
+    public String authorId;
+    public String authorName;
+    public String description;
+    public String storageUrl;
+    public String thumbUrl;
+    public String mediumUrl;
+    public long timestamp;
+    public int likeCount;
+
+    public static PhotoEntity fromPhoto(UserPhoto photo) {
+        PhotoEntity entity = new PhotoEntity();
+        entity.id = photo.getFirestoreId();
+        entity.authorId = photo.getAuthorId();
+        entity.authorName = photo.getAuthorName();
+        entity.description = photo.getDescription();
+        entity.storageUrl = photo.getStorageUrl();
+        entity.thumbUrl = photo.getThumbUrl();
+        entity.mediumUrl = photo.getMediumUrl();
+        entity.timestamp = photo.getTimestamp() != null ? photo.getTimestamp().getTime() : 0;
+        entity.likeCount = photo.getLikeCount();
+        return entity;
+    }
+
+    // Same shape as PhotoPageLoader.toUserPhoto builds from a document
+    public UserPhoto toPhoto() {
+        UserPhoto photo = new UserPhoto(storageUrl, description, authorId, authorName);
+        photo.setFirestoreId(id);
+        photo.setStorageUrl(storageUrl);
+        photo.setThumbUrl(thumbUrl);
+        photo.setMediumUrl(mediumUrl);
+        photo.setTimestamp(new Date(timestamp));
+        photo.setLikeCount(likeCount);
+        return photo;
+    }
+
+    // For DiffUtil
+    public boolean sameContents(PhotoEntity other) {
+        return timestamp == other.timestamp
+                && likeCount == other.likeCount
+                && Objects.equals(description, other.description)
+                && Objects.equals(authorName, other.authorName)
+                && Objects.equals(thumbUrl, other.thumbUrl)
+                && Objects.equals(mediumUrl, other.mediumUrl)
+                && Objects.equals(storageUrl, other.storageUrl);
+    }
+}
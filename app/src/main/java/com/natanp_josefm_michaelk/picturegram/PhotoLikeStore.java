@@ -0,0 +1,182 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shared source of like data for the photos shown in a list.
+ * Instead of reading a photo document every time a cell is bound, each loaded
+ * page of photos gets three snapshot listeners, and updates are handed out by photo ID:
+ *  - the photo documents (likeCount / likedBy of likes from before the shards existed)
+ *  - the like shards of those photos, summed per photo (see PhotoLikes)
+ *  - the current user's own like documents, for the "liked by me" star
+ */
+public class PhotoLikeStore {
+
+    private static final String TAG = "PhotoLikeStore";
+    // Firestore accepts at most 30 values in an "in" filter
+    private static final int MAX_IDS_PER_QUERY = 30;
+
+    public interface LikesListener {
+        void onLikesChanged(String photoId, int likeCount, boolean likedByMe);
+    }
+
+    private final FirebaseFirestore firestore;
+    private final String currentUserId;
+    private final String currentUsername;
+    private final LikesListener listener;
+    // IDs already covered by a listener (or about to be), so nothing is requested twice
+    private final Set<String> watchedIds = new HashSet<>();
+    private final List<ListenerRegistration> registrations = new ArrayList<>();
+    private boolean stopped = false;
+
+    // Per photo: count stored on the photo document, shard counts by shard ID, like state
+    private final Map<String, Integer> baseCounts = new HashMap<>();
+    private final Map<String, Map<String, Integer>> shardCounts = new HashMap<>();
+    private final Set<String> legacyLikedByMe = new HashSet<>();
+    private final Set<String> likedByMe = new HashSet<>();
+
+    public PhotoLikeStore(FirebaseFirestore firestore, String currentUserId, String currentUsername,
+                          LikesListener listener) {
+        this.firestore = firestore;
+        this.currentUserId = currentUserId;
+        this.currentUsername = currentUsername;
+        this.listener = listener;
+    }
+
+    /**
+     * Start listening to like changes for the given photos.
+     * Photos that are already being watched, or that are not in Firestore yet, are skipped.
+     */
+    public void watch(List<UserPhoto> photos) {
+        if (stopped) return;
+
+        List<String> newIds = new ArrayList<>();
+        for (UserPhoto photo : photos) {
+            if (photo.hasFirestoreId() && watchedIds.add(photo.getFirestoreId())) {
+                newIds.add(photo.getFirestoreId());
+            }
+        }
+
+        for (int start = 0; start < newIds.size(); start += MAX_IDS_PER_QUERY) {
+            List<String> chunk = new ArrayList<>(
+                newIds.subList(start, Math.min(start + MAX_IDS_PER_QUERY, newIds.size())));
+
+            registrations.add(firestore.collection("photos")
+                .whereIn(FieldPath.documentId(), chunk)
+                .addSnapshotListener(changes(chunk, this::onPhotoChanged)));
+
+            registrations.add(firestore.collectionGroup(PhotoLikes.LIKE_SHARDS)
+                .whereIn("photoId", chunk)
+                .addSnapshotListener(changes(chunk, this::onShardChanged)));
+
+            if (currentUserId != null) {
+                registrations.add(firestore.collectionGroup(PhotoLikes.LIKES)
+                    .whereEqualTo("userId", currentUserId)
+                    .whereIn("photoId", chunk)
+                    .addSnapshotListener(changes(chunk, this::onMyLikeChanged)));
+            }
+        }
+    }
+
+    private interface ChangeHandler {
+        void onChange(DocumentChange.Type type, DocumentSnapshot document);
+    }
+
+    // Only documents that actually changed are passed on
+    private EventListener<QuerySnapshot> changes(List<String> chunk, ChangeHandler handler) {
+        return (snapshot, e) -> {
+            if (stopped) return;
+            if (e != null) {
+                Log.e(TAG, "Error listening to likes for " + chunk.size() + " photos", e);
+                return;
+            }
+            if (snapshot == null) return;
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                handler.onChange(change.getType(), change.getDocument());
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onPhotoChanged(DocumentChange.Type type, DocumentSnapshot document) {
+        if (type == DocumentChange.Type.REMOVED) return;
+        String photoId = document.getId();
+        Long likeCount = document.getLong("likeCount");
+        baseCounts.put(photoId, likeCount != null ? likeCount.intValue() : 0);
+        List<String> likedBy = (List<String>) document.get("likedBy");
+        if (likedBy != null && likedBy.contains(currentUsername)) {
+            legacyLikedByMe.add(photoId);
+        } else {
+            legacyLikedByMe.remove(photoId);
+        }
+        dispatch(photoId);
+    }
+
+    private void onShardChanged(DocumentChange.Type type, DocumentSnapshot document) {
+        String photoId = document.getString("photoId");
+        if (photoId == null) return;
+        Map<String, Integer> shards = shardCounts.get(photoId);
+        if (shards == null) {
+            shards = new HashMap<>();
+            shardCounts.put(photoId, shards);
+        }
+        if (type == DocumentChange.Type.REMOVED) {
+            shards.remove(document.getId());
+        } else {
+            Long count = document.getLong("count");
+            shards.put(document.getId(), count != null ? count.intValue() : 0);
+        }
+        dispatch(photoId);
+    }
+
+    private void onMyLikeChanged(DocumentChange.Type type, DocumentSnapshot document) {
+        String photoId = document.getString("photoId");
+        if (photoId == null) return;
+        if (type == DocumentChange.Type.REMOVED) {
+            likedByMe.remove(photoId);
+        } else {
+            likedByMe.add(photoId);
+        }
+        dispatch(photoId);
+    }
+
+    private void dispatch(String photoId) {
+        Integer base = baseCounts.get(photoId);
+        if (base == null) return; // wait for the photo document itself
+
+        int total = base;
+        Map<String, Integer> shards = shardCounts.get(photoId);
+        if (shards != null) {
+            for (int count : shards.values()) {
+                total += count;
+            }
+        }
+        listener.onLikesChanged(photoId, Math.max(0, total),
+                likedByMe.contains(photoId) || legacyLikedByMe.contains(photoId));
+    }
+
+    // Detach every listener; call from onDestroy of the owning screen
+    public void stop() {
+        stopped = true;
+        for (ListenerRegistration registration : registrations) {
+            registration.remove();
+        }
+        registrations.clear();
+        watchedIds.clear();
+    }
+}
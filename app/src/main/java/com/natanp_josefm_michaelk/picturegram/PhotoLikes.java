@@ -0,0 +1,61 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Layout of likes in Firestore:
+ *   photos/{photoId}/likes/{userId}       one document per like, so "liked by me" is a single lookup
+ *   photos/{photoId}/likeShards/{0..N-1}  counter split over N documents
+ *
+ * A like increments a random shard instead of the photo document, so a popular
+ * photo is not limited by the write rate of one document. The total is the
+ * photo's own likeCount (likes from before the shards existed) plus the sum of
+ * the shards, see PhotoLikeStore.
+ *
+ * The client only writes the like documents. The onLikeCreate / onLikeDelete
+ * functions move the shards when a like document is created or deleted, so
+ * liking a photo twice (an outbox retry, two devices) counts once.
+ */
+public class PhotoLikes {
+
+    public static final String LIKES = "likes";
+    public static final String LIKE_SHARDS = "likeShards";
+    public static final int SHARD_COUNT = 10; // keep in sync with LIKE_SHARD_COUNT in the functions
+
+    public static DocumentReference likeRef(FirebaseFirestore firestore, String photoId, String userId) {
+        return firestore.collection("photos").document(photoId).collection(LIKES).document(userId);
+    }
+
+    // The like document, added to an existing batch
+    public static WriteBatch addLike(WriteBatch batch, FirebaseFirestore firestore,
+                                     String photoId, String userId, String username) {
+        Map<String, Object> like = new HashMap<>();
+        like.put("photoId", photoId);   // for collection group lookups
+        like.put("userId", userId);
+        like.put("username", username);
+        like.put("likedAt", FieldValue.serverTimestamp());
+
+        return batch.set(likeRef(firestore, photoId, userId), like);
+    }
+
+    /**
+     * Likes made before the shards existed live in the photo's likedBy/likeCount
+     * fields (legacy is true) and are removed from likedBy; onPhotoUpdate lowers
+     * likeCount by what actually left the array. All others are a like document.
+     */
+    public static WriteBatch addUnlike(WriteBatch batch, FirebaseFirestore firestore,
+                                       String photoId, String userId, String username, boolean legacy) {
+        batch.delete(likeRef(firestore, photoId, userId));
+        if (legacy) {
+            batch.update(firestore.collection("photos").document(photoId),
+                    "likedBy", FieldValue.arrayRemove(username));
+        }
+        return batch;
+    }
+}
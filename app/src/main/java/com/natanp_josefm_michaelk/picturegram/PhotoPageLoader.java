@@ -0,0 +1,144 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Loads photos from Firestore one page at a time, newest first.
+ * The last document of each page is kept as the cursor for the next one,
+ * so only the photos that are actually scrolled to get downloaded.
+ */
+public class PhotoPageLoader {
+
+    private static final String TAG = "PhotoPageLoader";
+
+    public interface PageCallback {
+        void onPageLoaded(List<UserPhoto> photos, boolean hasMore);
+        void onPageFailed(Exception e);
+    }
+
+    private final Query baseQuery;
+    private final int pageSize;
+
+    private DocumentSnapshot lastVisible; // cursor: last document of the previous page
+    private boolean loading = false;
+    private boolean hasMore = true;
+
+    public PhotoPageLoader(Query baseQuery, int pageSize) {
+        this.baseQuery = baseQuery;
+        this.pageSize = pageSize;
+    }
+
+    // Query for all photos of one author, newest first
+    public static Query authorQuery(FirebaseFirestore firestore, String authorId) {
+        return firestore.collection("photos")
+                .whereEqualTo("authorId", authorId)
+                .orderBy("timestamp", Query.Direction.DESCENDING);
+    }
+
+    /**
+     * Home feed of a user, newest first. Items are copies of the photo documents
+     * (same fields, same ID) written by the onPhotoUpload function for every
+     * follower, so the feed is one query no matter how many accounts are followed.
+     */
+    public static Query feedQuery(FirebaseFirestore firestore, String userId) {
+        return firestore.collection("feeds")
+                .document(userId)
+                .collection("items")
+                .orderBy("timestamp", Query.Direction.DESCENDING);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    // Start again from the first page (e.g. pull to refresh)
+    public void reset() {
+        lastVisible = null;
+        hasMore = true;
+        loading = false;
+    }
+
+    /**
+     * Fetch the next page. Calls made while a page is already in flight,
+     * or after the last page was reached, are ignored.
+     */
+    public void loadNextPage(PageCallback callback) {
+        if (loading || !hasMore) {
+            return;
+        }
+        loading = true;
+
+        Query query = baseQuery.limit(pageSize);
+        if (lastVisible != null) {
+            query = query.startAfter(lastVisible);
+        }
+
+        query.get()
+            .addOnSuccessListener(queryDocumentSnapshots -> {
+                List<DocumentSnapshot> documents = queryDocumentSnapshots.getDocuments();
+                List<UserPhoto> photos = new ArrayList<>(documents.size());
+                for (DocumentSnapshot document : documents) {
+                    try {
+                        photos.add(toUserPhoto(document));
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error processing photo document: " + document.getId(), e);
+                    }
+                }
+
+                if (!documents.isEmpty()) {
+                    lastVisible = documents.get(documents.size() - 1);
+                }
+                // A short page means there is nothing left to fetch
+                hasMore = documents.size() == pageSize;
+                loading = false;
+
+                callback.onPageLoaded(photos, hasMore);
+            })
+            .addOnFailureListener(e -> {
+                loading = false;
+                callback.onPageFailed(e);
+            });
+    }
+
+    // Build a UserPhoto from a document in the photos collection
+    @SuppressWarnings("unchecked")
+    public static UserPhoto toUserPhoto(DocumentSnapshot document) {
+        UserPhoto photo = new UserPhoto(
+            document.getString("storageUrl"),
+            document.getString("description"),
+            document.getString("authorId"),
+            document.getString("uploadedBy")
+        );
+        photo.setFirestoreId(document.getId());
+        photo.setStorageUrl(document.getString("storageUrl"));
+        photo.setThumbUrl(document.getString("thumbUrl"));
+        photo.setMediumUrl(document.getString("mediumUrl"));
+        Long timestamp = document.getLong("timestamp");
+        if (timestamp != null) {
+            photo.setTimestamp(new Date(timestamp));
+        }
+        Long likeCount = document.getLong("likeCount");
+        photo.setLikeCount(likeCount != null ? likeCount.intValue() : 0);
+        List<String> likedBy = (List<String>) document.get("likedBy");
+        if (likedBy != null) {
+            photo.getLikedByUsers().addAll(likedBy);
+        }
+        return photo;
+    }
+}
@@ -0,0 +1,121 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Builds the smaller JPEG versions of a photo that are uploaded next to the original:
+ * a thumbnail for the 3-column profile grid and a medium size for full-width views.
+ * Decoding uses inSampleSize so a 12 MP camera photo is never fully loaded into memory.
+ * Must be called off the main thread.
+ */
+public class PhotoRenditions {
+
+    private static final String TAG = "PhotoRenditions";
+
+    // Longest side in pixels
+    public static final int THUMB_MAX_SIZE = 320;   // a third of the screen width is ~360px
+    public static final int MEDIUM_MAX_SIZE = 1080;
+    private static final int JPEG_QUALITY = 82;
+
+    public static byte[] createThumbnail(Context context, Uri imageUri) throws IOException {
+        return createRendition(context, imageUri, THUMB_MAX_SIZE);
+    }
+
+    public static byte[] createMedium(Context context, Uri imageUri) throws IOException {
+        return createRendition(context, imageUri, MEDIUM_MAX_SIZE);
+    }
+
+    /**
+     * Decode the image at roughly the target size, scale it so the longest side
+     * is at most maxSize, apply the EXIF rotation and encode as JPEG.
+     */
+    public static byte[] createRendition(Context context, Uri imageUri, int maxSize) throws IOException {
+        // 1) Read only the dimensions
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream is = context.getContentResolver().openInputStream(imageUri)) {
+            if (is == null) throw new IOException("Failed to open input stream from URI");
+            BitmapFactory.decodeStream(is, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Could not read image size: " + imageUri);
+        }
+
+        // 2) Decode subsampled, close to (but not below) the target size
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, maxSize);
+        Bitmap decoded;
+        try (InputStream is = context.getContentResolver().openInputStream(imageUri)) {
+            if (is == null) throw new IOException("Failed to open input stream from URI");
+            decoded = BitmapFactory.decodeStream(is, null, options);
+        }
+        if (decoded == null) {
+            throw new IOException("Could not decode image: " + imageUri);
+        }
+
+        // 3) Exact scale and rotation in one pass
+        Bitmap output = scaleAndRotate(decoded, maxSize, readRotationDegrees(context, imageUri));
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            output.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, bytes);
+            return bytes.toByteArray();
+        } finally {
+            if (output != decoded) output.recycle();
+            decoded.recycle();
+        }
+    }
+
+    // Largest power of two that keeps the longest side at or above maxSize
+    static int calculateInSampleSize(int width, int height, int maxSize) {
+        int longest = Math.max(width, height);
+        int inSampleSize = 1;
+        while (longest / (inSampleSize * 2) >= maxSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static Bitmap scaleAndRotate(Bitmap source, int maxSize, int rotationDegrees) {
+        int longest = Math.max(source.getWidth(), source.getHeight());
+        float scale = longest > maxSize ? (float) maxSize / longest : 1f;
+        if (scale == 1f && rotationDegrees == 0) {
+            return source;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotationDegrees);
+        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+    }
+
+    // Camera photos are usually stored sideways with an EXIF orientation tag
+    private static int readRotationDegrees(Context context, Uri imageUri) {
+        try (InputStream is = context.getContentResolver().openInputStream(imageUri)) {
+            if (is == null) return 0;
+            int orientation = new ExifInterface(is).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read EXIF orientation", e);
+            return 0;
+        }
+    }
+}
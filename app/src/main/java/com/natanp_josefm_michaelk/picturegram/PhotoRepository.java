@@ -0,0 +1,52 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Photos as the screens see them: pages read from Firestore are written
+ * through to LocalDatabase, and the latest photos of an author can be read
+ * back from it before the network answers.
+ */
+public class PhotoRepository {
+
+    public interface PhotosCallback {
+        void onPhotos(List<UserPhoto> photos);
+    }
+
+    private final PhotoDao photoDao;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public PhotoRepository(Context context) {
+        photoDao = LocalDatabase.getInstance(context).photoDao();
+    }
+
+    // Store photos read from Firestore (placeholders of pending uploads are skipped)
+    public void save(List<UserPhoto> photos) {
+        List<PhotoEntity> entities = new ArrayList<>();
+        for (UserPhoto photo : photos) {
+            if (photo.hasFirestoreId()) entities.add(PhotoEntity.fromPhoto(photo));
+        }
+        if (entities.isEmpty()) return;
+        LocalDatabase.IO.execute(() -> photoDao.upsertAll(entities));
+    }
+
+    public void delete(String photoId) {
+        LocalDatabase.IO.execute(() -> photoDao.delete(photoId));
+    }
+
+    // Newest stored photos of an author, delivered on the main thread
+    public void latestByAuthor(String authorId, int limit, PhotosCallback callback) {
+        LocalDatabase.IO.execute(() -> {
+            List<UserPhoto> photos = new ArrayList<>();
+            for (PhotoEntity entity : photoDao.latestByAuthor(authorId, limit)) {
+                photos.add(entity.toPhoto());
+            }
+            mainHandler.post(() -> callback.onPhotos(photos));
+        });
+    }
+}
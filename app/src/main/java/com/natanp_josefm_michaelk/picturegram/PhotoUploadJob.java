@@ -0,0 +1,154 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.UploadTask;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uploads one queued photo (original + renditions) to Firebase Storage.
+ * Blocks until done, so it must only be called from a worker thread.
+ *
+ * The original is uploaded as a resumable session: the session URI is saved as
+ * soon as Storage hands it out, and a retried upload continues from where the
+ * previous attempt stopped instead of sending the whole file again.
+ */
+public class PhotoUploadJob {
+
+    private static final String TAG = "PhotoUploadJob";
+    private static final String SESSION_PREFS = "upload_sessions";
+
+    public static class UploadedUrls {
+        public final String storageUrl;
+        public final String thumbUrl;
+        public final String mediumUrl;
+        public final long bytes; // total size sent, for throughput tuning
+
+        UploadedUrls(String storageUrl, String thumbUrl, String mediumUrl, long bytes) {
+            this.storageUrl = storageUrl;
+            this.thumbUrl = thumbUrl;
+            this.mediumUrl = mediumUrl;
+            this.bytes = bytes;
+        }
+    }
+
+    public static UploadedUrls upload(Context context, String authorId, String photoId, File localFile)
+            throws Exception {
+        Uri fileUri = Uri.fromFile(localFile);
+        byte[] thumb = PhotoRenditions.createThumbnail(context, fileUri);
+        byte[] medium = PhotoRenditions.createMedium(context, fileUri);
+
+        String basePath = "photos/" + authorId + "/" + photoId;
+        StorageReference root = FirebaseStorage.getInstance().getReference();
+        StorageReference photoRef = root.child(basePath + ".jpg");
+        StorageReference thumbRef = root.child(basePath + "_thumb.jpg");
+        StorageReference mediumRef = root.child(basePath + "_medium.jpg");
+
+        List<Uri> urls = Tasks.await(Tasks.<Uri>whenAllSuccess(
+                uploadOriginal(context, photoRef, fileUri, photoId),
+                downloadUrlAfter(thumbRef, thumbRef.putBytes(thumb)),
+                downloadUrlAfter(mediumRef, mediumRef.putBytes(medium))));
+
+        clearSession(context, photoId);
+        return new UploadedUrls(urls.get(0).toString(), urls.get(1).toString(), urls.get(2).toString(),
+                localFile.length() + thumb.length + medium.length);
+    }
+
+    // Fields of a new document in the photos collection
+    public static Map<String, Object> photoDocument(String description, UploadedUrls urls,
+                                                    String authorId, String authorName, long timestamp) {
+        Map<String, Object> photoData = new HashMap<>();
+        photoData.put("description", description);
+        photoData.put("storageUrl", urls.storageUrl);
+        photoData.put("thumbUrl", urls.thumbUrl);
+        photoData.put("mediumUrl", urls.mediumUrl);
+        photoData.put("uploadedBy", authorName);
+        photoData.put("authorId", authorId);
+        photoData.put("timestamp", timestamp);
+        photoData.put("likeCount", 0); // likes themselves go to the likes/likeShards subcollections
+        return photoData;
+    }
+
+    private static Task<Uri> uploadOriginal(Context context, StorageReference ref, Uri fileUri, String photoId) {
+        StorageMetadata metadata = new StorageMetadata.Builder()
+                .setContentType("image/jpeg")
+                .build();
+
+        String savedSession = sessions(context).getString(photoId, null);
+        UploadTask uploadTask;
+        if (savedSession != null) {
+            Log.d(TAG, "Resuming upload session for photo: " + photoId);
+            uploadTask = ref.putFile(fileUri, metadata, Uri.parse(savedSession));
+        } else {
+            uploadTask = ref.putFile(fileUri, metadata);
+        }
+
+        uploadTask.addOnProgressListener(snapshot -> {
+            Uri sessionUri = snapshot.getUploadSessionUri();
+            if (sessionUri != null && !sessionUri.toString().equals(savedSession)) {
+                sessions(context).edit().putString(photoId, sessionUri.toString()).apply();
+            }
+        });
+
+        return uploadTask.continueWithTask(task -> {
+            if (!task.isSuccessful()) {
+                // An expired or broken session must not be reused on the next attempt; after a
+                // network error or a cancel the next attempt continues from it
+                Exception error = task.getException();
+                if (error instanceof StorageException) {
+                    StorageException storageError = (StorageException) error;
+                    if (isSessionInvalid(storageError.getErrorCode(), storageError.getHttpResultCode())) {
+                        Log.d(TAG, "Dropping upload session for photo: " + photoId);
+                        clearSession(context, photoId);
+                    }
+                }
+                throw error;
+            }
+            return ref.getDownloadUrl();
+        });
+    }
+
+    private static Task<Uri> downloadUrlAfter(StorageReference ref, UploadTask uploadTask) {
+        return uploadTask.continueWithTask(task -> {
+            if (!task.isSuccessful()) {
+                throw task.getException();
+            }
+            return ref.getDownloadUrl();
+        });
+    }
+
+    /**
+     * Whether a failed upload was rejected because of its session: a corrupt
+     * transfer, or a 4xx answer for the session (expired, unknown or invalid).
+     * Auth errors, timeouts and rate limits say nothing about the session.
+     */
+    static boolean isSessionInvalid(int errorCode, int httpResultCode) {
+        if (errorCode == StorageException.ERROR_INVALID_CHECKSUM) {
+            return true;
+        }
+        return httpResultCode >= 400 && httpResultCode < 500
+                && httpResultCode != 401 && httpResultCode != 403
+                && httpResultCode != 408 && httpResultCode != 429;
+    }
+
+    public static void clearSession(Context context, String photoId) {
+        sessions(context).edit().remove(photoId).apply();
+    }
+
+    private static SharedPreferences sessions(Context context) {
+        return context.getSharedPreferences(SESSION_PREFS, Context.MODE_PRIVATE);
+    }
+}
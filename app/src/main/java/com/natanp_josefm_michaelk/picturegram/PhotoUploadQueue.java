@@ -0,0 +1,361 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent queue of photo uploads, drained by PhotoUploadWorker.
+ *
+ * The picked image is first copied into app storage so the upload survives the
+ * activity (content URIs from the gallery lose their permission once it dies).
+ * Each upload is then enqueued as its own unique work, so cancelling or
+ * failing one never affects the others; PhotoUploadWorker bounds how many
+ * transfer at the same time.
+ * The queue itself is kept in SharedPreferences so the profile grid can show
+ * placeholders for uploads that have not finished yet. resume() enqueues work
+ * again for records that lost theirs.
+ */
+public class PhotoUploadQueue {
+
+    public static final String TAG_PHOTO_UPLOAD = "photo_upload";
+    private static final String TAG_PHOTO_PREFIX = "photo:";
+    private static final String TAG_BATCH_PREFIX = "batch:";
+
+    // At most this many single uploads transfer in parallel
+    static final int MAX_PARALLEL_UPLOADS = 3;
+    private static final String WORK_PREFIX = "photo_upload_";
+    private static final String BATCH_WORK_PREFIX = "photo_upload_batch_";
+
+    private static final String QUEUE_PREFS = "upload_queue_prefs";
+    private static final String QUEUE_KEY = "pending_uploads";
+    private static final String BATCH_CONCURRENCY_KEY = "batch_concurrency";
+    private static final String PENDING_DIR = "pending_uploads";
+
+    // Settings (AppSettings prefs) controlling when uploads may run, see SettingsActivity
+    private static final String SETTINGS_PREFS = "AppSettings";
+    public static final String SETTING_WIFI_ONLY = "uploadOnWifiOnly";
+    public static final String SETTING_CHARGING_ONLY = "uploadWhileChargingOnly";
+
+    private static final Gson gson = new Gson();
+
+    /**
+     * An upload that was accepted but has not been committed to Firestore yet
+     */
+    public static class PendingUpload {
+        public String photoId;
+        public String localPath;
+        public String description;
+        public String authorId;
+        public String authorName;
+        public long createdAt;
+        public String batchId; // null for single uploads
+
+        // Filled in by BatchUploadWorker once the files are in Storage, so a retried
+        // batch does not upload them again
+        public String storageUrl;
+        public String thumbUrl;
+        public String mediumUrl;
+
+        public PendingUpload() {
+        }
+
+        PendingUpload(String photoId, String localPath, String description,
+                      String authorId, String authorName, long createdAt) {
+            this.photoId = photoId;
+            this.localPath = localPath;
+            this.description = description;
+            this.authorId = authorId;
+            this.authorName = authorName;
+            this.createdAt = createdAt;
+        }
+
+        public boolean isUploaded() {
+            return storageUrl != null;
+        }
+
+        public UserPhoto toPlaceholder() {
+            UserPhoto photo = new UserPhoto(Uri.fromFile(new File(localPath)).toString(),
+                    description, authorId, authorName);
+            photo.setPendingUploadId(photoId);
+            return photo;
+        }
+    }
+
+    /**
+     * Copy the image into app storage. Does file IO, call off the main thread.
+     */
+    public static File copyToPendingDir(Context context, Uri imageUri, String photoId) throws IOException {
+        File directory = new File(context.getFilesDir(), PENDING_DIR);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        File file = new File(directory, photoId + ".jpg");
+        try (InputStream is = context.getContentResolver().openInputStream(imageUri);
+             OutputStream os = new FileOutputStream(file)) {
+            if (is == null) {
+                throw new IOException("Failed to open input stream from URI");
+            }
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = is.read(buffer)) > 0) {
+                os.write(buffer, 0, length);
+            }
+        }
+        return file;
+    }
+
+    public static void deletePendingCopy(Context context, String photoId) {
+        new File(new File(context.getFilesDir(), PENDING_DIR), photoId + ".jpg").delete();
+    }
+
+    /**
+     * Add an upload to the queue and schedule its worker
+     */
+    public static PendingUpload enqueue(Context context, String photoId, File localFile, String description,
+                                        String authorId, String authorName) {
+        PendingUpload upload = new PendingUpload(photoId, localFile.getAbsolutePath(), description,
+                authorId, authorName, System.currentTimeMillis());
+        addPending(context, upload);
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_PREFIX + photoId, ExistingWorkPolicy.KEEP, uploadRequest(context, upload));
+        return upload;
+    }
+
+    private static OneTimeWorkRequest uploadRequest(Context context, PendingUpload upload) {
+        Data input = new Data.Builder()
+                .putString(PhotoUploadWorker.KEY_PHOTO_ID, upload.photoId)
+                .putString(PhotoUploadWorker.KEY_LOCAL_PATH, upload.localPath)
+                .putString(PhotoUploadWorker.KEY_DESCRIPTION, upload.description)
+                .putString(PhotoUploadWorker.KEY_AUTHOR_ID, upload.authorId)
+                .putString(PhotoUploadWorker.KEY_AUTHOR_NAME, upload.authorName)
+                .putLong(PhotoUploadWorker.KEY_CREATED_AT, upload.createdAt)
+                .build();
+
+        return new OneTimeWorkRequest.Builder(PhotoUploadWorker.class)
+                .setInputData(input)
+                .setConstraints(uploadConstraints(context))
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .addTag(TAG_PHOTO_UPLOAD)
+                .addTag(TAG_PHOTO_PREFIX + upload.photoId)
+                .build();
+    }
+
+    /**
+     * Queue several photos as one batch. A single BatchUploadWorker uploads them
+     * with adaptive parallelism and commits all photo documents in one WriteBatch.
+     * Files are given in selection order; the first one ends up on top of the grid.
+     */
+    public static List<PendingUpload> enqueueBatch(Context context, List<String> photoIds, List<File> localFiles,
+                                                   String description, String authorId, String authorName) {
+        String batchId = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        List<PendingUpload> uploads = new ArrayList<>();
+        for (int i = 0; i < localFiles.size(); i++) {
+            // Newest first in the grid, so earlier selections get later timestamps
+            PendingUpload upload = new PendingUpload(photoIds.get(i), localFiles.get(i).getAbsolutePath(),
+                    description, authorId, authorName, now + (localFiles.size() - 1 - i));
+            upload.batchId = batchId;
+            uploads.add(upload);
+        }
+        addPending(context, uploads);
+        WorkManager.getInstance(context).enqueueUniqueWork(BATCH_WORK_PREFIX + batchId,
+                ExistingWorkPolicy.KEEP, batchRequest(context, batchId));
+        return uploads;
+    }
+
+    private static OneTimeWorkRequest batchRequest(Context context, String batchId) {
+        return new OneTimeWorkRequest.Builder(BatchUploadWorker.class)
+                .setInputData(new Data.Builder()
+                        .putString(BatchUploadWorker.KEY_BATCH_ID, batchId)
+                        .build())
+                .setConstraints(uploadConstraints(context))
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .addTag(TAG_PHOTO_UPLOAD)
+                .addTag(TAG_BATCH_PREFIX + batchId)
+                .build();
+    }
+
+    /**
+     * Enqueue work again for every queued upload. With KEEP (at start-up) only
+     * records whose work is gone get a new worker, e.g. after the app was
+     * force-stopped or its work was cleared. With REPLACE (after the upload
+     * settings changed) every upload is restarted under the new constraints;
+     * transfers resume from their Storage session. Records whose local copy
+     * is gone cannot be uploaded any more and are dropped.
+     */
+    public static void resume(Context context, ExistingWorkPolicy policy) {
+        WorkManager workManager = WorkManager.getInstance(context);
+        Set<String> batches = new HashSet<>();
+        for (PendingUpload upload : getPending(context)) {
+            if (upload.batchId != null) {
+                if (batches.add(upload.batchId)) {
+                    workManager.enqueueUniqueWork(BATCH_WORK_PREFIX + upload.batchId, policy,
+                            batchRequest(context, upload.batchId));
+                }
+            } else if (new File(upload.localPath).exists()) {
+                workManager.enqueueUniqueWork(WORK_PREFIX + upload.photoId, policy,
+                        uploadRequest(context, upload));
+            } else {
+                removePending(context, upload.photoId);
+            }
+        }
+    }
+
+    public static void cancel(Context context, String photoId) {
+        WorkManager.getInstance(context).cancelAllWorkByTag(TAG_PHOTO_PREFIX + photoId);
+        PendingUpload removed = removePending(context, photoId);
+        if (removed != null) {
+            new File(removed.localPath).delete();
+        }
+    }
+
+    // Unmetered network unless the user allowed mobile data; charging only if asked for
+    public static Constraints uploadConstraints(Context context) {
+        return new Constraints.Builder()
+                .setRequiredNetworkType(isWifiOnly(context) ? NetworkType.UNMETERED : NetworkType.CONNECTED)
+                .setRequiresCharging(isChargingOnly(context))
+                .build();
+    }
+
+    public static boolean isWifiOnly(Context context) {
+        return settings(context).getBoolean(SETTING_WIFI_ONLY, true);
+    }
+
+    public static boolean isChargingOnly(Context context) {
+        return settings(context).getBoolean(SETTING_CHARGING_ONLY, false);
+    }
+
+    // Store an upload setting and restart queued uploads under it
+    public static void setUploadSetting(Context context, String key, boolean value) {
+        settings(context).edit().putBoolean(key, value).apply();
+        resume(context, ExistingWorkPolicy.REPLACE);
+    }
+
+    private static SharedPreferences settings(Context context) {
+        return context.getSharedPreferences(SETTINGS_PREFS, Context.MODE_PRIVATE);
+    }
+
+    // Extract the photo ID from a WorkInfo's tags
+    public static String photoIdFromTags(Iterable<String> tags) {
+        for (String tag : tags) {
+            if (tag.startsWith(TAG_PHOTO_PREFIX)) {
+                return tag.substring(TAG_PHOTO_PREFIX.length());
+            }
+        }
+        return null;
+    }
+
+    public static boolean isBatchWork(Iterable<String> tags) {
+        for (String tag : tags) {
+            if (tag.startsWith(TAG_BATCH_PREFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Parallelism the last batch settled on, used as the starting point for the next one
+    public static int getBatchConcurrency(Context context, int defaultValue) {
+        return prefs(context).getInt(BATCH_CONCURRENCY_KEY, defaultValue);
+    }
+
+    public static void setBatchConcurrency(Context context, int concurrency) {
+        prefs(context).edit().putInt(BATCH_CONCURRENCY_KEY, concurrency).apply();
+    }
+
+    public static synchronized List<PendingUpload> getPending(Context context) {
+        String json = prefs(context).getString(QUEUE_KEY, null);
+        if (json == null) return new ArrayList<>();
+        Type type = new TypeToken<List<PendingUpload>>() {}.getType();
+        List<PendingUpload> uploads = gson.fromJson(json, type);
+        return uploads != null ? uploads : new ArrayList<>();
+    }
+
+    public static synchronized List<PendingUpload> getBatch(Context context, String batchId) {
+        List<PendingUpload> batch = new ArrayList<>();
+        for (PendingUpload upload : getPending(context)) {
+            if (batchId.equals(upload.batchId)) {
+                batch.add(upload);
+            }
+        }
+        return batch;
+    }
+
+    public static synchronized boolean isPending(Context context, String photoId) {
+        for (PendingUpload upload : getPending(context)) {
+            if (upload.photoId.equals(photoId)) return true;
+        }
+        return false;
+    }
+
+    private static synchronized void addPending(Context context, PendingUpload upload) {
+        List<PendingUpload> uploads = getPending(context);
+        uploads.add(upload);
+        savePending(context, uploads);
+    }
+
+    private static synchronized void addPending(Context context, List<PendingUpload> added) {
+        List<PendingUpload> uploads = getPending(context);
+        uploads.addAll(added);
+        savePending(context, uploads);
+    }
+
+    // Replace the stored record with the same photo ID (e.g. after its files were uploaded)
+    public static synchronized void updatePending(Context context, PendingUpload updated) {
+        List<PendingUpload> uploads = getPending(context);
+        for (int i = 0; i < uploads.size(); i++) {
+            if (uploads.get(i).photoId.equals(updated.photoId)) {
+                uploads.set(i, updated);
+                savePending(context, uploads);
+                return;
+            }
+        }
+    }
+
+    public static synchronized PendingUpload removePending(Context context, String photoId) {
+        List<PendingUpload> uploads = getPending(context);
+        PendingUpload removed = null;
+        for (int i = 0; i < uploads.size(); i++) {
+            if (uploads.get(i).photoId.equals(photoId)) {
+                removed = uploads.remove(i);
+                break;
+            }
+        }
+        savePending(context, uploads);
+        return removed;
+    }
+
+    private static void savePending(Context context, List<PendingUpload> uploads) {
+        prefs(context).edit().putString(QUEUE_KEY, gson.toJson(uploads)).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(QUEUE_PREFS, Context.MODE_PRIVATE);
+    }
+}
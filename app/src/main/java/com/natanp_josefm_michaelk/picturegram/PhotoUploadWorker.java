@@ -0,0 +1,135 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+import androidx.work.Data;
+import androidx.work.ListenableWorker;
+import androidx.work.WorkerParameters;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Background upload of one queued photo: uploads the files, then writes the
+ * photo document. Failures are retried with backoff by WorkManager, so an
+ * upload survives the app being closed or the network dropping. After the
+ * last attempt the photo stays queued and is resumed on the next start.
+ *
+ * Every photo has its own unique work. Uploads run on their own pool of
+ * MAX_PARALLEL_UPLOADS threads, so at most that many transfer at once, and
+ * the others queue there without holding one of WorkManager's threads (which
+ * the outbox and notification workers need).
+ */
+public class PhotoUploadWorker extends ListenableWorker {
+
+    private static final String TAG = "PhotoUploadWorker";
+    private static final int MAX_ATTEMPTS = 8;
+
+    private static final ExecutorService uploadExecutor =
+            Executors.newFixedThreadPool(PhotoUploadQueue.MAX_PARALLEL_UPLOADS);
+
+    // Input
+    public static final String KEY_PHOTO_ID = "photoId";
+    public static final String KEY_LOCAL_PATH = "localPath";
+    public static final String KEY_DESCRIPTION = "description";
+    public static final String KEY_AUTHOR_ID = "authorId";
+    public static final String KEY_AUTHOR_NAME = "authorName";
+    public static final String KEY_CREATED_AT = "createdAt";
+
+    // Output
+    public static final String KEY_STORAGE_URL = "storageUrl";
+    public static final String KEY_THUMB_URL = "thumbUrl";
+    public static final String KEY_MEDIUM_URL = "mediumUrl";
+
+    public PhotoUploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<Result> startWork() {
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            uploadExecutor.execute(() -> {
+                // WorkManager stopped us while queued (constraints lost, or the time limit); it runs the work again later
+                if (isStopped()) {
+                    completer.set(Result.retry());
+                    return;
+                }
+                try {
+                    completer.set(doWork());
+                } catch (Throwable t) {
+                    completer.setException(t);
+                }
+            });
+            return "PhotoUploadWorker " + getId();
+        });
+    }
+
+    private Result doWork() {
+        Data input = getInputData();
+        String photoId = input.getString(KEY_PHOTO_ID);
+        String localPath = input.getString(KEY_LOCAL_PATH);
+        String authorId = input.getString(KEY_AUTHOR_ID);
+        if (photoId == null || localPath == null || authorId == null) {
+            Log.e(TAG, "Missing upload input");
+            return Result.failure();
+        }
+
+        File localFile = new File(localPath);
+        if (!localFile.exists()) {
+            // Cancelled (file removed) or already finished by an earlier run
+            Log.w(TAG, "Local file gone, dropping upload: " + photoId);
+            PhotoUploadQueue.removePending(getApplicationContext(), photoId);
+            return Result.failure();
+        }
+        return upload(photoId, localFile, authorId, input);
+    }
+
+    private Result upload(String photoId, File localFile, String authorId, Data input) {
+        try {
+            PhotoUploadJob.UploadedUrls urls =
+                    PhotoUploadJob.upload(getApplicationContext(), authorId, photoId, localFile);
+
+            Tasks.await(FirebaseFirestore.getInstance()
+                    .collection("photos")
+                    .document(photoId)
+                    .set(PhotoUploadJob.photoDocument(
+                            input.getString(KEY_DESCRIPTION),
+                            urls,
+                            authorId,
+                            input.getString(KEY_AUTHOR_NAME),
+                            input.getLong(KEY_CREATED_AT, System.currentTimeMillis()))));
+            Log.d(TAG, "Photo uploaded and saved: " + photoId);
+
+            finish(photoId, localFile);
+            return Result.success(new Data.Builder()
+                    .putString(KEY_STORAGE_URL, urls.storageUrl)
+                    .putString(KEY_THUMB_URL, urls.thumbUrl)
+                    .putString(KEY_MEDIUM_URL, urls.mediumUrl)
+                    .build());
+        } catch (Exception e) {
+            Log.e(TAG, "Upload attempt " + (getRunAttemptCount() + 1) + " failed for photo: " + photoId, e);
+            if (getRunAttemptCount() + 1 >= MAX_ATTEMPTS) {
+                // Keep the record and the local copy; PhotoUploadQueue.resume() retries it on the next start
+                Log.w(TAG, "Giving up for now, photo kept in the queue: " + photoId);
+                return Result.failure();
+            }
+            return Result.retry();
+        }
+    }
+
+    private void finish(String photoId, File localFile) {
+        PhotoUploadQueue.removePending(getApplicationContext(), photoId);
+        if (!localFile.delete()) {
+            Log.w(TAG, "Could not delete local copy: " + localFile);
+        }
+    }
+}
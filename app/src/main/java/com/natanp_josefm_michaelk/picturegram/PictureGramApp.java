@@ -0,0 +1,38 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.app.Application;
+
+import androidx.work.ExistingWorkPolicy;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.PersistentCacheSettings;
+
+/**
+ * Application class, runs before any activity, service or worker. Firestore
+ * settings can only be changed before the first read or write, so they are set
+ * here. The notification channel is created here too, because a push can start
+ * the process without any activity. Queued uploads that lost their work are
+ * also enqueued again here.
+ */
+public class PictureGramApp extends Application {
+
+    // Room for profiles, feed items and notifications across sessions.
+    // Firestore evicts least recently used documents beyond this.
+    private static final long FIRESTORE_CACHE_BYTES = 100L * 1024 * 1024;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        FirebaseFirestore.getInstance().setFirestoreSettings(new FirebaseFirestoreSettings.Builder()
+                .setLocalCacheSettings(PersistentCacheSettings.newBuilder()
+                        .setSizeBytes(FIRESTORE_CACHE_BYTES)
+                        .build())
+                .build());
+
+        NotificationHelper.createNotificationChannel(this);
+
+        // E.g. after a force stop, which cancels all work
+        PhotoUploadQueue.resume(this, ExistingWorkPolicy.KEEP);
+    }
+}
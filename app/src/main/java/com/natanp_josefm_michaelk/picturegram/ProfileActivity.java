@@ -2,9 +2,12 @@ package com.natanp_josefm_michaelk.picturegram;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Source;
 import android.app.AlertDialog;
+import android.content.ClipData;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -37,9 +40,13 @@ import androidx.core.content.FileProvider;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.RecyclerView;
+import androidx.work.Data;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.google.android.gms.tasks.Tasks;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import com.google.firebase.storage.FirebaseStorage;
@@ -56,9 +63,13 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.bumptech.glide.Glide;
 
@@ -71,9 +82,28 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
     // Permission Request Codes
     private static final int REQUEST_CODE_STORAGE_PERMISSION = 101;
     private static final int REQUEST_CODE_CAMERA_PERMISSION = 102;
+    private static final int REQUEST_CODE_NOTIFICATION_PERMISSION = 103;
+    // Asked once per app launch, like the splash used to
+    private static boolean notificationPermissionRequested = false;
+
+    // Photo grid paging (SplashActivity prefetches the first page)
+    static final int PHOTO_PAGE_SIZE = 30;
+    private static final int PHOTO_PREFETCH_DISTANCE = 9; // three rows of the grid
 
     private RecyclerView photosRecyclerView;
     private PhotoAdapter photoAdapter;
+    private PhotoPageLoader photoPageLoader;
+    private PhotoLikeStore photoLikeStore;
+    private PhotoRepository photoRepository;
+    // Photos painted from the local mirror until the first page arrives from Firestore
+    private final List<UserPhoto> storedPhotos = new ArrayList<>();
+    private boolean firstPageLoaded = false;
+    // File work for uploads (copying picked images into the upload queue)
+    private final ExecutorService imageExecutor = Executors.newSingleThreadExecutor();
+    // Batch placeholders currently being looked up after their batch finished
+    private final Set<String> reconcilingUploadIds = new HashSet<>();
+    // Failed upload work already reported to the user
+    private final Set<UUID> reportedFailures = new HashSet<>();
     
     private List<UserPhoto> userPhotoList;
     private String userName;
@@ -90,6 +120,9 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
     private FirebaseAuth auth;
     private FirebaseFirestore firestore;
     private boolean isFollowing = false;
+    private TextView followCountsTextView;
+    private long profileFollowersCount = 0;
+    private long profileFollowingCount = 0;
     
     // Notification UI elements
     private FrameLayout notificationContainer;
@@ -124,9 +157,6 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             // User is signed in
             notAuthenticatedTextView.setVisibility(View.GONE);
             profileContentGroup.setVisibility(View.VISIBLE);
-            
-            // Update FCM token to ensure it's current (important for app reinstalls)
-            FCMTokenService.updateCurrentUserToken();
         }
 
         // Get views
@@ -135,8 +165,10 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         Button uploadPhotoButton = findViewById(R.id.uploadPhotoButton);
         photosRecyclerView = findViewById(R.id.photosRecyclerView);
         Button settingsButton = findViewById(R.id.settingsButton);
+        Button feedButton = findViewById(R.id.feedButton);
         addFriendButton = findViewById(R.id.addFriendButton);
         TextView bioTextView = findViewById(R.id.bioTextView);
+        followCountsTextView = findViewById(R.id.followCountsTextView);
 
         // Get the data passed from the adapter
         userName = getIntent().getStringExtra("USER_NAME");
@@ -159,18 +191,27 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         
         // Fetch bio from users collection
         if (userName != null) {
-            firestore.collection("users")
-                .whereEqualTo("username", userName)  // Use the profile being viewed's username
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
+            // Painted from the local cache, then again only if the server copy differs
+            FirestoreReads.get(firestore.collection("users")
+                .whereEqualTo("username", userName),  // Use the profile being viewed's username
+                FirestoreReads.Policy.CACHE_THEN_NETWORK,
+                queryDocumentSnapshots -> {
                     if (!queryDocumentSnapshots.isEmpty()) {
                         // Get the first matching document
-                        String bio = queryDocumentSnapshots.getDocuments().get(0).getString("bio");
+                        DocumentSnapshot userDoc = queryDocumentSnapshots.getDocuments().get(0);
+                        String bio = userDoc.getString("bio");
                         if (bio != null) {
                             bioTextView.setText(bio);
                         } else {
                             bioTextView.setText("");
                         }
+                        
+                        // Counters only, the follower lists are in subcollections
+                        Long followers = userDoc.getLong(FollowGraph.FIELD_FOLLOWERS_COUNT);
+                        Long following = userDoc.getLong(FollowGraph.FIELD_FOLLOWING_COUNT);
+                        profileFollowersCount = followers != null ? followers : 0;
+                        profileFollowingCount = following != null ? following : 0;
+                        showFollowCounts();
                     }
                 });
         }
@@ -179,6 +220,7 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         if (userName != null && userName.equals(currentUserName)) {
             // It's the current user's profile
             settingsButton.setVisibility(View.VISIBLE);
+            feedButton.setVisibility(View.VISIBLE);
             addFriendButton.setVisibility(View.GONE);
             // Optionally allow uploading only on own profile
             uploadPhotoButton.setVisibility(View.VISIBLE);
@@ -186,6 +228,7 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         } else {
             // It's someone else's profile
             settingsButton.setVisibility(View.GONE);
+            feedButton.setVisibility(View.GONE);
             addFriendButton.setVisibility(View.VISIBLE);
             // Optionally hide uploading on other profiles
             uploadPhotoButton.setVisibility(View.GONE);
@@ -220,9 +263,30 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         photosRecyclerView.setLayoutManager(layoutManager);
         
         // Create and set adapter
-        photoAdapter = new PhotoAdapter(userPhotoList, this, userName);
+        photoAdapter = new PhotoAdapter(userPhotoList, this);
         photosRecyclerView.setAdapter(photoAdapter);
         
+        photoRepository = new PhotoRepository(this);
+        
+        // One like listener per loaded page, shared by every cell of that page
+        FirebaseUser signedInUser = auth.getCurrentUser();
+        photoLikeStore = new PhotoLikeStore(firestore,
+                signedInUser != null ? signedInUser.getUid() : null,
+                signedInUser != null ? signedInUser.getDisplayName() : null,
+                MutationOutbox.withPendingLikes(this, photoAdapter::onLikesChanged));
+        
+        // Load the next page when the grid gets close to its end
+        photosRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0) return;
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (lastVisible >= photoAdapter.getItemCount() - PHOTO_PREFETCH_DISTANCE) {
+                    loadNextPhotoPage();
+                }
+            }
+        });
+        
         // Load photos
         loadPhotos();
         
@@ -257,12 +321,11 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         if (userName != null && userName.equals(currentUserName)) {
             notificationContainer.setVisibility(View.VISIBLE);
             
-            // Create a test notification for debugging (remove in production)
-            // Uncomment for testing
-            // createTestNotification(currentUserName);
-            
             // Set up real-time listener for unread notifications count
             setupNotificationCounter(notificationCount, notificationDot);
+
+            // Asked here rather than on the splash, which no longer waits around
+            requestNotificationPermission();
             
             // Set up click listener for notification bell
             notificationBell.setOnClickListener(v -> {
@@ -296,6 +359,15 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         // Reload profile picture when activity resumes
         loadProfilePicture();
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (photoLikeStore != null) {
+            photoLikeStore.stop();
+        }
+        imageExecutor.shutdown();
+    }
     
     private String getStoragePermission() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
@@ -413,7 +485,11 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         String storagePermission = getStoragePermission();
         if (ContextCompat.checkSelfPermission(this, storagePermission) == PackageManager.PERMISSION_GRANTED) {
             // Permission already granted
-            Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+            // GET_CONTENT lets the user select several photos at once
+            Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+            intent.setType("image/*");
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
             galleryLauncher.launch(intent);
         } else {
             // Request permission
@@ -493,78 +569,40 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             return;
         }
         
+        if (photo.isPendingUpload()) {
+            Toast.makeText(this, "Photo is still uploading", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
         String currentUsername = currentUser.getDisplayName();
-        boolean isCurrentlyLiked = photo.isLikedByUser(currentUsername);
         
         // Check if this photo has a Firestore ID
         if (photo.hasFirestoreId()) {
             // This photo is in Firestore, update likes there
-            updateLikeInFirestore(photo, currentUsername, !isCurrentlyLiked);
+            updateLikeInFirestore(photo, currentUser.getUid(), currentUsername, !photo.isLikedByMe());
         } else {
             // This is a legacy photo, just use local storage
             handleLegacyLike(photo, position, currentUsername);
         }
     }
     
-    private void updateLikeInFirestore(UserPhoto photo, String username, boolean isLiking) {
-        // Get the Firestore document reference for this photo
-        String photoId = photo.getFirestoreId();
-        
-        // Create a reference to the photos document
-        // Update the Firestore document
-        if (isLiking) {
-            // Add the user's name to likedBy array and increment likeCount
-            firestore.collection("photos").document(photoId)
-                .update(
-                    "likedBy", FieldValue.arrayUnion(username),
-                    "likeCount", FieldValue.increment(1)
-                )
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Like added to Firestore for photo: " + photoId);
-                    
-                    // Update local object
-                    if (!photo.isLikedByUser(username)) {
-                        photo.getLikedByUsers().add(username);
-                        photo.setLikeCount(photo.getLikeCount() + 1);
-                        photoAdapter.notifyItemChanged(userPhotoList.indexOf(photo));
-                    }
-                    
-                    // Show success message
-                    Toast.makeText(this, "Photo liked", Toast.LENGTH_SHORT).show();
-                    
-                    // Create notification (if this is not the user's own photo)
-                    if (!username.equals(photo.getAuthorName())) {
-                        createLikeNotification(username, photo.getAuthorName());
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error updating like in Firestore", e);
-                    Toast.makeText(this, "Failed to update like", Toast.LENGTH_SHORT).show();
-                });
-        } else {
-            // Remove the user's name from likedBy array and decrement likeCount
-            firestore.collection("photos").document(photoId)
-                .update(
-                    "likedBy", FieldValue.arrayRemove(username),
-                    "likeCount", FieldValue.increment(-1)
-                )
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Like removed from Firestore for photo: " + photoId);
-                    
-                    // Update local object
-                    if (photo.isLikedByUser(username)) {
-                        photo.getLikedByUsers().remove(username);
-                        photo.setLikeCount(Math.max(0, photo.getLikeCount() - 1)); // Ensure we don't go below 0
-                        photoAdapter.notifyItemChanged(userPhotoList.indexOf(photo));
-                    }
-                    
-                    // Show success message
-                    Toast.makeText(this, "Like removed", Toast.LENGTH_SHORT).show();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error removing like in Firestore", e);
-                    Toast.makeText(this, "Failed to remove like", Toast.LENGTH_SHORT).show();
-                });
+    /**
+     * Like or unlike through the outbox. The star flips right away; the like
+     * document and counter shard are written by OutboxFlushWorker, and a like
+     * undone before the flush is never written at all.
+     */
+    private void updateLikeInFirestore(UserPhoto photo, String userId, String username, boolean isLiking) {
+        MutationOutbox.like(this, photo, userId, username, isLiking);
+        setLikedOptimistically(photo, isLiking);
+    }
+    
+    private void setLikedOptimistically(UserPhoto photo, boolean liked) {
+        if (photo.isLikedByMe() == liked) return;
+        photo.setLikedByMe(liked);
+        photo.setLikeCount(Math.max(0, photo.getLikeCount() + (liked ? 1 : -1)));
+        int position = userPhotoList.indexOf(photo);
+        if (position >= 0) {
+            photoAdapter.notifyItemChanged(position);
         }
     }
     
@@ -584,16 +622,16 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             // If this is a new like (not a removal), create a notification
             if (photo.isLikedByUser(username)) {
                 if (!username.equals(photo.getAuthorName())) {
-                    createLikeNotification(username, photo.getAuthorName());
+                    createLikeNotification(username, photo.getAuthorName(), photo.getAuthorId());
                 }
             }
         }
     }
     
-    private void createLikeNotification(String fromUsername, String toUsername) {
+    private void createLikeNotification(String fromUsername, String toUsername, String toUserId) {
         try {
             // Create and save notification to Firestore
-            Notification notification = new Notification("like", fromUsername, toUsername);
+            Notification notification = new Notification("like", fromUsername, toUsername, toUserId);
             
             // Log notification data before saving
             Log.d(TAG, "Creating like notification: from=" + notification.getFromUser() + 
@@ -636,6 +674,13 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             return;
         }
 
+        // Queued upload: cancel it instead of deleting anything remote
+        if (photo.isPendingUpload()) {
+            PhotoUploadQueue.cancel(this, photo.getPendingUploadId());
+            deletePhotoFromList(photo, position);
+            return;
+        }
+
         // Show confirmation dialog
         new AlertDialog.Builder(this)
             .setTitle("Delete Photo")
@@ -660,6 +705,7 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             .delete()
             .addOnSuccessListener(aVoid -> {
                 Log.d(TAG, "Photo document deleted from Firestore: " + photo.getFirestoreId());
+                photoRepository.delete(photo.getFirestoreId());
                 
                 // Now delete from Storage if URL exists
                 if (photo.getStorageUrl() != null) {
@@ -685,6 +731,10 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
     }
     
     private void deletePhotoFromStorage(UserPhoto photo, int position) {
+        // Renditions are best effort, older photos do not have them
+        deleteRendition(photo.getThumbUrl());
+        deleteRendition(photo.getMediumUrl());
+
         StorageReference photoRef = storage.getReferenceFromUrl(photo.getStorageUrl());
         photoRef.delete().addOnCompleteListener(task -> {
             if (task.isSuccessful()) {
@@ -696,6 +746,12 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         });
     }
     
+    private void deleteRendition(String url) {
+        if (url == null || url.isEmpty()) return;
+        storage.getReferenceFromUrl(url).delete()
+            .addOnFailureListener(e -> Log.w(TAG, "Could not delete rendition: " + url, e));
+    }
+    
     @Override
     public void onEditDescriptionClick(UserPhoto photo, int position) {
         FirebaseUser currentUser = auth.getCurrentUser();
@@ -703,6 +759,10 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             Toast.makeText(this, "Only the author can edit the description", Toast.LENGTH_SHORT).show();
             return;
         }
+        if (photo.isPendingUpload()) {
+            Toast.makeText(this, "Photo is still uploading", Toast.LENGTH_SHORT).show();
+            return;
+        }
 
         // Show dialog to edit description
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
@@ -717,7 +777,13 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             String newDescription = input.getText().toString();
             photo.setDescription(newDescription);
             photoAdapter.notifyItemChanged(position);
-            savePhotos();
+            if (photo.hasFirestoreId()) {
+                // Only the last edit before the flush is written
+                MutationOutbox.editDescription(this, currentUser.getUid(), photo.getFirestoreId(), newDescription);
+                photoRepository.save(Collections.singletonList(photo));
+            } else {
+                savePhotos();
+            }
         });
         
         builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
@@ -744,48 +810,83 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             }
         }
 
-        // Load photos from Firestore
-        firestore.collection("photos")
-            .whereEqualTo("authorId", userId)
-            .get()
-            .addOnSuccessListener(queryDocumentSnapshots -> {
-                List<UserPhoto> photos = new ArrayList<>();
-                
-                for (com.google.firebase.firestore.QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                    try {
-                        UserPhoto photo = new UserPhoto(
-                            document.getString("storageUrl"),
-                            document.getString("description"),
-                            document.getString("authorId"),
-                            document.getString("uploadedBy")
-                        );
-                        photo.setFirestoreId(document.getId());
-                        photo.setStorageUrl(document.getString("storageUrl"));
-                        Long likeCount = document.getLong("likeCount");
-                        photo.setLikeCount(likeCount != null ? likeCount.intValue() : 0);
-                        List<String> likedBy = (List<String>) document.get("likedBy");
-                        if (likedBy != null) {
-                            photo.getLikedByUsers().addAll(likedBy);
-                        }
-                        photos.add(photo);
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error processing photo document: " + document.getId(), e);
-                    }
+        // Start paging from the newest photo
+        photoPageLoader = new PhotoPageLoader(PhotoPageLoader.authorQuery(firestore, userId), PHOTO_PAGE_SIZE);
+        userPhotoList.clear();
+        storedPhotos.clear();
+        firstPageLoaded = false;
+        photoAdapter.notifyDataSetChanged();
+
+        // Own profile: show uploads that are still queued
+        FirebaseUser currentUser = auth.getCurrentUser();
+        if (currentUser != null && userId.equals(currentUser.getUid())) {
+            showPendingUploads(userId);
+        }
+
+        // Paint what the local mirror has while the first page is on its way
+        photoRepository.latestByAuthor(userId, PHOTO_PAGE_SIZE, photos -> {
+            if (firstPageLoaded || photos.isEmpty()) return;
+            MutationOutbox.applyPending(this, photos);
+            storedPhotos.addAll(photos);
+            int start = userPhotoList.size();
+            userPhotoList.addAll(photos);
+            photoAdapter.notifyItemRangeInserted(start, photos.size());
+        });
+
+        loadNextPhotoPage();
+    }
+
+    // The stored copies make way for the photos from Firestore
+    private void removeStoredPhotos() {
+        for (UserPhoto stored : storedPhotos) {
+            int position = userPhotoList.indexOf(stored);
+            if (position >= 0) {
+                userPhotoList.remove(position);
+                photoAdapter.notifyItemRemoved(position);
+            }
+        }
+        storedPhotos.clear();
+    }
+
+    private void loadNextPhotoPage() {
+        if (photoPageLoader == null || photoPageLoader.isLoading() || !photoPageLoader.hasMore()) {
+            return;
+        }
+
+        photoPageLoader.loadNextPage(new PhotoPageLoader.PageCallback() {
+            @Override
+            public void onPageLoaded(List<UserPhoto> photos, boolean hasMore) {
+                Log.d(TAG, "Loaded page of " + photos.size() + " photos, hasMore=" + hasMore);
+                firstPageLoaded = true;
+                removeStoredPhotos();
+                if (photos.isEmpty() && userPhotoList.isEmpty()) {
+                    StartupTrace.cancelFirstPhoto("profile has no photos");
                 }
-                
-                // Update the UI on the main thread
-                runOnUiThread(() -> {
-                    userPhotoList.clear();
-                    userPhotoList.addAll(photos);
-                    photoAdapter.notifyDataSetChanged();
-                });
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error loading photos from Firestore for user: " + userId, e);
-                runOnUiThread(() -> {
-                    Toast.makeText(this, "Failed to load photos", Toast.LENGTH_SHORT).show();
-                });
-            });
+                photoRepository.save(photos);
+                // An upload that committed while we were paging is already in the list
+                Set<String> shownIds = new HashSet<>();
+                for (UserPhoto shown : userPhotoList) {
+                    if (shown.hasFirestoreId()) shownIds.add(shown.getFirestoreId());
+                    if (shown.isPendingUpload()) shownIds.add(shown.getPendingUploadId());
+                }
+                List<UserPhoto> newPhotos = new ArrayList<>();
+                for (UserPhoto photo : photos) {
+                    if (!shownIds.contains(photo.getFirestoreId())) newPhotos.add(photo);
+                }
+                MutationOutbox.applyPending(ProfileActivity.this, newPhotos);
+
+                int start = userPhotoList.size();
+                userPhotoList.addAll(newPhotos);
+                photoAdapter.notifyItemRangeInserted(start, newPhotos.size());
+                photoLikeStore.watch(newPhotos);
+            }
+
+            @Override
+            public void onPageFailed(Exception e) {
+                Log.e(TAG, "Error loading photos from Firestore", e);
+                Toast.makeText(ProfileActivity.this, "Failed to load photos", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     public void openUsersActivityFromProfile(View view) {
@@ -793,6 +894,11 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         startActivity(intent);
     }
 
+    public void openFeedActivityFromProfile(View view) {
+        Intent intent = new Intent(this, FeedActivity.class);
+        startActivity(intent);
+    }
+
     public void openSettingsActivityFromProfile(View view) {
         Intent intent = new Intent(this, SettingsActivity.class);
         startActivity(intent);
@@ -819,93 +925,260 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
                 // Camera permission denied
                 Toast.makeText(this, "Camera permission is required to take photos.", Toast.LENGTH_SHORT).show();
             }
+        } else if (requestCode == REQUEST_CODE_NOTIFICATION_PERMISSION) {
+            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+                Log.d(TAG, "Notification permission granted");
+            } else {
+                Log.w(TAG, "Notification permission denied");
+                Toast.makeText(this,
+                        "Notifications will be disabled. You can enable them in app settings.",
+                        Toast.LENGTH_LONG).show();
+            }
+        }
+    }
+
+    // Only needed for Android 13+ (API level 33+)
+    private void requestNotificationPermission() {
+        if (notificationPermissionRequested) return;
+        notificationPermissionRequested = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                        != PackageManager.PERMISSION_GRANTED) {
+            Log.d(TAG, "Requesting POST_NOTIFICATIONS permission");
+            ActivityCompat.requestPermissions(this,
+                    new String[]{Manifest.permission.POST_NOTIFICATIONS}, REQUEST_CODE_NOTIFICATION_PERMISSION);
         }
     }
 
-    private void uploadPhotoToFirebase(Uri imageUri, String description, OnPhotoUploadListener listener) {
+    private void uploadPhotoToFirebase(Uri imageUri, String description) {
         FirebaseUser currentUser = auth.getCurrentUser();
         if (currentUser == null) {
             Toast.makeText(this, "You must be logged in to upload photos", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        try {
-            String photoId = UUID.randomUUID().toString();
-            String filename = currentUser.getUid() + "/" + photoId + ".jpg";
-            StorageReference photoRef = storage.getReference().child("photos/" + filename);
+        String photoId = UUID.randomUUID().toString();
+        Context appContext = getApplicationContext();
 
-            UploadTask uploadTask = photoRef.putFile(imageUri);
-            
-            uploadTask.continueWithTask(task -> {
-                if (!task.isSuccessful()) {
-                    throw task.getException();
+        // Copy the image into app storage off the main thread, then hand it to the
+        // upload queue, which keeps going even if this activity is closed
+        Tasks.call(imageExecutor, () -> PhotoUploadQueue.copyToPendingDir(appContext, imageUri, photoId))
+            .addOnSuccessListener(this, localFile -> {
+                PhotoUploadQueue.PendingUpload upload = PhotoUploadQueue.enqueue(appContext, photoId, localFile,
+                        description, currentUser.getUid(), currentUser.getDisplayName());
+
+                // Show the photo right away; it is reconciled when the upload commits
+                userPhotoList.add(0, upload.toPlaceholder());
+                photoAdapter.notifyItemInserted(0);
+                photosRecyclerView.scrollToPosition(0);
+
+                Toast.makeText(this, "Uploading photo...", Toast.LENGTH_SHORT).show();
+            })
+            .addOnFailureListener(this, e -> {
+                Log.e(TAG, "Error preparing upload", e);
+                Toast.makeText(this, "Error preparing upload", Toast.LENGTH_SHORT).show();
+            });
+    }
+
+    // Several photos from one gallery selection, uploaded as one batch
+    private void uploadPhotoBatch(List<Uri> imageUris, String description) {
+        FirebaseUser currentUser = auth.getCurrentUser();
+        if (currentUser == null) {
+            Toast.makeText(this, "You must be logged in to upload photos", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        Context appContext = getApplicationContext();
+        List<String> photoIds = new ArrayList<>();
+        for (int i = 0; i < imageUris.size(); i++) {
+            photoIds.add(UUID.randomUUID().toString());
+        }
+
+        Tasks.call(imageExecutor, () -> {
+                List<File> localFiles = new ArrayList<>();
+                for (int i = 0; i < imageUris.size(); i++) {
+                    localFiles.add(PhotoUploadQueue.copyToPendingDir(appContext, imageUris.get(i), photoIds.get(i)));
                 }
-                return photoRef.getDownloadUrl();
-            }).addOnCompleteListener(task -> {
-                if (task.isSuccessful()) {
-                    Uri downloadUri = task.getResult();
-                    
-                    UserPhoto newPhoto = new UserPhoto(
-                        imageUri.toString(),
-                        description,
-                        currentUser.getUid(),
-                        currentUser.getDisplayName()
-                    );
-                    newPhoto.setStorageUrl(downloadUri.toString());
-                    
-                    savePhotoToFirestore(photoId, newPhoto, downloadUri.toString());
-                    
-                    userPhotoList.add(newPhoto);
-                    photoAdapter.notifyItemInserted(userPhotoList.size() - 1);
-                    savePhotos();
-                    
-                    if (listener != null) {
-                        listener.onPhotoUploaded(newPhoto);
-                    }
-                    
-                    Toast.makeText(this, "Photo uploaded successfully", Toast.LENGTH_SHORT).show();
-                } else {
-                    Log.e(TAG, "Upload failed", task.getException());
-                    Toast.makeText(this, "Failed to upload photo", Toast.LENGTH_SHORT).show();
+                return localFiles;
+            })
+            .addOnSuccessListener(this, localFiles -> {
+                List<PhotoUploadQueue.PendingUpload> uploads = PhotoUploadQueue.enqueueBatch(appContext, photoIds,
+                        localFiles, description, currentUser.getUid(), currentUser.getDisplayName());
+
+                for (int i = 0; i < uploads.size(); i++) {
+                    userPhotoList.add(i, uploads.get(i).toPlaceholder());
                 }
+                photoAdapter.notifyItemRangeInserted(0, uploads.size());
+                photosRecyclerView.scrollToPosition(0);
+
+                Toast.makeText(this, "Uploading " + uploads.size() + " photos...", Toast.LENGTH_SHORT).show();
+            })
+            .addOnFailureListener(this, e -> {
+                Log.e(TAG, "Error preparing batch upload", e);
+                // Remove the copies that were already made
+                for (String photoId : photoIds) {
+                    PhotoUploadQueue.deletePendingCopy(appContext, photoId);
+                }
+                Toast.makeText(this, "Error preparing upload", Toast.LENGTH_SHORT).show();
             });
-        } catch (Exception e) {
-            Log.e(TAG, "Error preparing upload", e);
-            Toast.makeText(this, "Error preparing upload", Toast.LENGTH_SHORT).show();
+    }
+
+    // Placeholders for this user's uploads that are still in the queue
+    private void showPendingUploads(String userId) {
+        List<PhotoUploadQueue.PendingUpload> pending = PhotoUploadQueue.getPending(this);
+        int added = 0;
+        for (int i = pending.size() - 1; i >= 0; i--) { // newest first
+            PhotoUploadQueue.PendingUpload upload = pending.get(i);
+            if (userId.equals(upload.authorId)) {
+                userPhotoList.add(added++, upload.toPlaceholder());
+            }
         }
+        if (added > 0) {
+            photoAdapter.notifyItemRangeInserted(0, added);
+        }
+
+        WorkManager.getInstance(this)
+            .getWorkInfosByTagLiveData(PhotoUploadQueue.TAG_PHOTO_UPLOAD)
+            .observe(this, this::onUploadWorkChanged);
     }
-    
-    private void savePhotoToFirestore(String photoId, UserPhoto photo, String storageUrl) {
-        FirebaseUser currentUser = auth.getCurrentUser();
-        if (currentUser == null) return;
-        
-        // Create a new photo document in Firestore
-        java.util.Map<String, Object> photoData = new java.util.HashMap<>();
-        photoData.put("description", photo.getDescription());
-        photoData.put("storageUrl", storageUrl);
-        photoData.put("uploadedBy", currentUser.getDisplayName());
-        photoData.put("authorId", currentUser.getUid());
-        photoData.put("timestamp", System.currentTimeMillis());
-        photoData.put("likeCount", 0);
-        photoData.put("likedBy", new ArrayList<String>());
-        
-        // Save to Firestore
-        firestore.collection("photos")
-            .document(photoId)
-            .set(photoData)
-            .addOnSuccessListener(aVoid -> {
-                Log.d(TAG, "Photo document added to Firestore with ID: " + photoId);
-                // Set the Firestore document ID in the UserPhoto object
+
+    // Swap placeholders for the real photo once its upload has committed
+    private void onUploadWorkChanged(List<WorkInfo> workInfos) {
+        boolean batchFinished = false;
+        for (WorkInfo info : workInfos) {
+            if (!info.getState().isFinished()) continue;
+            if (PhotoUploadQueue.isBatchWork(info.getTags())) {
+                batchFinished = true;
+                if (info.getState() == WorkInfo.State.FAILED && reportedFailures.add(info.getId())) {
+                    Toast.makeText(this, "Some photos could not be uploaded, they will be retried later",
+                            Toast.LENGTH_SHORT).show();
+                }
+                continue;
+            }
+
+            String photoId = PhotoUploadQueue.photoIdFromTags(info.getTags());
+            int position = indexOfPendingUpload(photoId);
+            if (position < 0) continue;
+
+            UserPhoto photo = userPhotoList.get(position);
+            if (info.getState() == WorkInfo.State.SUCCEEDED) {
+                Data output = info.getOutputData();
+                photo.setStorageUrl(output.getString(PhotoUploadWorker.KEY_STORAGE_URL));
+                photo.setThumbUrl(output.getString(PhotoUploadWorker.KEY_THUMB_URL));
+                photo.setMediumUrl(output.getString(PhotoUploadWorker.KEY_MEDIUM_URL));
                 photo.setFirestoreId(photoId);
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error adding photo document to Firestore", e);
-            });
+                photo.setPendingUploadId(null);
+                photoAdapter.notifyItemChanged(position);
+                photoLikeStore.watch(Collections.singletonList(photo));
+            } else if (!PhotoUploadQueue.isPending(this, photoId)) {
+                // Cancelled work whose record is still queued was only replaced (upload settings changed)
+                userPhotoList.remove(position);
+                photoAdapter.notifyItemRemoved(position);
+                if (info.getState() == WorkInfo.State.FAILED) {
+                    Toast.makeText(this, "Failed to upload photo", Toast.LENGTH_SHORT).show();
+                }
+            } else if (info.getState() == WorkInfo.State.FAILED && reportedFailures.add(info.getId())) {
+                // Out of attempts, but still queued: the placeholder stays until the retry on next start
+                Toast.makeText(this, "Photo could not be uploaded, it will be retried later",
+                        Toast.LENGTH_SHORT).show();
+            }
+        }
+        if (batchFinished) {
+            reconcileBatchPlaceholders();
+        }
+    }
+
+    /**
+     * A batch result is too large to pass back as work output, so once a batch
+     * finishes, placeholders that left the queue are looked up in Firestore:
+     * found ones become real photos, missing ones failed and are removed.
+     */
+    private void reconcileBatchPlaceholders() {
+        List<String> finishedIds = new ArrayList<>();
+        for (UserPhoto photo : userPhotoList) {
+            String uploadId = photo.getPendingUploadId();
+            if (uploadId != null && !reconcilingUploadIds.contains(uploadId)
+                    && !PhotoUploadQueue.isPending(this, uploadId)) {
+                finishedIds.add(uploadId);
+            }
+        }
+        if (finishedIds.isEmpty()) return;
+        reconcilingUploadIds.addAll(finishedIds);
+
+        // whereIn on the document ID takes at most 30 values
+        for (int start = 0; start < finishedIds.size(); start += 30) {
+            List<String> chunk = new ArrayList<>(
+                    finishedIds.subList(start, Math.min(start + 30, finishedIds.size())));
+            // From the server: the worker just wrote these, the cache may not have them
+            firestore.collection("photos")
+                .whereIn(FieldPath.documentId(), chunk)
+                .get(Source.SERVER)
+                .addOnSuccessListener(this, queryDocumentSnapshots -> {
+                    List<UserPhoto> committed = new ArrayList<>();
+                    for (DocumentSnapshot document : queryDocumentSnapshots.getDocuments()) {
+                        UserPhoto photo = PhotoPageLoader.toUserPhoto(document);
+                        int position = indexOfPendingUpload(document.getId());
+                        if (position >= 0) {
+                            userPhotoList.set(position, photo);
+                            photoAdapter.notifyItemChanged(position);
+                            committed.add(photo);
+                        }
+                    }
+                    photoLikeStore.watch(committed);
+
+                    int failed = 0;
+                    for (String uploadId : chunk) {
+                        reconcilingUploadIds.remove(uploadId);
+                        int position = indexOfPendingUpload(uploadId);
+                        if (position >= 0) {
+                            userPhotoList.remove(position);
+                            photoAdapter.notifyItemRemoved(position);
+                            failed++;
+                        }
+                    }
+                    if (failed > 0) {
+                        Toast.makeText(this, "Failed to upload " + failed + " photos", Toast.LENGTH_SHORT).show();
+                    }
+                })
+                .addOnFailureListener(this, e -> {
+                    reconcilingUploadIds.removeAll(chunk);
+                    Log.e(TAG, "Error loading uploaded batch photos", e);
+                });
+        }
     }
 
-    // Interface for photo upload callback
-    private interface OnPhotoUploadListener {
-        void onPhotoUploaded(UserPhoto photo);
+    private int indexOfPendingUpload(String photoId) {
+        if (photoId == null) return -1;
+        for (int i = 0; i < userPhotoList.size(); i++) {
+            if (photoId.equals(userPhotoList.get(i).getPendingUploadId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // One description for all photos of a multi-selection
+    private void handleGalleryPhotos(List<Uri> selectedImageUris) {
+        if (selectedImageUris.size() == 1) {
+            handleGalleryPhoto(selectedImageUris.get(0));
+            return;
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Add Description (" + selectedImageUris.size() + " photos)");
+
+        final EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_TEXT);
+        builder.setView(input);
+
+        builder.setPositiveButton("Upload", (dialog, which) -> {
+            String description = input.getText().toString();
+            uploadPhotoBatch(selectedImageUris, description);
+        });
+
+        builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
+
+        builder.show();
     }
 
     // Update gallery photo handling
@@ -921,7 +1194,7 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             
             builder.setPositiveButton("Upload", (dialog, which) -> {
                 String description = input.getText().toString();
-                uploadPhotoToFirebase(selectedImageUri, description, null);
+                uploadPhotoToFirebase(selectedImageUri, description);
             });
             
             builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
@@ -947,7 +1220,7 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
                 
                 builder.setPositiveButton("Upload", (dialog, which) -> {
                     String description = input.getText().toString();
-                    uploadPhotoToFirebase(currentPhotoUri, description, null);
+                    uploadPhotoToFirebase(currentPhotoUri, description);
                 });
                 
                 builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
@@ -977,9 +1250,18 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             new ActivityResultContracts.StartActivityForResult(),
             result -> {
                 if (result.getResultCode() == RESULT_OK && result.getData() != null) {
-                    Uri selectedImageUri = result.getData().getData();
-                    if (selectedImageUri != null) {
-                        handleGalleryPhoto(selectedImageUri);
+                    // Multiple selections come as ClipData, a single one as data
+                    List<Uri> selectedImageUris = new ArrayList<>();
+                    ClipData clipData = result.getData().getClipData();
+                    if (clipData != null) {
+                        for (int i = 0; i < clipData.getItemCount(); i++) {
+                            selectedImageUris.add(clipData.getItemAt(i).getUri());
+                        }
+                    } else if (result.getData().getData() != null) {
+                        selectedImageUris.add(result.getData().getData());
+                    }
+                    if (!selectedImageUris.isEmpty()) {
+                        handleGalleryPhotos(selectedImageUris);
                     }
                 }
             });
@@ -1127,24 +1409,23 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
         FirebaseUser currentUser = auth.getCurrentUser();
         if (currentUser == null || targetUserId == null) return;
         
-        // Query Firestore to check if current user is following this user
-        firestore.collection("users").document(currentUser.getUid())
-            .get()
-            .addOnSuccessListener(documentSnapshot -> {
-                if (documentSnapshot.exists()) {
-                    User user = documentSnapshot.toObject(User.class);
-                    if (user != null) {
-                        // Check if user's following list contains the target user ID
-                        isFollowing = user.isFollowing(targetUserId);
-                        updateFollowButton();
-                    }
-                }
+        // One small document read: users/{me}/following/{target}
+        FollowGraph.isFollowing(firestore, currentUser.getUid(), targetUserId)
+            .addOnSuccessListener(following -> {
+                // A follow or unfollow still in the outbox wins over what the server has
+                Boolean pendingFollow = MutationOutbox.pendingFollow(this, targetUserId);
+                isFollowing = pendingFollow != null ? pendingFollow : following;
+                updateFollowButton();
             })
             .addOnFailureListener(e -> {
                 Log.e(TAG, "Error checking following status", e);
             });
     }
     
+    private void showFollowCounts() {
+        followCountsTextView.setText(profileFollowersCount + " followers · " + profileFollowingCount + " following");
+    }
+    
     /**
      * Update the follow button UI based on following status
      */
@@ -1157,7 +1438,10 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
     }
     
     /**
-     * Follow a user
+     * Follow a user. The button flips right away; both edges and the
+     * notification are written by the outbox (the counters follow from the
+     * edge), and a follow undone before the flush is never written. The
+     * author's topic is subscribed once the follow is written.
      * @param currentUserId ID of the current user (follower)
      * @param targetUserId ID of the user to follow
      */
@@ -1168,66 +1452,14 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             return;
         }
         
-        // Update the current user's following array
-        firestore.collection("users").document(currentUserId)
-            .update("following", FieldValue.arrayUnion(targetUserId))
-            .addOnSuccessListener(aVoid -> {
-                Log.d(TAG, "Successfully added to following");
-                
-                // Update the target user's followers array
-                firestore.collection("users").document(targetUserId)
-                    .update("followers", FieldValue.arrayUnion(currentUserId))
-                    .addOnSuccessListener(aVoid2 -> {
-                        Log.d(TAG, "Successfully added to followers");
-                        
-                        // Update UI
-                        isFollowing = true;
-                        updateFollowButton();
-                        
-                        // Show a toast with the follow action
-                        Toast.makeText(ProfileActivity.this, "You are now following " + userName, Toast.LENGTH_SHORT).show();
-                        
-                        // Create a notification for the follow action
-                        try {
-                            // Create and save notification to Firestore
-                            Notification notification = new Notification("follow", auth.getCurrentUser().getDisplayName(), userName);
-                            
-                            firestore.collection("notifications")
-                                .add(notification)
-                                .addOnSuccessListener(documentReference -> {
-                                    Log.d(TAG, "Follow notification created with ID: " + documentReference.getId());
-                                    
-                                    try {
-                                        // Show system notification if the recipient is the currently logged in user
-                                        FirebaseUser loggedInUser = auth.getCurrentUser();
-                                        if (loggedInUser != null && targetUserId.equals(loggedInUser.getUid())) {
-                                            NotificationHelper.showFollowNotification(ProfileActivity.this, 
-                                                    auth.getCurrentUser().getDisplayName());
-                                        }
-                                    } catch (Exception e) {
-                                        Log.e(TAG, "Error showing system notification", e);
-                                    }
-                                })
-                                .addOnFailureListener(e -> {
-                                    Log.e(TAG, "Error creating follow notification", e);
-                                });
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error in follow notification process", e);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Error updating followers array", e);
-                        Toast.makeText(ProfileActivity.this, "Failed to follow user", Toast.LENGTH_SHORT).show();
-                    });
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error updating following array", e);
-                Toast.makeText(ProfileActivity.this, "Failed to follow user", Toast.LENGTH_SHORT).show();
-            });
+        MutationOutbox.follow(this, currentUserId, auth.getCurrentUser().getDisplayName(),
+                targetUserId, userName, true);
+        setFollowingOptimistically(true);
+        Toast.makeText(this, "You are now following " + userName, Toast.LENGTH_SHORT).show();
     }
     
     /**
-     * Unfollow a user
+     * Unfollow a user, through the outbox like followUser
      * @param currentUserId ID of the current user
      * @param targetUserId ID of the user to unfollow
      */
@@ -1238,183 +1470,94 @@ public class ProfileActivity extends AppCompatActivity implements PhotoAdapter.O
             return;
         }
         
-        // Update the current user's following array
-        firestore.collection("users").document(currentUserId)
-            .update("following", FieldValue.arrayRemove(targetUserId))
-            .addOnSuccessListener(aVoid -> {
-                Log.d(TAG, "Successfully removed from following");
-                
-                // Update the target user's followers array
-                firestore.collection("users").document(targetUserId)
-                    .update("followers", FieldValue.arrayRemove(currentUserId))
-                    .addOnSuccessListener(aVoid2 -> {
-                        Log.d(TAG, "Successfully removed from followers");
-                        
-                        // Update UI
-                        isFollowing = false;
-                        updateFollowButton();
-                        
-                        // Show a toast with the unfollow action
-                        Toast.makeText(ProfileActivity.this, "You have unfollowed " + userName, Toast.LENGTH_SHORT).show();
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Error updating followers array", e);
-                        Toast.makeText(ProfileActivity.this, "Failed to unfollow user", Toast.LENGTH_SHORT).show();
-                    });
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error updating following array", e);
-                Toast.makeText(ProfileActivity.this, "Failed to unfollow user", Toast.LENGTH_SHORT).show();
-            });
+        MutationOutbox.follow(this, currentUserId, auth.getCurrentUser().getDisplayName(),
+                targetUserId, userName, false);
+        setFollowingOptimistically(false);
+        Toast.makeText(this, "You have unfollowed " + userName, Toast.LENGTH_SHORT).show();
+    }
+    
+    // Flip the button and follower count without waiting for the outbox
+    private void setFollowingOptimistically(boolean following) {
+        if (isFollowing == following) return;
+        isFollowing = following;
+        profileFollowersCount = Math.max(0, profileFollowersCount + (following ? 1 : -1));
+        updateFollowButton();
+        showFollowCounts();
     }
 
+    /**
+     * Unread count for the bell. The functions keep it in
+     * users/{uid}/meta/unread, so this is one document however many
+     * notifications are unread.
+     */
     private void setupNotificationCounter(TextView countView, View dotView) {
         FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
-        if (user != null && user.getDisplayName() != null) {
-            // Query for any unread notifications (isRead = false)
-            firestore.collection("notifications")
-                .whereEqualTo("toUser", user.getDisplayName())
-                .whereEqualTo("isRead", false)
-                .addSnapshotListener((snapshot, e) -> {
+        if (user != null) {
+            // Shared with other open profiles, and removed when this one is destroyed
+            SnapshotListenerRegistry.observe(this, NotificationWatermark.unreadCounterRef(firestore, user.getUid()),
+                (snapshot, e) -> {
                     if (e != null) {
                         Log.e(TAG, "Error checking for unread notifications", e);
                         return;
                     }
                     
                     // Count unread notifications
-                    int unreadCount = (snapshot != null) ? snapshot.size() : 0;
+                    Long count = snapshot != null ? snapshot.getLong(NotificationWatermark.FIELD_COUNT) : null;
+                    int unreadCount = count != null ? count.intValue() : 0;
                     
-                    // Show dot if any unread notifications exist
+                    // Show dot and count if any unread notifications exist
                     if (unreadCount > 0) {
                         dotView.setVisibility(View.VISIBLE);
-                    } else {
-                        dotView.setVisibility(View.GONE);
-                    }
-                    
-                    // Show count if there are unread notifications
-                    if (unreadCount > 0) {
                         countView.setVisibility(View.VISIBLE);
                         countView.setText(String.valueOf(unreadCount));
                     } else {
+                        dotView.setVisibility(View.GONE);
                         countView.setVisibility(View.GONE);
                     }
                 });
         }
     }
 
-    // For debugging only - creates a test notification for the current user
-    private void createTestNotification(String username) {
-        // Check if we need to create a test notification (only for testing/debugging)
-        firestore.collection("notifications")
-            .whereEqualTo("toUser", username)
-            .whereEqualTo("isRead", false)  // Only check for unread notifications
-            .get()
-            .addOnSuccessListener(queryDocumentSnapshots -> {
-                if (queryDocumentSnapshots.isEmpty()) {
-                    // No unread notifications exist, create a test one
-                    Log.d(TAG, "Creating test notification for: " + username);
-                    Notification testNotification = new Notification("follow", "TestUser", username);
-                    // Make sure it's not read
-                    testNotification.setRead(false);
-                    firestore.collection("notifications")
-                        .add(testNotification)
-                        .addOnSuccessListener(documentReference -> 
-                            Log.d(TAG, "Test notification created: " + documentReference.getId()))
-                        .addOnFailureListener(e -> 
-                            Log.e(TAG, "Error creating test notification", e));
-                } else {
-                    Log.d(TAG, "Unread notifications already exist, not creating test notification");
-                }
-            })
-            .addOnFailureListener(e -> 
-                Log.e(TAG, "Error checking for existing notifications", e));
-    }
-
-    // Uncomment this method to add a test unread notification (for testing purposes)
-    private void addTestUnreadNotification() {
-        FirebaseUser user = auth.getCurrentUser();
-        if (user == null || user.getDisplayName() == null) {
-            return;
-        }
-
-        String username = user.getDisplayName();
-
-        // Create an unread notification
-        Notification testNotification = new Notification("follow", "TestUser", username);
-        testNotification.setRead(false);
-
-        firestore.collection("notifications")
-            .add(testNotification)
-            .addOnSuccessListener(documentReference -> {
-                Log.d(TAG, "Test unread notification created with ID: " + documentReference.getId());
-                Toast.makeText(this, "Test unread notification created", Toast.LENGTH_SHORT).show();
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error creating test notification", e);
-            });
-    }
-
     private void loadProfilePicture() {
         ImageView profileImageView = findViewById(R.id.profileImageView);
         int defaultImageId = R.mipmap.ic_launcher;
 
-        // If we have a target user ID, load their profile picture
-        if (targetUserId != null) {
-            firestore.collection("users").document(targetUserId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        String profilePictureUrl = documentSnapshot.getString("profilePictureUrl");
-                        if (profilePictureUrl != null && !profilePictureUrl.isEmpty()) {
-                            // Load profile picture using Glide
-                            Glide.with(this)
-                                .load(profilePictureUrl)
-                                .circleCrop()
-                                .placeholder(defaultImageId)
-                                .error(defaultImageId)
-                                .into(profileImageView);
-                        } else {
-                            profileImageView.setImageResource(defaultImageId);
-                        }
+        // The profile being viewed, or the current user's own profile
+        FirebaseUser currentUser = auth.getCurrentUser();
+        String pictureUserId = targetUserId != null ? targetUserId
+                : currentUser != null ? currentUser.getUid() : null;
+        if (pictureUserId == null) {
+            profileImageView.setImageResource(defaultImageId);
+            return;
+        }
+
+        // Cached copy first; the server copy only reloads the image if it changed
+        FirestoreReads.get(firestore.collection("users").document(pictureUserId),
+            FirestoreReads.Policy.CACHE_THEN_NETWORK,
+            new FirestoreReads.Callback<DocumentSnapshot>() {
+                @Override
+                public void onResult(DocumentSnapshot documentSnapshot) {
+                    String profilePictureUrl = documentSnapshot.exists()
+                            ? documentSnapshot.getString("profilePictureUrl") : null;
+                    if (profilePictureUrl != null && !profilePictureUrl.isEmpty()) {
+                        // Load profile picture using Glide
+                        Glide.with(ProfileActivity.this)
+                            .load(profilePictureUrl)
+                            .circleCrop()
+                            .placeholder(defaultImageId)
+                            .error(defaultImageId)
+                            .into(profileImageView);
                     } else {
                         profileImageView.setImageResource(defaultImageId);
                     }
-                })
-                .addOnFailureListener(e -> {
+                }
+
+                @Override
+                public void onError(Exception e) {
                     Log.e(TAG, "Error loading profile picture", e);
                     profileImageView.setImageResource(defaultImageId);
-                });
-        } else {
-            // If no target user ID, try to load current user's profile picture
-            FirebaseUser currentUser = auth.getCurrentUser();
-            if (currentUser != null) {
-                firestore.collection("users").document(currentUser.getUid())
-                    .get()
-                    .addOnSuccessListener(documentSnapshot -> {
-                        if (documentSnapshot.exists()) {
-                            String profilePictureUrl = documentSnapshot.getString("profilePictureUrl");
-                            if (profilePictureUrl != null && !profilePictureUrl.isEmpty()) {
-                                Glide.with(this)
-                                    .load(profilePictureUrl)
-                                    .circleCrop()
-                                    .placeholder(defaultImageId)
-                                    .error(defaultImageId)
-                                    .into(profileImageView);
-                            } else {
-                                profileImageView.setImageResource(defaultImageId);
-                            }
-                        } else {
-                            profileImageView.setImageResource(defaultImageId);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Error loading current user's profile picture", e);
-                        profileImageView.setImageResource(defaultImageId);
-                    });
-            } else {
-                profileImageView.setImageResource(defaultImageId);
-            }
-        }
+                }
+            });
     }
 
 }
\ No newline at end of file
@@ -1,8 +1,10 @@
 package com.natanp_josefm_michaelk.picturegram;
 
+import android.app.TimePickerDialog;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.text.format.DateFormat;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.Toast;
@@ -14,16 +16,21 @@ import com.google.android.material.materialswitch.MaterialSwitch;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 
+import java.util.Locale;
+
 public class SettingsActivity extends AppCompatActivity {
 
     private static final String TAG = "SettingsActivity";
-    private Button logoutButton, submitButton;
+    private Button logoutButton, submitButton, quietHoursButton;
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private TextInputEditText bioInput;
     private MaterialSwitch themeSwitch, notificationsSwitch;
+    private MaterialSwitch newPhotosSwitch, likesSwitch, followsSwitch, quietHoursSwitch;
+    private MaterialSwitch wifiOnlySwitch, chargingOnlySwitch;
     private SharedPreferences sharedPreferences;
     private FirebaseUser currentUser;
 
@@ -44,6 +51,7 @@ public class SettingsActivity extends AppCompatActivity {
         initializeViews();
         setupThemeSwitch();
         setupNotificationsSwitch();
+        setupUploadSwitches();
         setupButtons();
         loadUserData();
     }
@@ -54,23 +62,37 @@ public class SettingsActivity extends AppCompatActivity {
         bioInput = findViewById(R.id.bioInput);
         themeSwitch = findViewById(R.id.themeSwitch);
         notificationsSwitch = findViewById(R.id.notificationsSwitch);
+        newPhotosSwitch = findViewById(R.id.newPhotosSwitch);
+        likesSwitch = findViewById(R.id.likesSwitch);
+        followsSwitch = findViewById(R.id.followsSwitch);
+        quietHoursSwitch = findViewById(R.id.quietHoursSwitch);
+        quietHoursButton = findViewById(R.id.quietHoursButton);
+        wifiOnlySwitch = findViewById(R.id.wifiOnlySwitch);
+        chargingOnlySwitch = findViewById(R.id.chargingOnlySwitch);
     }
 
     private void loadUserData() {
         if (currentUser == null) return;
 
         // Load user data from Firestore
-        db.collection("users").document(currentUser.getUid())
-            .get()
-            .addOnSuccessListener(documentSnapshot -> {
-                if (documentSnapshot.exists()) {
-                    String bio = documentSnapshot.getString("bio");
-                    bioInput.setText(bio);
+        // Cached bio first; the server copy replaces it only if it differs
+        // and the user has not started editing it
+        FirestoreReads.get(db.collection("users").document(currentUser.getUid()),
+            FirestoreReads.Policy.CACHE_THEN_NETWORK,
+            new FirestoreReads.Callback<DocumentSnapshot>() {
+                @Override
+                public void onResult(DocumentSnapshot documentSnapshot) {
+                    if (documentSnapshot.exists() && !bioInput.hasFocus()) {
+                        String bio = documentSnapshot.getString("bio");
+                        bioInput.setText(bio);
+                    }
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    Log.w(TAG, "Error loading user data", e);
+                    Toast.makeText(SettingsActivity.this, "Error loading user data", Toast.LENGTH_SHORT).show();
                 }
-            })
-            .addOnFailureListener(e -> {
-                Log.w(TAG, "Error loading user data", e);
-                Toast.makeText(this, "Error loading user data", Toast.LENGTH_SHORT).show();
             });
     }
 
@@ -94,20 +116,71 @@ public class SettingsActivity extends AppCompatActivity {
 
     private void setupNotificationsSwitch() {
         // Set initial state
-        boolean notificationsEnabled = sharedPreferences.getBoolean("notifications", true);
+        boolean notificationsEnabled = NotificationPrefs.getBoolean(this, NotificationPrefs.SETTING_ENABLED);
         notificationsSwitch.setChecked(notificationsEnabled);
-        updateNotificationsText(notificationsEnabled);
         
         notificationsSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            // Save preference
-            sharedPreferences.edit().putBoolean("notifications", isChecked).apply();
+            // Save preference (also synced to the user document)
+            NotificationPrefs.setBoolean(this, NotificationPrefs.SETTING_ENABLED, isChecked);
             // Update the text
             updateNotificationsText(isChecked);
         });
+
+        setupPreferenceSwitch(newPhotosSwitch, NotificationPrefs.SETTING_NEW_PHOTOS);
+        setupPreferenceSwitch(likesSwitch, NotificationPrefs.SETTING_LIKES);
+        setupPreferenceSwitch(followsSwitch, NotificationPrefs.SETTING_FOLLOWS);
+        quietHoursSwitch.setChecked(NotificationPrefs.getBoolean(this, NotificationPrefs.SETTING_QUIET_HOURS));
+        quietHoursSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            NotificationPrefs.setBoolean(this, NotificationPrefs.SETTING_QUIET_HOURS, isChecked);
+            updateNotificationsText(notificationsSwitch.isChecked());
+        });
+        quietHoursButton.setOnClickListener(v -> pickQuietHours());
+        updateNotificationsText(notificationsEnabled);
+    }
+
+    private void setupPreferenceSwitch(MaterialSwitch preferenceSwitch, String key) {
+        preferenceSwitch.setChecked(NotificationPrefs.getBoolean(this, key));
+        preferenceSwitch.setOnCheckedChangeListener((buttonView, isChecked) ->
+                NotificationPrefs.setBoolean(this, key, isChecked));
     }
 
     private void updateNotificationsText(boolean isEnabled) {
         notificationsSwitch.setText(isEnabled ? "Disable Notifications" : "Enable Notifications");
+        // The other settings only matter while notifications are on
+        newPhotosSwitch.setEnabled(isEnabled);
+        likesSwitch.setEnabled(isEnabled);
+        followsSwitch.setEnabled(isEnabled);
+        quietHoursSwitch.setEnabled(isEnabled);
+        quietHoursButton.setEnabled(isEnabled && quietHoursSwitch.isChecked());
+        quietHoursButton.setText(formatMinute(NotificationPrefs.getQuietStart(this))
+                + " - " + formatMinute(NotificationPrefs.getQuietEnd(this)));
+    }
+
+    // Pick the start, then the end of the quiet hours
+    private void pickQuietHours() {
+        int start = NotificationPrefs.getQuietStart(this);
+        boolean is24Hour = DateFormat.is24HourFormat(this);
+        new TimePickerDialog(this, (startView, startHour, startMinute) -> {
+            int end = NotificationPrefs.getQuietEnd(this);
+            new TimePickerDialog(this, (endView, endHour, endMinute) -> {
+                NotificationPrefs.setQuietHours(this, startHour * 60 + startMinute, endHour * 60 + endMinute);
+                updateNotificationsText(notificationsSwitch.isChecked());
+            }, end / 60, end % 60, is24Hour).show();
+        }, start / 60, start % 60, is24Hour).show();
+    }
+
+    // Queued uploads are restarted under the new setting
+    private void setupUploadSwitches() {
+        wifiOnlySwitch.setChecked(PhotoUploadQueue.isWifiOnly(this));
+        wifiOnlySwitch.setOnCheckedChangeListener((buttonView, isChecked) ->
+                PhotoUploadQueue.setUploadSetting(this, PhotoUploadQueue.SETTING_WIFI_ONLY, isChecked));
+        chargingOnlySwitch.setChecked(PhotoUploadQueue.isChargingOnly(this));
+        chargingOnlySwitch.setOnCheckedChangeListener((buttonView, isChecked) ->
+                PhotoUploadQueue.setUploadSetting(this, PhotoUploadQueue.SETTING_CHARGING_ONLY, isChecked));
+    }
+
+    private static String formatMinute(int minuteOfDay) {
+        return String.format(Locale.getDefault(), "%02d:%02d", minuteOfDay / 60, minuteOfDay % 60);
     }
 
     private void setupButtons() {
@@ -142,7 +215,15 @@ public class SettingsActivity extends AppCompatActivity {
     }
 
     private void logoutUser() {
+        logoutButton.setEnabled(false);
+        // While still signed in: stop this device receiving the user's notifications
+        DeviceTokenRegistry.unregister(this).addOnCompleteListener(task -> signOut());
+    }
+
+    private void signOut() {
         mAuth.signOut();
+        // The local mirror belongs to the user who signed out
+        LocalDatabase.clear(this);
         Toast.makeText(this, "Logged out successfully", Toast.LENGTH_SHORT).show();
         // Navigate back to MainActivity (Login Screen)
         Intent intent = new Intent(SettingsActivity.this, LoginActivity.class);
@@ -0,0 +1,160 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.util.Log;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * App-wide registry of Firestore snapshot listeners.
+ *
+ * All observers of the same document or query share one Firestore listener,
+ * which is attached for the first observer and removed with the last one.
+ * A new observer immediately gets the latest snapshot, so opening a second
+ * ProfileActivity does not cost a second listener or a second read. A
+ * listener that fails is dropped after its observers get the error; the next
+ * observer of that document or query attaches a new one.
+ *
+ * Every subscription is tied to a LifecycleOwner and removed when it is
+ * destroyed, so an activity cannot leak its listeners. Only use from the main
+ * thread (Firestore delivers snapshots there).
+ */
+public class SnapshotListenerRegistry {
+
+    private static final String TAG = "ListenerRegistry";
+
+    // Keyed by the DocumentReference or Query itself (both implement equals)
+    private static final Map<Object, SharedListener<?>> listeners = new HashMap<>();
+
+    private static class SharedListener<T> {
+        final Object key;
+        final List<EventListener<T>> observers = new ArrayList<>();
+        ListenerRegistration registration;
+        T lastSnapshot;
+
+        SharedListener(Object key) {
+            this.key = key;
+        }
+
+        void dispatch(T snapshot, FirebaseFirestoreException error) {
+            if (error == null) {
+                lastSnapshot = snapshot;
+            } else {
+                // Firestore stops a listener after an error, so later observers
+                // of this key get a new one instead of this dead one
+                Log.w(TAG, "Listener failed, dropping it: " + key, error);
+                detach();
+            }
+            // Copy: an observer may unsubscribe from its callback
+            for (EventListener<T> observer : new ArrayList<>(observers)) {
+                observer.onEvent(snapshot, error);
+            }
+        }
+
+        // Remove the Firestore listener, and the key unless it has a newer listener by now
+        void detach() {
+            if (registration != null) {
+                registration.remove();
+                registration = null;
+            }
+            if (listeners.get(key) == this) {
+                listeners.remove(key);
+            }
+        }
+    }
+
+    public static ListenerRegistration observe(LifecycleOwner owner, DocumentReference document,
+                                               EventListener<DocumentSnapshot> observer) {
+        return subscribe(owner, document, observer,
+                shared -> document.addSnapshotListener(shared::dispatch));
+    }
+
+    public static ListenerRegistration observe(LifecycleOwner owner, Query query,
+                                               EventListener<QuerySnapshot> observer) {
+        return subscribe(owner, query, observer,
+                shared -> query.addSnapshotListener(shared::dispatch));
+    }
+
+    // Number of Firestore listeners currently attached
+    public static int getListenerCount() {
+        return listeners.size();
+    }
+
+    // Number of observers over all listeners
+    public static int getObserverCount() {
+        int count = 0;
+        for (SharedListener<?> shared : listeners.values()) {
+            count += shared.observers.size();
+        }
+        return count;
+    }
+
+    private interface Attacher<T> {
+        ListenerRegistration attach(SharedListener<T> shared);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ListenerRegistration subscribe(LifecycleOwner owner, Object key,
+                                                      EventListener<T> observer, Attacher<T> attacher) {
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            return () -> { };
+        }
+
+        SharedListener<T> shared = (SharedListener<T>) listeners.get(key);
+        if (shared == null) {
+            shared = new SharedListener<>(key);
+            listeners.put(key, shared);
+            shared.observers.add(observer);
+            shared.registration = attacher.attach(shared);
+        } else {
+            shared.observers.add(observer);
+            // Catch up with what the other observers already have
+            if (shared.lastSnapshot != null) {
+                observer.onEvent(shared.lastSnapshot, null);
+            }
+        }
+        logCounts();
+
+        SharedListener<T> subscription = shared;
+        LifecycleEventObserver lifecycleObserver = (source, event) -> {
+            if (event == Lifecycle.Event.ON_DESTROY) {
+                unsubscribe(subscription, observer);
+            }
+        };
+        lifecycle.addObserver(lifecycleObserver);
+
+        return () -> {
+            lifecycle.removeObserver(lifecycleObserver);
+            unsubscribe(subscription, observer);
+        };
+    }
+
+    private static <T> void unsubscribe(SharedListener<T> shared, EventListener<T> observer) {
+        if (!shared.observers.remove(observer)) {
+            return; // already removed
+        }
+        if (shared.observers.isEmpty()) {
+            shared.detach();
+        }
+        logCounts();
+    }
+
+    private static void logCounts() {
+        Log.d(TAG, getListenerCount() + " Firestore listeners, " + getObserverCount() + " observers");
+    }
+}
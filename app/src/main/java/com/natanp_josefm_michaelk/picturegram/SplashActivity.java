@@ -1,117 +1,129 @@
 package com.natanp_josefm_michaelk.picturegram;
 
-import android.Manifest;
 import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
-import android.widget.Toast;
 
-import androidx.activity.EdgeToEdge;
-import androidx.activity.result.ActivityResultLauncher;
-import androidx.activity.result.contract.ActivityResultContracts;
-import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.content.ContextCompat;
-import androidx.core.graphics.Insets;
-import androidx.core.view.ViewCompat;
-import androidx.core.view.WindowInsetsCompat;
+import androidx.core.splashscreen.SplashScreen;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestore;
 
+import java.util.List;
+
+/**
+ * Launch screen. The system splash (SplashScreen API, Theme.PictureGram.Starting)
+ * stays up only until the app is ready to show something useful:
+ *  - signed out: right away, to LoginActivity
+ *  - signed in: once the first page of the user's photos is in the local mirror,
+ *    either already stored from an earlier session or fetched now, so the
+ *    profile grid paints from disk
+ * READY_TIMEOUT_MS caps the wait on a slow or missing network; the profile then
+ * loads its photos itself as before.
+ */
 public class SplashActivity extends AppCompatActivity {
 
     private static final String TAG = "SplashActivity";
-    private static final long SPLASH_DELAY = 3000;
-    private ActivityResultLauncher<String> requestPermissionLauncher;
+    private static final long READY_TIMEOUT_MS = 2000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean navigated = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        // Must run before super.onCreate so the starting theme is swapped in place
+        SplashScreen splashScreen = SplashScreen.installSplashScreen(this);
         super.onCreate(savedInstanceState);
-        EdgeToEdge.enable(this);
-        setContentView(R.layout.activity_splash);
-        ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
-            Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
-            v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
-            return insets;
-        });
-        
-        // Initialize notification channel
-        try {
-            NotificationHelper.createNotificationChannel(this);
-            Log.d(TAG, "Notification channel initialized");
-        } catch (Exception e) {
-            Log.e(TAG, "Error initializing notification channel", e);
+        StartupTrace.mark("Splash created");
+
+        // Nothing is drawn behind the system splash; it leaves with this activity
+        splashScreen.setKeepOnScreenCondition(() -> !navigated);
+
+        // Register this device's FCM token (no write if it is already registered)
+        DeviceTokenRegistry.register(this);
+        AuthorTopics.sync(this);
+        NotificationPrefs.push(this);
+
+        // Auth state is restored from disk by the time the activity starts
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser == null) {
+            navigate(null);
+            return;
         }
-        
-        // Setup permission launcher with better feedback
-        requestPermissionLauncher = registerForActivityResult(
-            new ActivityResultContracts.RequestPermission(),
-            isGranted -> {
-                if (isGranted) {
-                    Log.d(TAG, "Notification permission granted");
-                } else {
-                    Log.w(TAG, "Notification permission denied");
-                    Toast.makeText(this, 
-                            "Notifications will be disabled. You can enable them in app settings.", 
-                            Toast.LENGTH_LONG).show();
-                }
-            }
-        );
-        
-        // Request notification permission for Android 13+
-        requestNotificationPermission();
-
-        // Start the background notification service
-        startService(new Intent(this, BackgroundNotificationService.class));
-
-        // Update FCM token if user is already signed in
-        FCMTokenService.updateCurrentUserToken();
-
-        // Create a handler to delay the transition
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            // Check if user is already signed in
-            FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
-            Intent intent;
-            
-            if (currentUser != null) {
-                // User is signed in, go directly to ProfileActivity
-                intent = new Intent(SplashActivity.this, ProfileActivity.class);
-                String userName = (currentUser.getDisplayName() != null && !currentUser.getDisplayName().isEmpty()) 
-                                ? currentUser.getDisplayName() 
-                                : "Default User";
-                intent.putExtra("USER_NAME", userName);
-                intent.putExtra("USER_IMAGE", R.mipmap.ic_launcher);
-            } else {
-                // User is not signed in, go to LoginActivity
-                intent = new Intent(SplashActivity.this, LoginActivity.class);
-            }
-            
-            startActivity(intent);
-            finish(); // Close the splash activity
-        }, SPLASH_DELAY);
+
+        handler.postDelayed(() -> {
+            Log.w(TAG, "First photo page not ready after " + READY_TIMEOUT_MS + " ms, continuing");
+            navigate(currentUser);
+        }, READY_TIMEOUT_MS);
+        prefetchFirstPage(currentUser);
     }
-    
-    private void requestNotificationPermission() {
-        try {
-            // Only needed for Android 13+ (API level 33+)
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
-                if (ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS) != 
-                        PackageManager.PERMISSION_GRANTED) {
-                    Log.d(TAG, "Requesting POST_NOTIFICATIONS permission");
-                    requestPermissionLauncher.launch(Manifest.permission.POST_NOTIFICATIONS);
-                } else {
-                    Log.d(TAG, "POST_NOTIFICATIONS permission already granted");
-                }
-            } else {
-                Log.d(TAG, "POST_NOTIFICATIONS permission not needed for this Android version");
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Makes sure the mirror holds the newest photos of the user. A stored page is
+     * enough (the profile refreshes it anyway); otherwise one page is read now.
+     */
+    private void prefetchFirstPage(FirebaseUser user) {
+        PhotoRepository photoRepository = new PhotoRepository(this);
+        photoRepository.latestByAuthor(user.getUid(), ProfileActivity.PHOTO_PAGE_SIZE, stored -> {
+            if (navigated) return;
+            if (!stored.isEmpty()) {
+                StartupTrace.mark("First page found in the mirror");
+                navigate(user);
+                return;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "Error requesting notification permission", e);
+            new PhotoPageLoader(PhotoPageLoader.authorQuery(FirebaseFirestore.getInstance(), user.getUid()),
+                    ProfileActivity.PHOTO_PAGE_SIZE)
+                .loadNextPage(new PhotoPageLoader.PageCallback() {
+                    @Override
+                    public void onPageLoaded(List<UserPhoto> photos, boolean hasMore) {
+                        // Queued on the database thread ahead of the profile's own read
+                        photoRepository.save(photos);
+                        StartupTrace.mark("First page fetched (" + photos.size() + " photos)");
+                        navigate(user);
+                    }
+
+                    @Override
+                    public void onPageFailed(Exception e) {
+                        Log.w(TAG, "Prefetch of the first photo page failed", e);
+                        navigate(user);
+                    }
+                });
+        });
+    }
+
+    // Leave the splash exactly once, whichever of readiness or timeout comes first
+    private void navigate(FirebaseUser currentUser) {
+        if (navigated) return;
+        navigated = true;
+        handler.removeCallbacksAndMessages(null);
+
+        Intent intent;
+        if (currentUser != null) {
+            // User is signed in, go directly to ProfileActivity
+            intent = new Intent(SplashActivity.this, ProfileActivity.class);
+            String userName = (currentUser.getDisplayName() != null && !currentUser.getDisplayName().isEmpty())
+                            ? currentUser.getDisplayName()
+                            : "Default User";
+            intent.putExtra("USER_NAME", userName);
+            intent.putExtra("USER_IMAGE", R.mipmap.ic_launcher);
+            StartupTrace.expectFirstPhoto();
+        } else {
+            // User is not signed in, go to LoginActivity
+            intent = new Intent(SplashActivity.this, LoginActivity.class);
         }
+        StartupTrace.mark("Leaving splash");
+
+        startActivity(intent);
+        finish(); // Close the splash activity
     }
-}
\ No newline at end of file
+}
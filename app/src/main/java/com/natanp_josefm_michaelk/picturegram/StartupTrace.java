@@ -0,0 +1,89 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.google.firebase.analytics.FirebaseAnalytics;
+
+/**
+ * Cold start timing: from process start until the first photo of the profile
+ * grid is on screen (time to first photo).
+ *
+ * SplashActivity starts the trace when it routes a signed-in user to their
+ * profile, and the first grid image delivered by Glide ends it. The result is
+ * logged and sent to Analytics as a "time_to_first_photo" event. Starts that
+ * do not open a profile (login screen, empty profile) are not reported, so the
+ * numbers only cover the path that shows photos. Main thread only.
+ */
+public class StartupTrace {
+
+    private static final String TAG = "StartupTrace";
+    private static final String EVENT_FIRST_PHOTO = "time_to_first_photo";
+
+    private static boolean waitingForFirstPhoto = false;
+    private static boolean reported = false; // once per process
+
+    // Milliseconds since this process was started
+    public static long sinceProcessStart() {
+        return SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+    }
+
+    public static void mark(String phase) {
+        Log.d(TAG, phase + " at " + sinceProcessStart() + " ms");
+    }
+
+    // The splash is opening the profile; the next grid image ends the trace
+    public static void expectFirstPhoto() {
+        if (!reported) waitingForFirstPhoto = true;
+    }
+
+    // Nothing will be shown (e.g. a profile without photos), drop this start
+    public static void cancelFirstPhoto(String reason) {
+        if (!waitingForFirstPhoto) return;
+        waitingForFirstPhoto = false;
+        Log.d(TAG, "No time to first photo: " + reason);
+    }
+
+    /** Attach to grid image requests; only the first image after a cold start counts. */
+    public static RequestListener<Drawable> firstPhotoListener(Context context) {
+        Context appContext = context.getApplicationContext();
+        return new RequestListener<Drawable>() {
+            @Override
+            public boolean onLoadFailed(@Nullable GlideException e, Object model,
+                                        Target<Drawable> target, boolean isFirstResource) {
+                return false;
+            }
+
+            @Override
+            public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target,
+                                           DataSource dataSource, boolean isFirstResource) {
+                reportFirstPhoto(appContext, dataSource);
+                return false; // let Glide set the image
+            }
+        };
+    }
+
+    private static void reportFirstPhoto(Context context, DataSource dataSource) {
+        if (!waitingForFirstPhoto) return;
+        waitingForFirstPhoto = false;
+        reported = true;
+
+        long elapsed = sinceProcessStart();
+        Log.i(TAG, "Time to first photo: " + elapsed + " ms (image from " + dataSource + ")");
+
+        Bundle params = new Bundle();
+        params.putLong(FirebaseAnalytics.Param.VALUE, elapsed);
+        params.putString("image_source", dataSource.name()); // Glide memory/disk cache or remote
+        FirebaseAnalytics.getInstance(context).logEvent(EVENT_FIRST_PHOTO, params);
+    }
+}
@@ -0,0 +1,140 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a list of upload jobs in parallel, adjusting how many run at once from
+ * the throughput it observes.
+ *
+ * After each round (as many completed jobs as the current parallelism) the
+ * bytes/second of that round is compared with the previous one: if it went up,
+ * one more upload is allowed; if it dropped, one less. A failed job halves the
+ * parallelism, since failures usually mean the connection is saturated.
+ * Blocks until all jobs finished, so it must only be called from a worker thread.
+ */
+public class UploadScheduler {
+
+    private static final String TAG = "UploadScheduler";
+
+    public static final int MIN_CONCURRENCY = 1;
+    public static final int MAX_CONCURRENCY = 6;
+    public static final int DEFAULT_CONCURRENCY = 2;
+
+    // Changes smaller than this are treated as noise
+    private static final double THROUGHPUT_TOLERANCE = 0.1;
+
+    public interface UploadJob {
+        /** Run the upload and return the number of bytes it sent */
+        long run() throws Exception;
+    }
+
+    public interface JobListener {
+        void onJobFinished(int index, Exception error);
+    }
+
+    private int concurrency;
+
+    // Current round
+    private long roundBytes = 0;
+    private int roundCompleted = 0;
+    private long roundStartedAt;
+    private double lastThroughput = 0;
+
+    public UploadScheduler(int initialConcurrency) {
+        this.concurrency = clamp(initialConcurrency);
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Run all jobs. The listener is called on this thread once per job, in
+     * completion order; error is null when the job succeeded.
+     */
+    public void runAll(List<UploadJob> jobs, JobListener listener) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENCY);
+        CompletionService<Long> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Long>> futures = new ArrayList<>(jobs.size());
+        Deque<Integer> waiting = new ArrayDeque<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            waiting.add(i);
+            futures.add(null);
+        }
+
+        int inFlight = 0;
+        roundStartedAt = System.nanoTime();
+        try {
+            while (!waiting.isEmpty() || inFlight > 0) {
+                while (inFlight < concurrency && !waiting.isEmpty()) {
+                    int index = waiting.poll();
+                    UploadJob job = jobs.get(index);
+                    futures.set(index, completion.submit(job::run));
+                    inFlight++;
+                }
+
+                Future<Long> done = completion.take();
+                inFlight--;
+                int index = futures.indexOf(done);
+                try {
+                    onJobSucceeded(done.get());
+                    listener.onJobFinished(index, null);
+                } catch (ExecutionException e) {
+                    onJobFailed();
+                    Exception cause = e.getCause() instanceof Exception
+                            ? (Exception) e.getCause() : e;
+                    listener.onJobFinished(index, cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void onJobSucceeded(long bytes) {
+        roundBytes += bytes;
+        roundCompleted++;
+        if (roundCompleted < concurrency) {
+            return;
+        }
+
+        double seconds = Math.max((System.nanoTime() - roundStartedAt) / 1e9, 0.001);
+        double throughput = roundBytes / seconds;
+        if (lastThroughput == 0 || throughput > lastThroughput * (1 + THROUGHPUT_TOLERANCE)) {
+            concurrency = clamp(concurrency + 1);
+        } else if (throughput < lastThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+            concurrency = clamp(concurrency - 1);
+        }
+        Log.d(TAG, "Round throughput " + (long) throughput + " B/s, parallel uploads now " + concurrency);
+
+        lastThroughput = throughput;
+        startRound();
+    }
+
+    private void onJobFailed() {
+        concurrency = clamp(concurrency / 2);
+        lastThroughput = 0;
+        startRound();
+    }
+
+    private void startRound() {
+        roundBytes = 0;
+        roundCompleted = 0;
+        roundStartedAt = System.nanoTime();
+    }
+
+    private static int clamp(int value) {
+        return Math.max(MIN_CONCURRENCY, Math.min(MAX_CONCURRENCY, value));
+    }
+}
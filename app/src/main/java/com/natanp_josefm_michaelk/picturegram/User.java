@@ -8,14 +8,12 @@ public class User {
     private String name;
     private String profilePictureUrl; // URL of profile image
     private List<UserPhoto> userPhotos;   // List of user's gallery photos
-    private List<String> following;       // List of users this user follows
-    private List<String> followers;       // List of users following this user
+    private int followingCount;           // Number of users this user follows
+    private int followersCount;           // Number of users following this user
 
     // Empty constructor for Firestore
     public User() {
         this.userPhotos = new ArrayList<>();
-        this.following = new ArrayList<>();
-        this.followers = new ArrayList<>();
     }
 
     // Constructor including profile picture URL
@@ -24,8 +22,6 @@ public class User {
         this.name = name;
         this.profilePictureUrl = profilePictureUrl;
         this.userPhotos = new ArrayList<>();
-        this.following = new ArrayList<>();
-        this.followers = new ArrayList<>();
     }
 
     // Getters and setters
@@ -74,36 +70,20 @@ public class User {
         return userPhotos.size();
     }
 
-    // Methods for managing followers and following
-    public List<String> getFollowing() {
-        return following;
-    }
-
-    public void setFollowing(List<String> following) {
-        this.following = following != null ? following : new ArrayList<>();
-    }
-
-    public List<String> getFollowers() {
-        return followers;
-    }
-
-    public void setFollowers(List<String> followers) {
-        this.followers = followers != null ? followers : new ArrayList<>();
-    }
-
-    public boolean isFollowing(String userId) {
-        return following != null && following.contains(userId);
+    // Follower totals, kept up to date next to the followers/following subcollections
+    public int getFollowingCount() {
+        return followingCount;
     }
 
-    public boolean isFollowedBy(String userId) {
-        return followers != null && followers.contains(userId);
+    public void setFollowingCount(int followingCount) {
+        this.followingCount = followingCount;
     }
 
-    public int getFollowingCount() {
-        return following != null ? following.size() : 0;
+    public int getFollowersCount() {
+        return followersCount;
     }
 
-    public int getFollowersCount() {
-        return followers != null ? followers.size() : 0;
+    public void setFollowersCount(int followersCount) {
+        this.followersCount = followersCount;
     }
 }
@@ -7,18 +7,33 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.core.util.ObjectsCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 
-import java.util.List;
+public class UserAdapter extends ListAdapter<User, UserAdapter.UserViewHolder> {
 
-public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder> {
-    private List<User> userList;
+    // Users are the same row if they have the same ID; only redraw if name or picture changed
+    private static final DiffUtil.ItemCallback<User> DIFF_CALLBACK = new DiffUtil.ItemCallback<User>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull User oldItem, @NonNull User newItem) {
+            return ObjectsCompat.equals(oldItem.getUserId(), newItem.getUserId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull User oldItem, @NonNull User newItem) {
+            return ObjectsCompat.equals(oldItem.getName(), newItem.getName())
+                    && ObjectsCompat.equals(oldItem.getProfilePictureUrl(), newItem.getProfilePictureUrl());
+        }
+    };
 
-    // Constructor
-    public UserAdapter(List<User> userList) {
-        this.userList = userList;
+    // Constructor - the list is published with submitList()
+    public UserAdapter() {
+        super(DIFF_CALLBACK);
     }
 
     @Override
@@ -30,7 +45,7 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
 
     @Override
     public void onBindViewHolder(UserViewHolder holder, int position) {
-        User user = userList.get(position);
+        User user = getItem(position);
         holder.userNameText.setText(user.getName());
 
         // Load profile picture URL with Glide, fallback to launcher icon
@@ -55,11 +70,6 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
         });
     }
 
-    @Override
-    public int getItemCount() {
-        return userList.size();
-    }
-
     static class UserViewHolder extends RecyclerView.ViewHolder {
         ImageView userImageView;
         TextView userNameText;
@@ -0,0 +1,17 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Upsert;
+
+import java.util.List;
+
+@Dao
+public interface UserDao {
+
+    @Upsert
+    void upsertAll(List<UserEntity> users);
+
+    @Query("SELECT * FROM users ORDER BY nameLower LIMIT :limit")
+    List<UserEntity> firstByName(int limit);
+}
@@ -0,0 +1,32 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Local copy of a user document (see LocalDatabase)
+ */
+@Entity(tableName = "users", indices = {@Index("nameLower")})
+public class UserEntity {
+    @PrimaryKey
+    @NonNull
+    public String id = "";
+    public String username;
+    public String nameLower; // normalized name, for prefix search
+    public String profilePictureUrl;
+
+    public static UserEntity fromUser(User user) {
+        UserEntity entity = new UserEntity();
+        entity.id = user.getUserId();
+        entity.username = user.getName();
+        entity.nameLower = UserSearchIndex.normalize(user.getName());
+        entity.profilePictureUrl = user.getProfilePictureUrl();
+        return entity;
+    }
+
+    public User toUser() {
+        return new User(id, username, profilePictureUrl);
+    }
+}
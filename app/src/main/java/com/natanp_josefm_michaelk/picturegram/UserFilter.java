@@ -0,0 +1,124 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Matches a search string against a list of users off the main thread.
+ *
+ * Names are normalized once when the list is set (not once per keystroke),
+ * every new query supersedes the previous one, and results are posted back
+ * on the main thread only if no newer query was started in the meantime.
+ */
+public class UserFilter {
+
+    public interface ResultListener {
+        void onFilterResults(List<User> users);
+    }
+
+    // How often a running match checks whether it has been superseded
+    private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // Swapped as a whole so a running match always sees a consistent pair
+    private volatile Candidates candidates = new Candidates(new User[0], new String[0]);
+
+    private static class Candidates {
+        final User[] users;
+        final String[] normalizedNames;
+
+        Candidates(User[] users, String[] normalizedNames) {
+            this.users = users;
+            this.normalizedNames = normalizedNames;
+        }
+    }
+
+    /** Replaces the candidate list; normalization happens on the background thread */
+    public void setUsers(List<User> users) {
+        final User[] copy = users.toArray(new User[0]);
+        executor.execute(() -> {
+            String[] names = new String[copy.length];
+            for (int i = 0; i < copy.length; i++) {
+                names[i] = UserSearchIndex.normalize(copy[i].getName());
+            }
+            candidates = new Candidates(copy, names);
+        });
+    }
+
+    /**
+     * Filters the candidates by the query. Any filter still queued or running
+     * for an older query is abandoned.
+     */
+    public void filter(String query, int limit, ResultListener listener) {
+        final int myGeneration = generation.incrementAndGet();
+        executor.execute(() -> {
+            if (myGeneration != generation.get()) return;
+
+            Candidates current = candidates;
+            List<User> result = match(current.users, current.normalizedNames, UserSearchIndex.normalize(query),
+                    limit, () -> myGeneration != generation.get());
+            if (result == null) return; // superseded while matching
+
+            mainHandler.post(() -> {
+                if (myGeneration == generation.get()) {
+                    listener.onFilterResults(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Names starting with the needle come first, then names containing it anywhere.
+     * names[i] is the normalized name of users[i] and needle is normalized too.
+     * Returns null if superseded reports true while matching.
+     */
+    static List<User> match(User[] users, String[] names, String needle, int limit, BooleanSupplier superseded) {
+        if (needle.isEmpty()) {
+            List<User> all = new ArrayList<>(Math.min(limit, users.length));
+            for (int i = 0; i < users.length && all.size() < limit; i++) {
+                all.add(users[i]);
+            }
+            return all;
+        }
+
+        List<User> prefixMatches = new ArrayList<>();
+        List<User> containsMatches = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            if (i % CANCEL_CHECK_INTERVAL == 0 && superseded.getAsBoolean()) {
+                return null;
+            }
+            int index = names[i].indexOf(needle);
+            if (index == 0) {
+                prefixMatches.add(users[i]);
+                if (prefixMatches.size() == limit) break;
+            } else if (index > 0 && containsMatches.size() < limit) {
+                containsMatches.add(users[i]);
+            }
+        }
+
+        List<User> result = new ArrayList<>(limit);
+        result.addAll(prefixMatches);
+        for (User user : containsMatches) {
+            if (result.size() == limit) break;
+            result.add(user);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    public void shutdown() {
+        generation.incrementAndGet();
+        mainHandler.removeCallbacksAndMessages(null);
+        executor.shutdownNow();
+    }
+}
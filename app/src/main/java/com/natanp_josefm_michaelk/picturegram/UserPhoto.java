@@ -10,12 +10,16 @@ public class UserPhoto implements Serializable {
     private String description;
     private Date timestamp;
     private int likeCount;
-    private List<String> likedByUsers; // List of usernames who liked this photo
+    private List<String> likedByUsers; // Usernames who liked this photo (older photos only)
+    private boolean likedByMe; // Whether the current user likes this photo
     private String filePath; // Path to saved image file (for camera or gallery photos)
     private String storageUrl; // Firebase Storage URL
+    private String thumbUrl;   // Small rendition for the grid
+    private String mediumUrl;  // Medium rendition for full-width views
     private String authorId;   // Firebase user ID of the author
     private String authorName; // Display name of the author
     private String firestoreId; // Firestore document ID for this photo
+    private String pendingUploadId; // Set while the photo is still queued for upload
 
     public UserPhoto(int imageResourceId) {
         this.imageResourceId = imageResourceId;
@@ -105,15 +109,25 @@ public class UserPhoto implements Serializable {
             // User already liked this photo - remove the like
             likedByUsers.remove(username);
             likeCount--;
+            likedByMe = false;
             return true;
         } else {
             // User hasn't liked this photo yet - add the like
             likedByUsers.add(username);
             likeCount++;
+            likedByMe = true;
             return true;
         }
     }
     
+    public boolean isLikedByMe() {
+        return likedByMe;
+    }
+
+    public void setLikedByMe(boolean likedByMe) {
+        this.likedByMe = likedByMe;
+    }
+
     public List<String> getLikedByUsers() {
         return likedByUsers;
     }
@@ -126,6 +140,34 @@ public class UserPhoto implements Serializable {
         this.storageUrl = storageUrl;
     }
 
+    public String getThumbUrl() {
+        return thumbUrl;
+    }
+
+    public void setThumbUrl(String thumbUrl) {
+        this.thumbUrl = thumbUrl;
+    }
+
+    public String getMediumUrl() {
+        return mediumUrl;
+    }
+
+    public void setMediumUrl(String mediumUrl) {
+        this.mediumUrl = mediumUrl;
+    }
+
+    // Smallest uploaded version that is available (older photos only have the original)
+    public String getGridImageUrl() {
+        if (thumbUrl != null && !thumbUrl.isEmpty()) return thumbUrl;
+        return storageUrl;
+    }
+
+    // Full-width version for the feed, falling back to the original
+    public String getFeedImageUrl() {
+        if (mediumUrl != null && !mediumUrl.isEmpty()) return mediumUrl;
+        return storageUrl;
+    }
+
     public String getAuthorId() {
         return authorId;
     }
@@ -157,4 +199,16 @@ public class UserPhoto implements Serializable {
     public boolean hasFirestoreId() {
         return firestoreId != null && !firestoreId.isEmpty();
     }
+
+    public String getPendingUploadId() {
+        return pendingUploadId;
+    }
+
+    public void setPendingUploadId(String pendingUploadId) {
+        this.pendingUploadId = pendingUploadId;
+    }
+
+    public boolean isPendingUpload() {
+        return pendingUploadId != null;
+    }
 } 
\ No newline at end of file
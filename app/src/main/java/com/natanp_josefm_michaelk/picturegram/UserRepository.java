@@ -0,0 +1,46 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Users found through search, written through to LocalDatabase so the user
+ * list can be filtered locally right away on the next visit
+ */
+public class UserRepository {
+
+    public interface UsersCallback {
+        void onUsers(List<User> users);
+    }
+
+    private final UserDao userDao;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public UserRepository(Context context) {
+        userDao = LocalDatabase.getInstance(context).userDao();
+    }
+
+    public void save(List<User> users) {
+        List<UserEntity> entities = new ArrayList<>();
+        for (User user : users) {
+            entities.add(UserEntity.fromUser(user));
+        }
+        if (entities.isEmpty()) return;
+        LocalDatabase.IO.execute(() -> userDao.upsertAll(entities));
+    }
+
+    // Stored users by name, delivered on the main thread
+    public void load(int limit, UsersCallback callback) {
+        LocalDatabase.IO.execute(() -> {
+            List<User> users = new ArrayList<>();
+            for (UserEntity entity : userDao.firstByName(limit)) {
+                users.add(entity.toUser());
+            }
+            mainHandler.post(() -> callback.onUsers(users));
+        });
+    }
+}
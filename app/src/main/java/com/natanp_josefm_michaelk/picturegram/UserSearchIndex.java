@@ -0,0 +1,96 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Search fields stored on each users/{uid} document so user search can run
+ * as a bounded Firestore query instead of downloading the whole collection.
+ *
+ * nameLower    - normalized username, used for "starts with" range queries
+ * namePrefixes - every prefix of every word in the name, used to match later words
+ *
+ * The onUserWrite cloud function computes the same fields with the same rules,
+ * so keep normalize() in sync with normalizeName() in index.js.
+ */
+public class UserSearchIndex {
+
+    public static final String FIELD_NAME_LOWER = "nameLower";
+    public static final String FIELD_NAME_PREFIXES = "namePrefixes";
+
+    // Longer prefixes are not worth storing, nobody types that much before the match shows
+    static final int MAX_PREFIX_LENGTH = 15;
+
+    // Lowercase, strip accents and collapse whitespace
+    public static String normalize(String name) {
+        if (name == null) return "";
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT)
+                .trim()
+                .replaceAll("\\s+", " ");
+    }
+
+    public static List<String> prefixTokens(String name) {
+        Set<String> tokens = new LinkedHashSet<>();
+        String normalized = normalize(name);
+        if (normalized.isEmpty()) return new ArrayList<>();
+
+        for (String word : normalized.split(" ")) {
+            int max = Math.min(word.length(), MAX_PREFIX_LENGTH);
+            for (int i = 1; i <= max; i++) {
+                tokens.add(word.substring(0, i));
+            }
+        }
+        return new ArrayList<>(tokens);
+    }
+
+    // Fields to merge into the user document whenever the username is set
+    public static Map<String, Object> indexFields(String username) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_NAME_LOWER, normalize(username));
+        fields.put(FIELD_NAME_PREFIXES, prefixTokens(username));
+        return fields;
+    }
+
+    // Users whose whole name starts with the prefix
+    public static Query namePrefixQuery(FirebaseFirestore firestore, String prefix, int limit) {
+        return firestore.collection("users")
+                .orderBy(FIELD_NAME_LOWER)
+                .startAt(prefix)
+                .endAt(prefix + "\uf8ff")
+                .limit(limit);
+    }
+
+    /**
+     * Users with any word of the name starting with the prefix. Only the first
+     * MAX_PREFIX_LENGTH characters are stored, so a longer prefix is cut to that;
+     * the few extra matches this lets through are filtered out by UserFilter.
+     */
+    public static Query wordPrefixQuery(FirebaseFirestore firestore, String prefix, int limit) {
+        return firestore.collection("users")
+                .whereArrayContains(FIELD_NAME_PREFIXES, storedPrefix(prefix))
+                .limit(limit);
+    }
+
+    // The prefix as it appears in namePrefixes
+    static String storedPrefix(String prefix) {
+        return prefix.length() > MAX_PREFIX_LENGTH ? prefix.substring(0, MAX_PREFIX_LENGTH) : prefix;
+    }
+
+    // First page shown before anything is typed
+    public static Query browseQuery(FirebaseFirestore firestore, int limit) {
+        return firestore.collection("users")
+                .orderBy(FIELD_NAME_LOWER)
+                .limit(limit);
+    }
+}
@@ -2,6 +2,8 @@
 package com.natanp_josefm_michaelk.picturegram;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
@@ -18,23 +20,42 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class UsersActivity extends AppCompatActivity {
 
+    private static final String TAG = "UsersActivity";
+    private static final long FILTER_DEBOUNCE_MS = 80;   // local matching, cheap
+    private static final long SEARCH_DEBOUNCE_MS = 300;  // Firestore query
+    private static final int SEARCH_LIMIT = 30;
+    private static final int STORED_USERS_LIMIT = 500; // from the local mirror
+
     private TextView      notAuthTv;
     private Group         contentGroup;
     private EditText      searchEt;
     private RecyclerView  recyclerView;
 
-    private List<User>    allUsers       = new ArrayList<>();
-    private List<User>    displayedUsers = new ArrayList<>();
+    // Every user seen so far, matched locally while the server query is pending
+    private final Map<String, User> knownUsers = new LinkedHashMap<>();
+    private UserFilter    userFilter;
+    private UserRepository userRepository;
     private UserAdapter   adapter;
     private FirebaseFirestore db;
+    private String        currentUserId;
+    private String        currentQuery = "";
+
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private Runnable      pendingFilter;
+    private Runnable      pendingSearch;
+    private int           searchGeneration = 0; // responses for older queries are dropped
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -70,52 +91,130 @@ public class UsersActivity extends AppCompatActivity {
 
         // 4) RecyclerView + adapter
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        adapter = new UserAdapter(displayedUsers);
+        adapter = new UserAdapter();
         recyclerView.setAdapter(adapter);
+        userFilter = new UserFilter();
+
+        // 5) users stored from earlier visits, so the list and local filter work right away
+        userRepository = new UserRepository(this);
+        currentUserId = me.getUid();
+        userRepository.load(STORED_USERS_LIMIT, stored -> {
+            if (isDestroyed()) return;  // the filter is shut down by then
+            for (User user : stored) {
+                if (user.getUserId().equals(currentUserId)) continue;
+                if (!knownUsers.containsKey(user.getUserId())) knownUsers.put(user.getUserId(), user);
+            }
+            userFilter.setUsers(new ArrayList<>(knownUsers.values()));
+            runFilter();
+        });
 
-        // 5) Firestore init & load all users
+        // 6) Firestore init & load the first page of users
         db = FirebaseFirestore.getInstance();
-        final String currentUserId = me.getUid();
-        db.collection("users")
-                .get()
-                .addOnSuccessListener(query -> {
-                    allUsers.clear();
-                    for (QueryDocumentSnapshot doc : query) {
-                        String userId   = doc.getId();
-                        if (userId.equals(currentUserId)) continue;  // skip yourself
-                        String username = doc.getString("username");
-                        String picUrl   = doc.getString("profilePictureUrl");
-                        allUsers.add(new User(userId, username, picUrl));
-                    }
-                    filterUsers("");
-                })
-                .addOnFailureListener(e -> Log.w("UsersActivity", "load failed", e));
+        searchUsers("");
 
-        // 6) filter as you type
+        // 7) filter as you type: local matches first, then the server search once typing pauses
         searchEt.addTextChangedListener(new TextWatcher() {
             @Override public void beforeTextChanged(CharSequence s,int a,int b,int c) {}
             @Override public void afterTextChanged(Editable e) {}
             @Override
             public void onTextChanged(CharSequence s,int st,int b,int c) {
-                filterUsers(s.toString());
+                currentQuery = s.toString();
+                scheduleFilter();
+                scheduleSearch(currentQuery);
             }
         });
     }
 
-    /** Filters the master allUsers list into displayedUsers, then refreshes adapter */
-    private void filterUsers(String query) {
-        displayedUsers.clear();
-        if (query == null || query.trim().isEmpty()) {
-            displayedUsers.addAll(allUsers);
-        } else {
-            String lower = query.toLowerCase().trim();
-            for (User u : allUsers) {
-                if (u.getName().toLowerCase().contains(lower)) {
-                    displayedUsers.add(u);
-                }
-            }
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchHandler.removeCallbacksAndMessages(null);
+        if (userFilter != null) {
+            userFilter.shutdown();
         }
-        adapter.notifyDataSetChanged();
     }
-}
 
+    /** Re-runs the background matcher for the current query after a short pause */
+    private void scheduleFilter() {
+        if (pendingFilter != null) {
+            searchHandler.removeCallbacks(pendingFilter);
+        }
+        pendingFilter = this::runFilter;
+        searchHandler.postDelayed(pendingFilter, FILTER_DEBOUNCE_MS);
+    }
+
+    private void runFilter() {
+        // DiffUtil works out the row changes, no notifyDataSetChanged
+        userFilter.filter(currentQuery, SEARCH_LIMIT, adapter::submitList);
+    }
+
+    /** Debounces keystrokes so only the last query of a burst hits Firestore */
+    private void scheduleSearch(String query) {
+        if (pendingSearch != null) {
+            searchHandler.removeCallbacks(pendingSearch);
+        }
+        pendingSearch = () -> searchUsers(query);
+        searchHandler.postDelayed(pendingSearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    /**
+     * Runs a bounded prefix search against the nameLower / namePrefixes index fields,
+     * so the cost of a search does not depend on how many users exist.
+     */
+    private void searchUsers(String query) {
+        final int generation = ++searchGeneration;
+        String prefix = UserSearchIndex.normalize(query);
+
+        if (prefix.isEmpty()) {
+            // Cached list right away, refreshed only if the server has changes
+            FirestoreReads.get(UserSearchIndex.browseQuery(db, SEARCH_LIMIT),
+                    FirestoreReads.Policy.CACHE_THEN_NETWORK,
+                    new FirestoreReads.Callback<QuerySnapshot>() {
+                        @Override
+                        public void onResult(QuerySnapshot snapshot) {
+                            if (generation != searchGeneration) return;
+                            showResults(snapshot.getDocuments());
+                        }
+
+                        @Override
+                        public void onError(Exception e) {
+                            Log.w(TAG, "load failed", e);
+                        }
+                    });
+            return;
+        }
+
+        // Whole-name prefix plus word prefix ("smi" finds "John Smith"), merged
+        Tasks.whenAllSuccess(
+                UserSearchIndex.namePrefixQuery(db, prefix, SEARCH_LIMIT).get(),
+                UserSearchIndex.wordPrefixQuery(db, prefix, SEARCH_LIMIT).get())
+                .addOnSuccessListener(results -> {
+                    if (generation != searchGeneration) return;
+                    Map<String, DocumentSnapshot> merged = new LinkedHashMap<>();
+                    for (Object result : results) {
+                        for (DocumentSnapshot doc : ((QuerySnapshot) result).getDocuments()) {
+                            merged.put(doc.getId(), doc);
+                        }
+                    }
+                    showResults(new ArrayList<>(merged.values()));
+                })
+                .addOnFailureListener(e -> Log.w(TAG, "search failed for: " + prefix, e));
+    }
+
+    private void showResults(List<DocumentSnapshot> docs) {
+        List<User> found = new ArrayList<>();
+        for (DocumentSnapshot doc : docs) {
+            String userId   = doc.getId();
+            if (userId.equals(currentUserId)) continue;  // skip yourself
+            String username = doc.getString("username");
+            String picUrl   = doc.getString("profilePictureUrl");
+            if (username == null) continue;
+            User user = new User(userId, username, picUrl);
+            knownUsers.put(userId, user);
+            found.add(user);
+        }
+        userRepository.save(found);
+        userFilter.setUsers(new ArrayList<>(knownUsers.values()));
+        runFilter();
+    }
+}
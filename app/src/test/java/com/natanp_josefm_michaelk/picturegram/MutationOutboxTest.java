@@ -0,0 +1,98 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Coalescing of queued mutations, see MutationOutbox.coalesce.
+ */
+public class MutationOutboxTest {
+
+    private final List<MutationOutbox.Mutation> queue = new ArrayList<>();
+    private final Set<String> inFlight = new HashSet<>();
+
+    private static MutationOutbox.Mutation mutation(String key, String type) {
+        return new MutationOutbox.Mutation(key, type, "me", "me", "target", "them");
+    }
+
+    private static MutationOutbox.Mutation description(String photoId, String text) {
+        MutationOutbox.Mutation mutation = mutation("desc:" + photoId, MutationOutbox.TYPE_DESCRIPTION);
+        mutation.description = text;
+        return mutation;
+    }
+
+    @Test
+    public void likeThenUnlikeCancelsOut() {
+        assertEquals(0, MutationOutbox.coalesce(queue, mutation("like:p1", MutationOutbox.TYPE_LIKE), inFlight));
+        assertEquals(2, MutationOutbox.coalesce(queue, mutation("like:p1", MutationOutbox.TYPE_UNLIKE), inFlight));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void followThenUnfollowCancelsOut() {
+        MutationOutbox.coalesce(queue, mutation("follow:u1", MutationOutbox.TYPE_FOLLOW), inFlight);
+        assertEquals(2, MutationOutbox.coalesce(queue, mutation("follow:u1", MutationOutbox.TYPE_UNFOLLOW), inFlight));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void toggledThreeTimesLeavesTheLastState() {
+        MutationOutbox.coalesce(queue, mutation("like:p1", MutationOutbox.TYPE_LIKE), inFlight);
+        MutationOutbox.coalesce(queue, mutation("like:p1", MutationOutbox.TYPE_UNLIKE), inFlight);
+        MutationOutbox.coalesce(queue, mutation("like:p1", MutationOutbox.TYPE_LIKE), inFlight);
+
+        assertEquals(1, queue.size());
+        assertEquals(MutationOutbox.TYPE_LIKE, queue.get(0).type);
+    }
+
+    @Test
+    public void onlyTheLastDescriptionIsKept() {
+        MutationOutbox.coalesce(queue, description("p1", "first"), inFlight);
+        assertEquals(1, MutationOutbox.coalesce(queue, description("p1", "second"), inFlight));
+        assertEquals(1, MutationOutbox.coalesce(queue, description("p1", "third"), inFlight));
+
+        assertEquals(1, queue.size());
+        assertEquals("third", queue.get(0).description);
+    }
+
+    @Test
+    public void differentKeysAreLeftAlone() {
+        MutationOutbox.coalesce(queue, mutation("like:p1", MutationOutbox.TYPE_LIKE), inFlight);
+        MutationOutbox.coalesce(queue, description("p1", "text"), inFlight);
+        assertEquals(0, MutationOutbox.coalesce(queue, mutation("like:p2", MutationOutbox.TYPE_UNLIKE), inFlight));
+
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void mutationsBeingCommittedAreNotCoalesced() {
+        MutationOutbox.Mutation like = mutation("like:p1", MutationOutbox.TYPE_LIKE);
+        MutationOutbox.coalesce(queue, like, inFlight);
+        inFlight.add(like.id);
+
+        // The like is already on its way; the unlike has to be sent after it
+        assertEquals(0, MutationOutbox.coalesce(queue, mutation("like:p1", MutationOutbox.TYPE_UNLIKE), inFlight));
+        assertEquals(2, queue.size());
+        assertEquals(MutationOutbox.TYPE_UNLIKE, queue.get(1).type);
+    }
+
+    @Test
+    public void queueKeepsTheOrderOfWhatIsLeft() {
+        MutationOutbox.coalesce(queue, mutation("follow:u1", MutationOutbox.TYPE_FOLLOW), inFlight);
+        MutationOutbox.coalesce(queue, mutation("like:p1", MutationOutbox.TYPE_LIKE), inFlight);
+        MutationOutbox.coalesce(queue, mutation("like:p2", MutationOutbox.TYPE_LIKE), inFlight);
+        MutationOutbox.coalesce(queue, mutation("like:p1", MutationOutbox.TYPE_UNLIKE), inFlight);
+
+        List<String> keys = new ArrayList<>();
+        for (MutationOutbox.Mutation mutation : queue) keys.add(mutation.key);
+        assertEquals(List.of("follow:u1", "like:p2"), keys);
+        assertEquals(Collections.emptySet(), inFlight);
+    }
+}
@@ -0,0 +1,53 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Quiet hours, see NotificationPrefs.isQuiet. Times are minutes after midnight.
+ */
+public class NotificationPrefsTest {
+
+    private static int at(int hour, int minute) {
+        return hour * 60 + minute;
+    }
+
+    @Test
+    public void quietHoursWithinOneDay() {
+        int start = at(13, 0);
+        int end = at(15, 30);
+
+        assertFalse(NotificationPrefs.isQuiet(at(12, 59), start, end));
+        assertTrue(NotificationPrefs.isQuiet(at(13, 0), start, end));
+        assertTrue(NotificationPrefs.isQuiet(at(15, 29), start, end));
+        assertFalse(NotificationPrefs.isQuiet(at(15, 30), start, end));
+    }
+
+    @Test
+    public void quietHoursWrapPastMidnight() {
+        int start = at(22, 0);
+        int end = at(7, 0);
+
+        assertFalse(NotificationPrefs.isQuiet(at(21, 59), start, end));
+        assertTrue(NotificationPrefs.isQuiet(at(22, 0), start, end));
+        assertTrue(NotificationPrefs.isQuiet(at(23, 59), start, end));
+        assertTrue(NotificationPrefs.isQuiet(at(0, 0), start, end));
+        assertTrue(NotificationPrefs.isQuiet(at(6, 59), start, end));
+        assertFalse(NotificationPrefs.isQuiet(at(7, 0), start, end));
+        assertFalse(NotificationPrefs.isQuiet(at(12, 0), start, end));
+    }
+
+    @Test
+    public void sameStartAndEndIsNeverQuiet() {
+        for (int minute = 0; minute < 24 * 60; minute += 30) {
+            assertFalse(NotificationPrefs.isQuiet(minute, at(22, 0), at(22, 0)));
+        }
+    }
+
+    @Test
+    public void quietFromMidnight() {
+        assertTrue(NotificationPrefs.isQuiet(at(0, 0), 0, at(6, 0)));
+        assertFalse(NotificationPrefs.isQuiet(at(23, 59), 0, at(6, 0)));
+    }
+}
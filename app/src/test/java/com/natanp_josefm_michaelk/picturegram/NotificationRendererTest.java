@@ -0,0 +1,118 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Grouping of alerts per author and trimming to what InboxStyle shows, see
+ * NotificationRenderer.AuthorGroup.
+ */
+public class NotificationRendererTest {
+
+    private final Map<String, NotificationRenderer.AuthorGroup> groups = new LinkedHashMap<>();
+
+    private static NotificationRenderer.Alert newPhoto(String authorId, String authorName, String body, long at) {
+        Map<String, String> data = new HashMap<>();
+        data.put("type", NotificationRenderer.TYPE_NEW_PHOTO);
+        data.put("authorId", authorId);
+        data.put("authorName", authorName);
+        data.put("body", body);
+        NotificationRenderer.Alert alert = NotificationRenderer.Alert.fromData(data);
+        alert.receivedAt = at;
+        return alert;
+    }
+
+    private NotificationRenderer.AuthorGroup add(NotificationRenderer.Alert alert) {
+        NotificationRenderer.AuthorGroup group = NotificationRenderer.groupFor(groups, alert);
+        group.add(alert);
+        return group;
+    }
+
+    @Test
+    public void alertsOfOneAuthorShareAGroup() {
+        add(newPhoto("a1", "alice", "first", 1));
+        add(newPhoto("a1", "alice", "second", 2));
+        add(newPhoto("b1", "bob", "other", 3));
+
+        assertEquals(2, groups.size());
+        NotificationRenderer.AuthorGroup alice = groups.get("id:a1");
+        assertEquals(2, alice.count);
+        assertEquals("second", alice.alerts.get(0).line());
+        assertEquals("first", alice.alerts.get(1).line());
+    }
+
+    @Test
+    public void localAlertsAreGroupedByName() {
+        NotificationRenderer.Alert like = new NotificationRenderer.Alert(NotificationRenderer.TYPE_LIKE, null, "carol");
+        NotificationRenderer.Alert follow = new NotificationRenderer.Alert(NotificationRenderer.TYPE_FOLLOW, null, "carol");
+
+        assertSame(add(like), add(follow));
+        assertEquals("Started following you", groups.get("name:carol").alerts.get(0).line());
+    }
+
+    @Test
+    public void onlyTheLatestLinesAreKeptButAllAreCounted() {
+        int total = NotificationRenderer.MAX_LINES + 3;
+        NotificationRenderer.AuthorGroup group = null;
+        for (int i = 0; i < total; i++) {
+            group = add(newPhoto("a1", "alice", "photo " + i, i));
+        }
+
+        assertEquals(NotificationRenderer.MAX_LINES, group.alerts.size());
+        assertEquals(total, group.count);
+        assertEquals("photo " + (total - 1), group.alerts.get(0).line());
+        assertEquals("photo " + (total - NotificationRenderer.MAX_LINES),
+                group.alerts.get(NotificationRenderer.MAX_LINES - 1).line());
+    }
+
+    @Test
+    public void dismissedGroupStartsOverWithWhatCameAfter() {
+        NotificationRenderer.AuthorGroup group = add(newPhoto("a1", "alice", "seen 1", 10));
+        add(newPhoto("a1", "alice", "seen 2", 20));
+        group.markRendered(25);
+        assertFalse(group.dirty);
+
+        add(newPhoto("a1", "alice", "new", 30));
+        group.startOver();
+
+        assertEquals(1, group.alerts.size());
+        assertEquals("new", group.alerts.get(0).line());
+        assertEquals(1, group.count);
+        assertTrue(group.dirty);
+    }
+
+    @Test
+    public void copyIsNotChangedByLaterAlerts() {
+        NotificationRenderer.AuthorGroup group = add(newPhoto("a1", "alice", "first", 1));
+        NotificationRenderer.AuthorGroup copy = group.copy();
+
+        add(newPhoto("a1", "alice", "second", 2));
+
+        assertEquals(1, copy.alerts.size());
+        assertEquals("first", copy.alerts.get(0).line());
+        assertEquals(1, copy.count);
+        assertEquals(2, group.alerts.size());
+        assertEquals(group.notificationId(), copy.notificationId());
+    }
+
+    @Test
+    public void messageWithoutAuthorOrTitleIsIgnored() {
+        Map<String, String> data = new HashMap<>();
+        data.put("type", NotificationRenderer.TYPE_NEW_PHOTO);
+        assertNull(NotificationRenderer.Alert.fromData(data));
+    }
+
+    @Test
+    public void olderMessagesAreAttributedByTheirDeepLink() {
+        Map<String, String> data = new HashMap<>();
+        data.put("type", NotificationRenderer.TYPE_NEW_PHOTO);
+        data.put("userId", "a1");
+
+        assertEquals("id:a1", NotificationRenderer.groupFor(groups, NotificationRenderer.Alert.fromData(data)).key);
+    }
+}
@@ -0,0 +1,41 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import com.google.firebase.storage.StorageException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Which failed uploads drop their resumable session, see PhotoUploadJob.isSessionInvalid.
+ */
+public class PhotoUploadJobTest {
+
+    @Test
+    public void corruptTransferDropsTheSession() {
+        assertTrue(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_INVALID_CHECKSUM, 0));
+    }
+
+    @Test
+    public void expiredOrUnknownSessionIsDropped() {
+        assertTrue(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_UNKNOWN, 400));
+        assertTrue(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_OBJECT_NOT_FOUND, 404));
+        assertTrue(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_UNKNOWN, 410));
+    }
+
+    @Test
+    public void networkErrorsAndCancelsKeepTheSession() {
+        // No HTTP answer at all
+        assertFalse(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_RETRY_LIMIT_EXCEEDED, 0));
+        assertFalse(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_CANCELED, 0));
+        assertFalse(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_UNKNOWN, 503));
+    }
+
+    @Test
+    public void authTimeoutAndRateLimitKeepTheSession() {
+        assertFalse(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_NOT_AUTHENTICATED, 401));
+        assertFalse(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_NOT_AUTHORIZED, 403));
+        assertFalse(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_UNKNOWN, 408));
+        assertFalse(PhotoUploadJob.isSessionInvalid(StorageException.ERROR_QUOTA_EXCEEDED, 429));
+    }
+}
@@ -0,0 +1,81 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class UploadSchedulerTest {
+
+    // A job that takes a fixed time, so more parallel jobs mean more bytes per second
+    private static UploadScheduler.UploadJob job(AtomicInteger running, AtomicInteger maxRunning) {
+        return () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } finally {
+                running.decrementAndGet();
+            }
+            return 100_000;
+        };
+    }
+
+    @Test
+    public void runsEveryJobOnceAndReportsEachIndex() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<UploadScheduler.UploadJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) jobs.add(job(running, maxRunning));
+
+        Set<Integer> finished = Collections.synchronizedSet(new HashSet<>());
+        new UploadScheduler(2).runAll(jobs, (index, error) -> {
+            assertNull(error);
+            assertTrue("reported twice: " + index, finished.add(index));
+        });
+
+        assertEquals(10, finished.size());
+        assertTrue(maxRunning.get() <= UploadScheduler.MAX_CONCURRENCY);
+    }
+
+    @Test
+    public void parallelismGrowsWhileThroughputImproves() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<UploadScheduler.UploadJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) jobs.add(job(running, maxRunning));
+
+        UploadScheduler scheduler = new UploadScheduler(1);
+        scheduler.runAll(jobs, (index, error) -> { });
+
+        assertTrue("concurrency " + scheduler.getConcurrency(), scheduler.getConcurrency() >= 3);
+        assertTrue(maxRunning.get() > 1);
+    }
+
+    @Test
+    public void failureHalvesParallelismAndIsReported() throws Exception {
+        List<UploadScheduler.UploadJob> jobs = new ArrayList<>();
+        jobs.add(() -> {
+            throw new IllegalStateException("network down");
+        });
+        List<Exception> errors = new ArrayList<>();
+
+        UploadScheduler scheduler = new UploadScheduler(4);
+        scheduler.runAll(jobs, (index, error) -> errors.add(error));
+
+        assertEquals(2, scheduler.getConcurrency());
+        assertEquals(1, errors.size());
+        assertEquals("network down", errors.get(0).getMessage());
+    }
+
+    @Test
+    public void initialParallelismIsClamped() {
+        assertEquals(UploadScheduler.MIN_CONCURRENCY, new UploadScheduler(0).getConcurrency());
+        assertEquals(UploadScheduler.MAX_CONCURRENCY, new UploadScheduler(100).getConcurrency());
+    }
+}
@@ -0,0 +1,137 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class UserFilterTest {
+
+    private static final int LIMIT = 30;
+
+    private static List<User> match(List<User> users, String query, int limit) {
+        User[] array = users.toArray(new User[0]);
+        String[] names = new String[array.length];
+        for (int i = 0; i < array.length; i++) {
+            names[i] = UserSearchIndex.normalize(array[i].getName());
+        }
+        return UserFilter.match(array, names, UserSearchIndex.normalize(query), limit, () -> false);
+    }
+
+    private static List<String> names(List<User> users) {
+        List<String> names = new ArrayList<>();
+        for (User user : users) names.add(user.getName());
+        return names;
+    }
+
+    private static List<User> users(String... names) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            users.add(new User("id-" + i, names[i], null));
+        }
+        return users;
+    }
+
+    @Test
+    public void prefixMatchesComeBeforeOtherMatches() {
+        List<User> users = users("Sam Smith", "Samuel", "Osama", "Bob");
+        assertEquals(Arrays.asList("Sam Smith", "Samuel", "Osama"), names(match(users, "sam", LIMIT)));
+    }
+
+    @Test
+    public void matchingIgnoresCaseAndAccents() {
+        List<User> users = users("José", "Jo");
+        assertEquals(Arrays.asList("José"), names(match(users, "JOSE", LIMIT)));
+    }
+
+    @Test
+    public void emptyQueryReturnsTheFirstUsersUpToTheLimit() {
+        List<User> users = users("a", "b", "c");
+        assertEquals(Arrays.asList("a", "b"), names(match(users, "  ", 2)));
+    }
+
+    @Test
+    public void resultsAreCappedAtTheLimit() {
+        List<User> users = users("ab", "xab", "abc", "abd", "yab");
+        assertEquals(Arrays.asList("ab", "abc", "abd"), names(match(users, "ab", 3)));
+    }
+
+    @Test
+    public void supersededMatchReturnsNull() {
+        User[] users = users("a").toArray(new User[0]);
+        assertNull(UserFilter.match(users, new String[] {"a"}, "a", LIMIT, () -> true));
+    }
+
+    /**
+     * Timed comparison over 100k synthetic users: the old filterUsers() loop
+     * (toLowerCase of every name on every keystroke) against the matcher on
+     * names normalized once. Prints the times; the results must agree.
+     */
+    @Test
+    public void matcherOver100kUsers() {
+        Random random = new Random(42);
+        String[] syllables = {"an", "bo", "ca", "de", "el", "fi", "go", "ha", "is", "jo", "ka", "li", "mo", "na"};
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder name = new StringBuilder();
+            for (int s = 0; s < 3 + random.nextInt(3); s++) {
+                name.append(syllables[random.nextInt(syllables.length)]);
+            }
+            name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+            users.add(new User("id-" + i, name + " " + i, null));
+        }
+        String[] keystrokes = {"j", "jo", "jok", "joka", "jokal", "jokali"};
+
+        User[] array = users.toArray(new User[0]);
+        long normalizeStarted = System.nanoTime();
+        String[] normalized = new String[array.length];
+        for (int i = 0; i < array.length; i++) {
+            normalized[i] = UserSearchIndex.normalize(array[i].getName());
+        }
+        long normalizeNs = System.nanoTime() - normalizeStarted;
+
+        // Warm up both loops so the JIT does not favour whichever runs second
+        for (int round = 0; round < 3; round++) {
+            for (String query : keystrokes) {
+                oldFilter(users, query);
+                UserFilter.match(array, normalized, query, LIMIT, () -> false);
+            }
+        }
+
+        long oldNs = 0;
+        long newNs = 0;
+        for (String query : keystrokes) {
+            long started = System.nanoTime();
+            List<User> old = oldFilter(users, query);
+            oldNs += System.nanoTime() - started;
+
+            started = System.nanoTime();
+            List<User> matched = UserFilter.match(array, normalized, query, LIMIT, () -> false);
+            newNs += System.nanoTime() - started;
+
+            // Same users found, the new matcher just stops at the limit
+            assertEquals(Math.min(LIMIT, old.size()), matched.size());
+            assertTrue(old.containsAll(matched));
+        }
+        System.out.printf("100k users, %d keystrokes: old filter %.1f ms/keystroke, matcher %.1f ms/keystroke"
+                        + " (+ %.1f ms to normalize once)%n",
+                keystrokes.length, oldNs / 1e6 / keystrokes.length, newNs / 1e6 / keystrokes.length,
+                normalizeNs / 1e6);
+    }
+
+    // UsersActivity.filterUsers() before the filter moved off the main thread
+    private static List<User> oldFilter(List<User> allUsers, String query) {
+        List<User> displayed = new ArrayList<>();
+        String lower = query.toLowerCase().trim();
+        for (User user : allUsers) {
+            if (user.getName().toLowerCase().contains(lower)) {
+                displayed.add(user);
+            }
+        }
+        return displayed;
+    }
+}
@@ -0,0 +1,39 @@
+package com.natanp_josefm_michaelk.picturegram;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UserSearchIndexTest {
+
+    @Test
+    public void normalizeLowercasesStripsAccentsAndCollapsesSpaces() {
+        assertEquals("jose maria", UserSearchIndex.normalize("  José   MARÍA "));
+        assertEquals("", UserSearchIndex.normalize(null));
+    }
+
+    @Test
+    public void prefixTokensCoverEveryWord() {
+        List<String> tokens = UserSearchIndex.prefixTokens("Ann Bo");
+        assertEquals(Arrays.asList("a", "an", "ann", "b", "bo"), tokens);
+    }
+
+    @Test
+    public void prefixTokensStopAtTheCap() {
+        List<String> tokens = UserSearchIndex.prefixTokens("abcdefghijklmnopqrstuvwxyz");
+        assertEquals(UserSearchIndex.MAX_PREFIX_LENGTH, tokens.size());
+        assertEquals("abcdefghijklmno", tokens.get(tokens.size() - 1));
+    }
+
+    @Test
+    public void longQueriesAreClampedToAStoredPrefix() {
+        String name = "abcdefghijklmnopqrstuvwxyz";
+        List<String> tokens = UserSearchIndex.prefixTokens(name);
+        assertTrue(tokens.contains(UserSearchIndex.storedPrefix(name)));
+        assertTrue(tokens.contains(UserSearchIndex.storedPrefix("abcdefghijklmnopq")));
+        assertEquals("abc", UserSearchIndex.storedPrefix("abc"));
+    }
+}
@@ -1,5 +1,18 @@
-const { onDocumentCreated } = require("firebase-functions/v2/firestore");
+const {
+  onDocumentCreated,
+  onDocumentDeleted,
+  onDocumentUpdated,
+  onDocumentWritten,
+} = require("firebase-functions/v2/firestore");
+const { onSchedule } = require("firebase-functions/v2/scheduler");
+const { defineInt } = require("firebase-functions/params");
 const admin = require("firebase-admin");
+const {
+  searchFieldUpdate,
+  hasFollowArrays,
+  migrateFollowArrays,
+  recountFollows,
+} = require("./users");
 admin.initializeApp();
 
 exports.onPhotoUpload = onDocumentCreated("photos/{photoId}", async (event) => {
@@ -16,84 +29,71 @@ exports.onPhotoUpload = onDocumentCreated("photos/{photoId}", async (event) => {
       return null;
     }
 
-    // Get the author's document to get followers array
-    const authorDoc = await admin
+    // Follower IDs from users/{authorId}/followers (document IDs only)
+    const followersSnapshot = await admin
       .firestore()
       .collection("users")
       .doc(authorId)
+      .collection("followers")
+      .select()
       .get();
+    const followers = followersSnapshot.docs.map((doc) => doc.id);
+    console.log("Followers:", followers.length);
 
-    if (!authorDoc.exists) {
-      console.error("Author document not found:", authorId);
-      return null;
-    }
-
-    const authorData = authorDoc.data();
-    console.log("Author data:", authorData);
-    const followers = authorData.followers || [];
-    console.log("Followers array:", followers);
+    // Fan out to the home feeds before notifying, so the photo is there when
+    // a follower taps the notification
+    await writeFeedItems(event.params.photoId, photoData, [authorId, ...followers]);
 
     if (followers.length === 0) {
       console.log("No followers found for user:", authorId);
       return null;
     }
 
-    // Get all follower data in a single query
-    const followersData = await admin
-      .firestore()
-      .collection("users")
-      .where(admin.firestore.FieldPath.documentId(), "in", followers)
-      .get();
+    // Data-only message: the app builds the notification itself
+    const message = {
+      data: {
+        photoId: event.params.photoId,
+        authorId: authorId,
+        authorName: authorName,
+        type: "new_photo",
+        title: `${authorName} posted a new photo`,
+        body: photoDescription || "Check out their latest upload!",
+        click_action: "OPEN_APP",
+        // Add these fields for deep linking
+        screen: "profile",
+        userId: authorId,
+      },
+      android: {
+        priority: "high",
+      },
+    };
+
+    // Big accounts: one topic message, however many followers there are
+    if (followers.length >= TOPIC_FOLLOWER_THRESHOLD.value()) {
+      await admin.messaging().send({ ...message, topic: authorTopic(authorId) });
+      console.log("Sent new photo notification to topic:", authorTopic(authorId));
+      return null;
+    }
 
-    // Extract FCM tokens
-    const followerTokens = followersData.docs
-      .map((doc) => {
-        const data = doc.data();
-        console.log("Follower data:", data);
-        return data.fcmToken;
-      })
-      .filter((token) => token);
+    // Drop followers who turned these notifications off (or are in their
+    // quiet hours) before any of their devices are looked up
+    const notified = await filterByNotificationPrefs(followers, "new_photo", new Date());
+    console.log("Followers to notify:", notified.length, "of", followers.length);
+    if (notified.length === 0) return null;
 
-    console.log("Valid FCM tokens:", followerTokens);
+    // Look up the followers' devices in chunks ("in" takes at most 30 IDs)
+    const recipients = await loadFcmTokens(notified);
+    console.log("Valid FCM tokens:", recipients.length, "for", notified.length, "followers");
 
-    if (followerTokens.length === 0) {
+    if (recipients.length === 0) {
       console.log("No valid FCM tokens found for followers");
       return null;
     }
 
-    // Send notifications one by one instead of using multicast
-    for (const token of followerTokens) {
-      try {
-        const message = {
-          token: token,
-          // Remove the notification payload to prevent FCM auto-display
-          // notification: {
-          //     title: `${authorName} posted a new photo`,
-          //     body: photoDescription || 'Check out their latest upload!'
-          // },
-          data: {
-            photoId: event.params.photoId,
-            authorId: authorId,
-            authorName: authorName,
-            type: "new_photo",
-            title: `${authorName} posted a new photo`,
-            body: photoDescription || "Check out their latest upload!",
-            click_action: "OPEN_APP",
-            // Add these fields for deep linking
-            screen: "profile",
-            userId: authorId,
-          },
-          android: {
-            priority: "high",
-          },
-        };
-
-        const response = await admin.messaging().send(message);
-        console.log("Successfully sent message to token:", token, response);
-      } catch (error) {
-        console.error("Error sending message to token:", token, error);
-      }
-    }
+    const { sent, failed, stale } = await sendToRecipients(message, recipients);
+    console.log("Sent new photo notification:", { sent, failed, stale: stale.length });
+
+    await pruneStaleTokens(stale);
 
     return null;
   } catch (error) {
@@ -101,3 +101,575 @@ exports.onPhotoUpload = onDocumentCreated("photos/{photoId}", async (event) => {
     return null;
   }
 });
+
+// Authors with at least this many followers get a single message on their
+// topic instead of a multicast to every follower's devices. Set it in
+// functions/.env (or when deploying); clients subscribe in AuthorTopics.java.
+const TOPIC_FOLLOWER_THRESHOLD = defineInt("TOPIC_FOLLOWER_THRESHOLD", { default: 1000 });
+
+// Keep in sync with AuthorTopics.topic() on the client
+function authorTopic(authorId) {
+  return `author_${authorId}`;
+}
+
+// Firestore "in" filters take at most 30 values
+const FIRESTORE_IN_LIMIT = 30;
+// sendEachForMulticast takes at most 500 tokens
+const FCM_BATCH_SIZE = 500;
+// How many lookups / multicast batches are in flight at once
+const FIRESTORE_CONCURRENCY = 10;
+const FCM_CONCURRENCY = 4;
+
+// Error codes meaning the token will never work again and should be dropped
+const STALE_TOKEN_ERRORS = new Set([
+  "messaging/registration-token-not-registered",
+  "messaging/invalid-registration-token",
+]);
+
+function chunk(array, size) {
+  const chunks = [];
+  for (let i = 0; i < array.length; i += size) {
+    chunks.push(array.slice(i, i + size));
+  }
+  return chunks;
+}
+
+// Runs fn over all items with at most `limit` calls pending at a time
+async function mapWithConcurrency(items, limit, fn) {
+  const results = new Array(items.length);
+  let next = 0;
+  async function worker() {
+    while (next < items.length) {
+      const index = next++;
+      results[index] = await fn(items[index], index);
+    }
+  }
+  await Promise.all(Array.from({ length: Math.min(limit, items.length) }, worker));
+  return results;
+}
+
+// Per-type switches in users/{uid}.notificationPrefs, by message type
+const PREF_BY_TYPE = {
+  new_photo: "newPhoto",
+  like: "like",
+  follow: "follow",
+};
+
+// Minute of the day (0-1439) at `now` in the given IANA time zone
+function minuteOfDay(now, timeZone) {
+  let parts;
+  try {
+    parts = new Intl.DateTimeFormat("en-US", {
+      timeZone: timeZone || "UTC",
+      hour: "numeric",
+      minute: "numeric",
+      hourCycle: "h23",
+    }).formatToParts(now);
+  } catch (error) {
+    // Unknown time zone: fall back to UTC
+    return now.getUTCHours() * 60 + now.getUTCMinutes();
+  }
+  const value = (type) => Number(parts.find((part) => part.type === type).value);
+  return value("hour") * 60 + value("minute");
+}
+
+// Whether a user with these preferences (NotificationPrefs.java) wants a
+// push of `type` at `now`. Missing fields mean the default: notify.
+function wantsPush(prefs, type, now) {
+  if (!prefs) return true;
+  if (prefs.enabled === false) return false;
+  const field = PREF_BY_TYPE[type];
+  if (field && prefs[field] === false) return false;
+
+  const { quietStart, quietEnd } = prefs;
+  if (typeof quietStart !== "number" || typeof quietEnd !== "number" || quietStart === quietEnd) {
+    return true;
+  }
+  const minute = minuteOfDay(now, prefs.timeZone);
+  // Quiet hours may wrap past midnight, e.g. 22:00-07:00
+  const quiet =
+    quietStart < quietEnd
+      ? minute >= quietStart && minute < quietEnd
+      : minute >= quietStart || minute < quietEnd;
+  return !quiet;
+}
+
+// Returns the userIds that want a push of `type` at `now`. Only users whose
+// document has pushFiltered set (anything but the default preferences) are
+// read, and of those only the notificationPrefs field.
+async function filterByNotificationPrefs(userIds, type, now) {
+  const db = admin.firestore();
+  const snapshots = await mapWithConcurrency(
+    chunk(userIds, FIRESTORE_IN_LIMIT),
+    FIRESTORE_CONCURRENCY,
+    (chunkIds) =>
+      db
+        .collection("users")
+        .where(admin.firestore.FieldPath.documentId(), "in", chunkIds)
+        .where("pushFiltered", "==", true)
+        .select("notificationPrefs")
+        .get()
+  );
+  const muted = new Set();
+  for (const snapshot of snapshots) {
+    for (const doc of snapshot.docs) {
+      if (!wantsPush(doc.get("notificationPrefs"), type, now)) muted.add(doc.id);
+    }
+  }
+  return userIds.filter((id) => !muted.has(id));
+}
+
+// Returns [{ userId, token, ref, field }] for every registered device of the
+// users in userIds: users/{uid}/devices/{installationId}, written by
+// DeviceTokenRegistry.java. ref/field say where the token is stored, for pruning.
+async function loadFcmTokens(userIds) {
+  const db = admin.firestore();
+  const ids = [...new Set(userIds)];
+  const deviceSnapshots = await mapWithConcurrency(
+    chunk(ids, FIRESTORE_IN_LIMIT),
+    FIRESTORE_CONCURRENCY,
+    (chunkIds) =>
+      db
+        .collectionGroup("devices")
+        .where("userId", "in", chunkIds)
+        .select("userId", "token")
+        .get()
+  );
+
+  const recipients = [];
+  const seenTokens = new Set();
+  const usersWithDevices = new Set();
+  function add(userId, token, ref, field) {
+    if (!token || seenTokens.has(token)) return;
+    seenTokens.add(token);
+    recipients.push({ userId, token, ref, field });
+  }
+  for (const snapshot of deviceSnapshots) {
+    for (const doc of snapshot.docs) {
+      usersWithDevices.add(doc.get("userId"));
+      add(doc.get("userId"), doc.get("token"), doc.ref, "token");
+    }
+  }
+
+  // Users whose app has not registered a device yet still have the single
+  // fcmToken field on their user document. Only the fcmToken field is read.
+  const legacyIds = ids.filter((id) => !usersWithDevices.has(id));
+  const userSnapshots = await mapWithConcurrency(
+    chunk(legacyIds, FIRESTORE_IN_LIMIT),
+    FIRESTORE_CONCURRENCY,
+    (chunkIds) =>
+      db
+        .collection("users")
+        .where(admin.firestore.FieldPath.documentId(), "in", chunkIds)
+        .select("fcmToken")
+        .get()
+  );
+  for (const snapshot of userSnapshots) {
+    for (const doc of snapshot.docs) {
+      add(doc.id, doc.get("fcmToken"), doc.ref, "fcmToken");
+    }
+  }
+  return recipients;
+}
+
+// Sends `message` to every recipient in multicast batches of 500, a few
+// batches at a time. Returns counts and the recipients whose token is stale.
+async function sendToRecipients(message, recipients) {
+  const messaging = admin.messaging();
+  let sent = 0;
+  let failed = 0;
+  const stale = [];
+
+  await mapWithConcurrency(chunk(recipients, FCM_BATCH_SIZE), FCM_CONCURRENCY, async (batch) => {
+    try {
+      const response = await messaging.sendEachForMulticast({
+        ...message,
+        tokens: batch.map((recipient) => recipient.token),
+      });
+      sent += response.successCount;
+      failed += response.failureCount;
+      response.responses.forEach((result, i) => {
+        if (result.success) return;
+        if (result.error && STALE_TOKEN_ERRORS.has(result.error.code)) {
+          stale.push(batch[i]);
+        } else {
+          console.error("Error sending message to user:", batch[i].userId, result.error);
+        }
+      });
+    } catch (error) {
+      // The whole batch failed (e.g. quota); the other batches still go out
+      failed += batch.length;
+      console.error("Error sending multicast batch of", batch.length, "tokens:", error);
+    }
+  });
+
+  return { sent, failed, stale };
+}
+
+// Drops tokens FCM reported as unregistered: the device document, or the
+// fcmToken field of older clients. Only done if the token is still the one
+// stored, so a token refreshed in the meantime is kept.
+async function pruneStaleTokens(stale) {
+  if (stale.length === 0) return;
+  const db = admin.firestore();
+  await mapWithConcurrency(stale, FIRESTORE_CONCURRENCY, async ({ userId, token, ref, field }) => {
+    try {
+      await db.runTransaction(async (transaction) => {
+        const doc = await transaction.get(ref);
+        if (doc.get(field) !== token) return;
+        if (field === "fcmToken") {
+          transaction.update(ref, { fcmToken: admin.firestore.FieldValue.delete() });
+        } else {
+          transaction.delete(ref);
+        }
+      });
+    } catch (error) {
+      console.error("Error pruning token for user:", userId, error);
+    }
+  });
+  console.log("Pruned", stale.length, "stale FCM tokens");
+}
+
+// Devices whose app has not been opened for this long are dropped. The client
+// refreshes lastSeen at most once a day, and FCM itself treats tokens idle for
+// a month as stale.
+const STALE_DEVICE_MS = 30 * 24 * 60 * 60 * 1000;
+// Stale devices read per query; read on every run, so tests can lower it
+const PRUNE_PAGE_SIZE = defineInt("PRUNE_PAGE_SIZE", { default: 500 });
+
+// Deletes devices not seen since STALE_DEVICE_MS, so fan-out stops sending to
+// phones that were wiped, reset or abandoned without FCM reporting the token
+// as unregistered yet
+exports.pruneDeviceTokens = onSchedule("every 24 hours", async () => {
+  const db = admin.firestore();
+  const cutoff = admin.firestore.Timestamp.fromMillis(Date.now() - STALE_DEVICE_MS);
+  const pageSize = PRUNE_PAGE_SIZE.value();
+  // startAfter(doc) needs the orderBy field in the snapshot; ties on lastSeen
+  // are broken by the document path
+  const query = db
+    .collectionGroup("devices")
+    .where("lastSeen", "<", cutoff)
+    .orderBy("lastSeen")
+    .select("lastSeen")
+    .limit(pageSize);
+
+  const writer = db.bulkWriter();
+  let pruned = 0;
+  let skipped = 0;
+  let last = null;
+  for (;;) {
+    const page = await (last ? query.startAfter(last) : query).get();
+    for (const doc of page.docs) {
+      // Skipped if the device checked in after it was read
+      writer
+        .delete(doc.ref, { lastUpdateTime: doc.updateTime })
+        .then(() => pruned++)
+        .catch(() => skipped++);
+    }
+    if (page.size < pageSize) break;
+    last = page.docs[page.size - 1];
+  }
+  await writer.close();
+  console.log("Pruned", pruned, "devices not seen since", cutoff.toDate().toISOString(), { skipped });
+});
+
+// Fields copied from a photo into each feed item. The client reads feed items
+// with the same code as photo documents (PhotoPageLoader.toUserPhoto).
+const FEED_ITEM_FIELDS = [
+  "authorId",
+  "uploadedBy",
+  "description",
+  "storageUrl",
+  "thumbUrl",
+  "mediumUrl",
+  "timestamp",
+];
+
+function feedItem(photoId, photoData) {
+  const item = { photoId: photoId, likeCount: 0 };
+  for (const field of FEED_ITEM_FIELDS) {
+    if (photoData[field] !== undefined) item[field] = photoData[field];
+  }
+  return item;
+}
+
+// Writes feeds/{uid}/items/{photoId} for every recipient. BulkWriter batches
+// and parallelizes the writes and retries the ones that fail.
+async function writeFeedItems(photoId, photoData, recipientIds) {
+  const db = admin.firestore();
+  const writer = db.bulkWriter();
+  const item = feedItem(photoId, photoData);
+  for (const uid of new Set(recipientIds)) {
+    writer.set(db.collection("feeds").doc(uid).collection("items").doc(photoId), item);
+  }
+  try {
+    await writer.close();
+    console.log("Added photo", photoId, "to", recipientIds.length, "feeds");
+  } catch (error) {
+    console.error("Error writing feed items for photo:", photoId, error);
+  }
+}
+
+// All feed copies of one photo (collection group query on items.photoId)
+function feedItemsOf(photoId) {
+  return admin
+    .firestore()
+    .collectionGroup("items")
+    .where("photoId", "==", photoId);
+}
+
+// Removes a deleted photo from every feed it was fanned out to, and deletes
+// its likes and like shards
+exports.onPhotoDelete = onDocumentDeleted("photos/{photoId}", async (event) => {
+  const photoId = event.params.photoId;
+  try {
+    await admin.firestore().recursiveDelete(event.data.ref);
+  } catch (error) {
+    console.error("Error deleting likes of photo:", photoId, error);
+  }
+  try {
+    const items = await feedItemsOf(photoId).get();
+    const writer = admin.firestore().bulkWriter();
+    items.docs.forEach((doc) => writer.delete(doc.ref));
+    await writer.close();
+    console.log("Removed photo", photoId, "from", items.size, "feeds");
+  } catch (error) {
+    console.error("Error removing feed items for photo:", photoId, error);
+  }
+  return null;
+});
+
+// Keeps the description of feed copies in sync when the author edits it, and
+// likeCount in step with likedBy when an old-style like is removed
+exports.onPhotoUpdate = onDocumentUpdated("photos/{photoId}", async (event) => {
+  const before = event.data.before.data();
+  const after = event.data.after.data();
+  const photoId = event.params.photoId;
+
+  // The client only takes the name out of likedBy (PhotoLikes.java); a
+  // repeated removal leaves the array as it was and is not counted
+  const removedLikes = (before.likedBy || []).length - (after.likedBy || []).length;
+  if (removedLikes > 0) {
+    try {
+      await event.data.after.ref.update({
+        likeCount: admin.firestore.FieldValue.increment(-removedLikes),
+      });
+    } catch (error) {
+      console.error("Error updating like count for photo:", photoId, error);
+    }
+  }
+
+  if (before.description === after.description) return null;
+  try {
+    const items = await feedItemsOf(photoId).get();
+    const writer = admin.firestore().bulkWriter();
+    items.docs.forEach((doc) => writer.update(doc.ref, { description: after.description }));
+    await writer.close();
+  } catch (error) {
+    console.error("Error updating feed items for photo:", photoId, error);
+  }
+  return null;
+});
+
+// Keep in sync with PhotoLikes.SHARD_COUNT on the client
+const LIKE_SHARD_COUNT = 10;
+
+// Adds delta to a random like shard of the photo. Skipped when the photo is
+// gone, e.g. while onPhotoDelete removes its likes.
+async function countLike(photoId, delta) {
+  const photoRef = admin.firestore().collection("photos").doc(photoId);
+  const photo = await photoRef.get();
+  if (!photo.exists) return;
+  const shard = String(Math.floor(Math.random() * LIKE_SHARD_COUNT));
+  await photoRef.collection("likeShards").doc(shard).set(
+    { photoId, count: admin.firestore.FieldValue.increment(delta) },
+    { merge: true }
+  );
+}
+
+// Counting from the like document means a like that is sent twice (an outbox
+// retry, two devices) only counts once: the second write is an update
+exports.onLikeCreate = onDocumentCreated("photos/{photoId}/likes/{userId}", async (event) => {
+  try {
+    await countLike(event.params.photoId, 1);
+  } catch (error) {
+    console.error("Error counting like:", event.params, error);
+  }
+  return null;
+});
+
+exports.onLikeDelete = onDocumentDeleted("photos/{photoId}/likes/{userId}", async (event) => {
+  try {
+    await countLike(event.params.photoId, -1);
+  } catch (error) {
+    console.error("Error counting unlike:", event.params, error);
+  }
+  return null;
+});
+
+// Recipient of a notification. Newer clients send toUserId; older ones only
+// the username.
+async function notificationRecipient(notification) {
+  if (notification.toUserId) return notification.toUserId;
+  if (!notification.toUser) return null;
+  const users = await admin
+    .firestore()
+    .collection("users")
+    .where("username", "==", notification.toUser)
+    .select()
+    .limit(1)
+    .get();
+  return users.empty ? null : users.docs[0].id;
+}
+
+// Counts the unread notifications of a user into users/{uid}/meta/unread, so
+// the badge is one document read. Unread means newer than the lastReadAt
+// watermark the client writes there (NotificationWatermark.java). The count
+// is taken from the notifications themselves rather than kept as a running
+// total, so marking everything read cannot lose a notification that arrives
+// at the same moment.
+//
+// Users from before the watermark have none; their history should not all
+// count as unread. The watermark on the user document is used if there is
+// one, otherwise one is seeded once (see seedWatermark) and written to both
+// documents, like markReadUpTo does. arrivedAt is the timestamp of the
+// notification that caused the recount.
+async function recountUnread(userId, arrivedAt = Date.now()) {
+  const db = admin.firestore();
+  const userRef = db.collection("users").doc(userId);
+  const counterRef = userRef.collection("meta").doc("unread");
+  await db.runTransaction(async (transaction) => {
+    const [user, counter] = await transaction.getAll(userRef, counterRef);
+    const username = user.get("username");
+    if (!username) return;
+    const notifications = db.collection("notifications").where("toUser", "==", username);
+
+    let lastReadAt = counter.get("lastReadAt") ?? user.get("lastReadAt");
+    const seeded = lastReadAt === undefined;
+    if (seeded) {
+      lastReadAt = await seedWatermark(transaction, notifications, arrivedAt);
+      transaction.set(userRef, { lastReadAt }, { merge: true });
+    }
+
+    const unread = await transaction.get(notifications.where("timestamp", ">", lastReadAt).count());
+    const count = unread.data().count;
+    if (counter.get("lastReadAt") === undefined) {
+      transaction.set(counterRef, { count, lastReadAt }, { merge: true });
+    } else if (counter.get("count") !== count) {
+      transaction.set(counterRef, { count }, { merge: true });
+    }
+  });
+}
+
+// First watermark of a user: the newest notification they marked read the old
+// way (isRead), or else just before the notification being counted, so only
+// what arrives from now on is unread.
+async function seedWatermark(transaction, notifications, arrivedAt) {
+  const read = await transaction.get(
+    notifications.where("isRead", "==", true).orderBy("timestamp", "desc").limit(1)
+  );
+  return read.empty ? arrivedAt - 1 : read.docs[0].get("timestamp");
+}
+
+exports.onNotificationCreate = onDocumentCreated("notifications/{notificationId}", async (event) => {
+  const notification = event.data.data();
+  try {
+    const userId = await notificationRecipient(notification);
+    if (!userId) {
+      console.log("No recipient found for notification:", event.params.notificationId);
+      return null;
+    }
+    const arrivedAt = typeof notification.timestamp === "number" ? notification.timestamp : Date.now();
+    await recountUnread(userId, arrivedAt);
+  } catch (error) {
+    console.error("Error updating unread counter for notification:", event.params.notificationId, error);
+  }
+  return null;
+});
+
+// The client moved the watermark: count again from there. The count written
+// here re-triggers this function, which stops because lastReadAt is unchanged.
+exports.onUnreadWatermarkWrite = onDocumentWritten("users/{userId}/meta/unread", async (event) => {
+  const before = event.data.before;
+  const after = event.data.after;
+  if (!after.exists) return null;
+  if (before.exists && before.get("lastReadAt") === after.get("lastReadAt")) return null;
+  try {
+    await recountUnread(event.params.userId);
+  } catch (error) {
+    console.error("Error recounting unread notifications for user:", event.params.userId, error);
+  }
+  return null;
+});
+
+// Moves both follow counters of one follower edge. Counting from the edge
+// document means a follow that is sent twice (an outbox retry, two devices)
+// only counts once: the second write updates the edge instead of creating it.
+async function countFollow(params, delta) {
+  const db = admin.firestore();
+  const increment = admin.firestore.FieldValue.increment(delta);
+  const batch = db.batch();
+  batch.set(db.collection("users").doc(params.userId), { followersCount: increment }, { merge: true });
+  batch.set(db.collection("users").doc(params.followerId), { followingCount: increment }, { merge: true });
+  await batch.commit();
+}
+
+// users/{userId}/followers/{followerId} is written together with the
+// following edge (FollowGraph.java), so it stands for the whole follow
+exports.onFollowerCreate = onDocumentCreated("users/{userId}/followers/{followerId}", async (event) => {
+  // migrateFollowArrays sets the counters from a count() afterwards
+  if (event.data.get("migrated")) return null;
+  try {
+    await countFollow(event.params, 1);
+  } catch (error) {
+    console.error("Error counting follow:", event.params, error);
+  }
+  return null;
+});
+
+exports.onFollowerDelete = onDocumentDeleted("users/{userId}/followers/{followerId}", async (event) => {
+  try {
+    await countFollow(event.params, -1);
+  } catch (error) {
+    console.error("Error counting unfollow:", event.params, error);
+  }
+  return null;
+});
+
+// Maintains the user search fields (nameLower / namePrefixes) when a username
+// is set or changed. Documents that are never written again get them from
+// scripts/backfillUsers.js.
+// Also migrates follower arrays written after the backfill, by clients that
+// still use them.
+exports.onUserWrite = onDocumentWritten("users/{userId}", async (event) => {
+  const after = event.data.after;
+  if (!after.exists) return null;
+
+  const data = after.data();
+  if (hasFollowArrays(data)) {
+    try {
+      const db = admin.firestore();
+      const touched = await migrateFollowArrays(db, after.ref, data);
+      await Promise.all([...touched].map((id) => recountFollows(db, id)));
+      // The update re-triggers this function, which then handles the search fields
+      return null;
+    } catch (error) {
+      console.error("Error migrating follow graph for user:", event.params.userId, error);
+    }
+  }
+
+  // Nothing to do if the index is already current; this also stops the
+  // function from re-triggering itself after its own write
+  const update = searchFieldUpdate(data);
+  if (!update) {
+    return null;
+  }
+
+  try {
+    await after.ref.update(update);
+    console.log("Updated search index for user:", event.params.userId);
+  } catch (error) {
+    console.error("Error updating search index for user:", event.params.userId, error);
+  }
+  return null;
+});
@@ -0,0 +1,16 @@
+// One-off backfill of older user documents (see backfillUsers in users.js).
+// Run once against the project before shipping a client that relies on the
+// new fields, with credentials that can write Firestore:
+//
+//   GOOGLE_APPLICATION_CREDENTIALS=key.json GCLOUD_PROJECT=<project> npm run backfill:users
+//
+// Against the emulator, set FIRESTORE_EMULATOR_HOST instead of the credentials.
+const admin = require("firebase-admin");
+const { backfillUsers } = require("../users");
+
+admin.initializeApp();
+
+backfillUsers(admin.firestore()).catch((error) => {
+  console.error("Backfill failed:", error);
+  process.exitCode = 1;
+});
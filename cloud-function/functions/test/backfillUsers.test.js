@@ -0,0 +1,93 @@
+// Local harness for the one-off backfill of older user documents
+// (scripts/backfillUsers.js). Runs against the Firestore emulator:
+//
+//   npm test   (starts the emulator through `firebase emulators:exec`)
+//
+const assert = require("node:assert");
+const { test, before } = require("node:test");
+
+process.env.GCLOUD_PROJECT = process.env.GCLOUD_PROJECT || "demo-picturegram";
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  throw new Error("FIRESTORE_EMULATOR_HOST is not set; run through `npm test`");
+}
+
+const admin = require("firebase-admin");
+require("../index"); // initializes the admin SDK
+const { backfillUsers } = require("../users");
+
+const db = admin.firestore();
+// Small, so the users below span several pages
+const PAGE_SIZE = 2;
+
+function user(id) {
+  return db.doc(`users/${id}`);
+}
+
+async function edges(id, collection) {
+  const snapshot = await user(id).collection(collection).get();
+  return snapshot.docs.map((doc) => doc.id).sort();
+}
+
+async function counts(id) {
+  const snapshot = await user(id).get();
+  return { followers: snapshot.get("followersCount"), following: snapshot.get("followingCount") };
+}
+
+before(async () => {
+  await Promise.all([
+    // Zoë follows bob, and carol follows Zoë, but only Zoë's arrays say so.
+    // "backfill-gone" was deleted and is dropped.
+    user("backfill-old-1").set({
+      username: "Zoë Adams",
+      followers: ["backfill-old-3", "backfill-gone"],
+      following: ["backfill-old-2"],
+    }),
+    user("backfill-old-2").set({ username: "bob", followers: [] }),
+    user("backfill-old-3").set({ username: "Carol", nameLower: "stale", namePrefixes: ["s"] }),
+    user("backfill-new").set({ username: "dave", nameLower: "dave", namePrefixes: ["d", "da", "dav", "dave"] }),
+  ]);
+});
+
+test("users without search fields get them", async () => {
+  await backfillUsers(db, PAGE_SIZE);
+
+  const zoe = await user("backfill-old-1").get();
+  assert.strictEqual(zoe.get("nameLower"), "zoe adams");
+  assert.ok(zoe.get("namePrefixes").includes("ad"));
+  assert.strictEqual((await user("backfill-old-2").get()).get("nameLower"), "bob");
+});
+
+test("stale search fields are rewritten", async () => {
+  const carol = await user("backfill-old-3").get();
+  assert.strictEqual(carol.get("nameLower"), "carol");
+  assert.deepStrictEqual(carol.get("namePrefixes"), ["c", "ca", "car", "caro", "carol"]);
+});
+
+test("follower arrays become edges on both users", async () => {
+  for (const id of ["backfill-old-1", "backfill-old-2"]) {
+    const snapshot = await user(id).get();
+    assert.strictEqual(snapshot.get("followers"), undefined);
+    assert.strictEqual(snapshot.get("following"), undefined);
+  }
+  assert.deepStrictEqual(await edges("backfill-old-1", "followers"), ["backfill-old-3"]);
+  assert.deepStrictEqual(await edges("backfill-old-1", "following"), ["backfill-old-2"]);
+  assert.deepStrictEqual(await edges("backfill-old-2", "followers"), ["backfill-old-1"]);
+  assert.deepStrictEqual(await edges("backfill-old-3", "following"), ["backfill-old-1"]);
+});
+
+test("counters of both sides match the edges", async () => {
+  assert.deepStrictEqual(await counts("backfill-old-1"), { followers: 1, following: 1 });
+  assert.deepStrictEqual(await counts("backfill-old-2"), { followers: 1, following: 0 });
+  assert.deepStrictEqual(await counts("backfill-old-3"), { followers: 0, following: 1 });
+  assert.strictEqual((await user("backfill-gone").get()).exists, false);
+});
+
+test("a second run leaves current documents alone", async () => {
+  const written = (await user("backfill-new").get()).updateTime;
+  const { failed } = await backfillUsers(db, PAGE_SIZE);
+
+  assert.strictEqual(failed, 0);
+  assert.deepStrictEqual(await counts("backfill-old-1"), { followers: 1, following: 1 });
+  assert.ok((await user("backfill-new").get()).updateTime.isEqual(written));
+  assert.ok((await user("backfill-old-1").get()).get("nameLower"));
+});
@@ -0,0 +1,101 @@
+// Delivery benchmark for onPhotoUpload, against the Firestore emulator:
+//
+//   npm run bench:fanout
+//
+// Times one run of the function per author size (10, 1k and 50k followers by
+// default) with the token multicast and with a single topic message, by moving
+// TOPIC_FOLLOWER_THRESHOLD. Messaging is stubbed with a fixed latency per FCM
+// call (SEND_LATENCY_MS), so the numbers show how the function's own work
+// grows: the device lookups and one call per 500 tokens on the token path,
+// against a single call on the topic path. Both still read the follower list
+// and write the feed items.
+const assert = require("node:assert");
+
+process.env.GCLOUD_PROJECT = process.env.GCLOUD_PROJECT || "demo-picturegram";
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  throw new Error("FIRESTORE_EMULATOR_HOST is not set; run through `npm run bench:fanout`");
+}
+
+const fft = require("firebase-functions-test")({ projectId: process.env.GCLOUD_PROJECT });
+const admin = require("firebase-admin");
+
+const FOLLOWER_COUNTS = (process.env.FOLLOWER_COUNTS || "10,1000,50000").split(",").map(Number);
+const SEND_LATENCY_MS = Number(process.env.SEND_LATENCY_MS || 50);
+
+const sleep = (ms) => new Promise((resolve) => setTimeout(resolve, ms));
+
+// Counts FCM calls and the tokens they carried
+let calls = 0;
+let tokens = 0;
+const stubMessaging = {
+  async sendEachForMulticast(message) {
+    calls++;
+    tokens += message.tokens.length;
+    await sleep(SEND_LATENCY_MS);
+    const responses = message.tokens.map((token) => ({ success: true, messageId: `msg-${token}` }));
+    return { responses, successCount: responses.length, failureCount: 0 };
+  },
+  async send(message) {
+    calls++;
+    await sleep(SEND_LATENCY_MS);
+    return `msg-${message.topic}`;
+  },
+};
+
+const functions = require("../index");
+Object.defineProperty(admin, "messaging", { value: () => stubMessaging, configurable: true });
+
+const db = admin.firestore();
+
+async function seedAuthor(authorId, followerCount) {
+  const writer = db.bulkWriter();
+  const lastSeen = admin.firestore.Timestamp.now();
+  for (let i = 0; i < followerCount; i++) {
+    const followerId = `${authorId}-follower-${i}`;
+    writer.set(db.doc(`users/${authorId}/followers/${followerId}`), { followedAt: new Date() });
+    writer.set(db.doc(`users/${followerId}/devices/device-0`), {
+      token: `token-${followerId}`,
+      userId: followerId,
+      lastSeen,
+    });
+  }
+  writer.set(db.collection("users").doc(authorId), { username: authorId, followersCount: followerCount });
+  await writer.close();
+}
+
+async function run(authorId, followerCount, mode) {
+  // The threshold is read on every run, so it picks the path
+  process.env.TOPIC_FOLLOWER_THRESHOLD = mode === "topic" ? "1" : String(followerCount + 1);
+  const photoId = `${authorId}-${mode}`;
+  const photo = fft.firestore.makeDocumentSnapshot(
+    { authorId, uploadedBy: authorId, description: "bench", timestamp: Date.now() },
+    `photos/${photoId}`
+  );
+  calls = 0;
+  tokens = 0;
+
+  const started = process.hrtime.bigint();
+  await fft.wrap(functions.onPhotoUpload)({ data: photo, params: { photoId } });
+  const ms = Number(process.hrtime.bigint() - started) / 1e6;
+
+  assert.strictEqual(tokens, mode === "topic" ? 0 : followerCount);
+  console.log(
+    `${String(followerCount).padStart(6)} followers  ${mode.padEnd(6)} ` +
+      `${ms.toFixed(0).padStart(7)} ms  FCM calls ${String(calls).padStart(4)}  ` +
+      `tokens ${String(tokens).padStart(6)}`
+  );
+}
+
+(async () => {
+  console.log(`FCM latency ${SEND_LATENCY_MS} ms per call`);
+  for (const followerCount of FOLLOWER_COUNTS) {
+    const authorId = `bench-${followerCount}-${Date.now()}`;
+    await seedAuthor(authorId, followerCount);
+    await run(authorId, followerCount, "tokens");
+    await run(authorId, followerCount, "topic");
+  }
+  fft.cleanup();
+})().catch((error) => {
+  console.error(error);
+  process.exit(1);
+});
@@ -0,0 +1,60 @@
+// Local harness for the follow counters kept by onFollowerCreate and
+// onFollowerDelete. Runs against the Firestore emulator:
+//
+//   npm test   (starts the emulator through `firebase emulators:exec`)
+//
+const assert = require("node:assert");
+const { test, before, after } = require("node:test");
+
+process.env.GCLOUD_PROJECT = process.env.GCLOUD_PROJECT || "demo-picturegram";
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  throw new Error("FIRESTORE_EMULATOR_HOST is not set; run through `npm test`");
+}
+
+const fft = require("firebase-functions-test")({ projectId: process.env.GCLOUD_PROJECT });
+const admin = require("firebase-admin");
+const functions = require("../index");
+
+const db = admin.firestore();
+const FOLLOWED_ID = "counted-author";
+const FOLLOWER_ID = "counted-follower";
+
+function edge(data = { followedAt: new Date() }) {
+  return fft.firestore.makeDocumentSnapshot(data, `users/${FOLLOWED_ID}/followers/${FOLLOWER_ID}`);
+}
+
+const params = { userId: FOLLOWED_ID, followerId: FOLLOWER_ID };
+
+async function counts() {
+  const [followed, follower] = await Promise.all([
+    db.doc(`users/${FOLLOWED_ID}`).get(),
+    db.doc(`users/${FOLLOWER_ID}`).get(),
+  ]);
+  return { followers: followed.get("followersCount"), following: follower.get("followingCount") };
+}
+
+before(async () => {
+  await Promise.all([
+    db.doc(`users/${FOLLOWED_ID}`).set({ username: FOLLOWED_ID, followersCount: 0 }),
+    db.doc(`users/${FOLLOWER_ID}`).set({ username: FOLLOWER_ID, followingCount: 0 }),
+  ]);
+});
+
+after(async () => {
+  fft.cleanup();
+});
+
+test("a new follower edge counts on both users", async () => {
+  await fft.wrap(functions.onFollowerCreate)({ data: edge(), params });
+  assert.deepStrictEqual(await counts(), { followers: 1, following: 1 });
+});
+
+test("edges from the array migration are not counted twice", async () => {
+  await fft.wrap(functions.onFollowerCreate)({ data: edge({ followedAt: new Date(), migrated: true }), params });
+  assert.deepStrictEqual(await counts(), { followers: 1, following: 1 });
+});
+
+test("a deleted follower edge is taken off both users", async () => {
+  await fft.wrap(functions.onFollowerDelete)({ data: edge(), params });
+  assert.deepStrictEqual(await counts(), { followers: 0, following: 0 });
+});
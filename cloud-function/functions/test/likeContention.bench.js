@@ -0,0 +1,84 @@
+// Contention benchmark for likes on one hot photo, against the Firestore emulator:
+//
+//   npm run bench:likes
+//
+// Compares the old layout (likedBy arrayUnion + likeCount increment on the
+// photo document, one plain update per like, as the client used to write it)
+// with the sharded one (likes/{uid}, plus the random likeShards/{n} increment
+// onLikeCreate adds for it, see PhotoLikes.java). The emulator does not
+// enforce the ~1 write/s/document production limit, so the number to look at
+// is how many writes land on the busiest document.
+const admin = require("firebase-admin");
+
+process.env.GCLOUD_PROJECT = process.env.GCLOUD_PROJECT || "demo-picturegram";
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  throw new Error("FIRESTORE_EMULATOR_HOST is not set; run through `npm run bench:likes`");
+}
+
+admin.initializeApp({ projectId: process.env.GCLOUD_PROJECT });
+const db = admin.firestore();
+const { FieldValue } = admin.firestore;
+
+const LIKERS = Number(process.env.LIKERS || 300);
+const SHARD_COUNT = 10; // keep in sync with PhotoLikes.SHARD_COUNT
+
+async function singleDocument(photoId) {
+  const photoRef = db.collection("photos").doc(photoId);
+  await photoRef.set({ likeCount: 0, likedBy: [] });
+
+  await Promise.all(
+    Array.from({ length: LIKERS }, (_, i) =>
+      photoRef.update({
+        likedBy: FieldValue.arrayUnion(`user-${i}`),
+        likeCount: FieldValue.increment(1),
+      })
+    )
+  );
+
+  const photo = await photoRef.get();
+  return { hottestDocWrites: LIKERS, total: photo.get("likeCount") };
+}
+
+async function sharded(photoId) {
+  const photoRef = db.collection("photos").doc(photoId);
+  await photoRef.set({ likeCount: 0 });
+  const shardWrites = new Array(SHARD_COUNT).fill(0);
+
+  await Promise.all(
+    Array.from({ length: LIKERS }, async (_, i) => {
+      const shard = Math.floor(Math.random() * SHARD_COUNT);
+      shardWrites[shard]++;
+      // The client's write, then the function's
+      await photoRef.collection("likes").doc(`user-${i}`).set({ photoId, userId: `user-${i}` });
+      await photoRef
+        .collection("likeShards")
+        .doc(String(shard))
+        .set({ photoId, count: FieldValue.increment(1) }, { merge: true });
+    })
+  );
+
+  const shards = await photoRef.collection("likeShards").get();
+  const total = shards.docs.reduce((sum, doc) => sum + doc.get("count"), 0);
+  return { hottestDocWrites: Math.max(...shardWrites), total };
+}
+
+async function run(name, fn) {
+  const started = process.hrtime.bigint();
+  const result = await fn(`bench-${name}-${Date.now()}`);
+  const ms = Number(process.hrtime.bigint() - started) / 1e6;
+  console.log(
+    `${name.padEnd(16)} ${ms.toFixed(0).padStart(6)} ms  ` +
+      `likes/s ${((LIKERS * 1000) / ms).toFixed(0).padStart(5)}  ` +
+      `writes to hottest doc ${String(result.hottestDocWrites).padStart(4)}  ` +
+      `total ${result.total}`
+  );
+}
+
+(async () => {
+  console.log(`${LIKERS} concurrent likes on one photo`);
+  await run("single-document", singleDocument);
+  await run("sharded", sharded);
+})().catch((error) => {
+  console.error(error);
+  process.exit(1);
+});
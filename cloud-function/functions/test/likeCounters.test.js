@@ -0,0 +1,71 @@
+// Local harness for the like counters kept by onLikeCreate, onLikeDelete and
+// onPhotoUpdate. Runs against the Firestore emulator:
+//
+//   npm test   (starts the emulator through `firebase emulators:exec`)
+//
+const assert = require("node:assert");
+const { test, before, after } = require("node:test");
+
+process.env.GCLOUD_PROJECT = process.env.GCLOUD_PROJECT || "demo-picturegram";
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  throw new Error("FIRESTORE_EMULATOR_HOST is not set; run through `npm test`");
+}
+
+const fft = require("firebase-functions-test")({ projectId: process.env.GCLOUD_PROJECT });
+const admin = require("firebase-admin");
+const functions = require("../index");
+
+const db = admin.firestore();
+const PHOTO_ID = "counted-photo";
+const USER_ID = "counted-liker";
+
+function like(photoId = PHOTO_ID) {
+  return fft.firestore.makeDocumentSnapshot(
+    { photoId, userId: USER_ID, username: USER_ID },
+    `photos/${photoId}/likes/${USER_ID}`
+  );
+}
+
+async function shardTotal(photoId = PHOTO_ID) {
+  const shards = await db.collection(`photos/${photoId}/likeShards`).get();
+  return shards.docs.reduce((sum, doc) => sum + doc.get("count"), 0);
+}
+
+before(async () => {
+  await db.doc(`photos/${PHOTO_ID}`).set({ authorId: "author", likeCount: 2, likedBy: ["old-1", "old-2"] });
+});
+
+after(async () => {
+  fft.cleanup();
+});
+
+test("a new like document adds one to the shards", async () => {
+  await fft.wrap(functions.onLikeCreate)({ data: like(), params: { photoId: PHOTO_ID, userId: USER_ID } });
+  assert.strictEqual(await shardTotal(), 1);
+});
+
+test("a deleted like document takes one off the shards", async () => {
+  await fft.wrap(functions.onLikeDelete)({ data: like(), params: { photoId: PHOTO_ID, userId: USER_ID } });
+  assert.strictEqual(await shardTotal(), 0);
+});
+
+test("likes of a deleted photo leave no shards behind", async () => {
+  await fft.wrap(functions.onLikeDelete)({
+    data: like("deleted-photo"),
+    params: { photoId: "deleted-photo", userId: USER_ID },
+  });
+  assert.strictEqual((await db.collection("photos/deleted-photo/likeShards").get()).size, 0);
+});
+
+test("an old-style like leaving likedBy lowers likeCount once", async () => {
+  const path = `photos/${PHOTO_ID}`;
+  const beforeSnap = fft.firestore.makeDocumentSnapshot({ likeCount: 2, likedBy: ["old-1", "old-2"] }, path);
+  const afterSnap = fft.firestore.makeDocumentSnapshot({ likeCount: 2, likedBy: ["old-2"] }, path);
+  const onPhotoUpdate = fft.wrap(functions.onPhotoUpdate);
+
+  await onPhotoUpdate({ data: fft.makeChange(beforeSnap, afterSnap), params: { photoId: PHOTO_ID } });
+  // The same removal sent again does not change the array
+  await onPhotoUpdate({ data: fft.makeChange(afterSnap, afterSnap), params: { photoId: PHOTO_ID } });
+
+  assert.strictEqual((await db.doc(path).get()).get("likeCount"), 1);
+});
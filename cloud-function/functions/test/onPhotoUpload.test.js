@@ -0,0 +1,186 @@
+// Local harness for the onPhotoUpload fan-out. Runs against the Firestore
+// emulator with a stubbed messaging client, so nothing is sent for real:
+//
+//   npm test   (starts the emulator through `firebase emulators:exec`)
+//
+const assert = require("node:assert");
+const { test, before, after } = require("node:test");
+
+process.env.GCLOUD_PROJECT = process.env.GCLOUD_PROJECT || "demo-picturegram";
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  throw new Error("FIRESTORE_EMULATOR_HOST is not set; run through `npm test`");
+}
+
+const fft = require("firebase-functions-test")({ projectId: process.env.GCLOUD_PROJECT });
+const admin = require("firebase-admin");
+
+// Records every multicast and topic message, and fails tokens that start with "stale-"
+const sentBatches = [];
+const topicMessages = [];
+const stubMessaging = {
+  async send(message) {
+    topicMessages.push(message);
+    return `msg-${message.topic}`;
+  },
+  async sendEachForMulticast(message) {
+    sentBatches.push(message);
+    const responses = message.tokens.map((token) =>
+      token.startsWith("stale-")
+        ? { success: false, error: { code: "messaging/registration-token-not-registered" } }
+        : { success: true, messageId: `msg-${token}` }
+    );
+    const successCount = responses.filter((r) => r.success).length;
+    return { responses, successCount, failureCount: responses.length - successCount };
+  },
+};
+
+const functions = require("../index");
+Object.defineProperty(admin, "messaging", { value: () => stubMessaging, configurable: true });
+
+const db = admin.firestore();
+const AUTHOR_ID = "author";
+const FOLLOWER_COUNT = 1234;
+const STALE_EVERY = 100; // every 100th follower has an unregistered token
+const NO_TOKEN_EVERY = 7; // every 7th has none at all
+const LEGACY_EVERY = 11; // every 11th only has the old users.fcmToken field
+const TWO_DEVICES_EVERY = 5; // every 5th is signed in on two phones
+const MUTED_EVERY = 13; // every 13th turned notifications off
+const NO_NEW_PHOTOS_EVERY = 17; // every 17th turned off new photo notifications only
+const QUIET_EVERY = 19; // every 19th is in their quiet hours right now
+const NO_LIKES_EVERY = 23; // every 23rd turned off likes only, so still gets new photos
+
+// Read by the function on every run: keep the author below it for the token
+// tests, the topic test lowers it
+process.env.TOPIC_FOLLOWER_THRESHOLD = String(FOLLOWER_COUNT + 1);
+
+function followerId(i) {
+  return `follower-${i}`;
+}
+
+// Tokens of follower i, as registered in users/{uid}/devices or users.fcmToken
+function tokensOf(i) {
+  if (i % STALE_EVERY === 0) return { devices: [`stale-${i}`] };
+  if (i % NO_TOKEN_EVERY === 0) return { devices: [] };
+  if (i % LEGACY_EVERY === 0) return { devices: [], legacy: `legacy-${i}` };
+  if (i % TWO_DEVICES_EVERY === 0) return { devices: [`token-${i}`, `token-${i}-b`] };
+  return { devices: [`token-${i}`] };
+}
+
+// Quiet hours around the current time, in a time zone ahead of UTC
+function quietNow() {
+  const now = new Date();
+  const minute = (now.getUTCHours() * 60 + now.getUTCMinutes() + 9 * 60) % 1440;
+  return { quietStart: (minute + 1380) % 1440, quietEnd: (minute + 60) % 1440, timeZone: "Asia/Tokyo" };
+}
+
+// users/{uid}.notificationPrefs of follower i, as written by NotificationPrefs.java
+function prefsOf(i) {
+  if (i % MUTED_EVERY === 0) return { enabled: false };
+  if (i % NO_NEW_PHOTOS_EVERY === 0) return { enabled: true, newPhoto: false };
+  if (i % QUIET_EVERY === 0) return { enabled: true, ...quietNow() };
+  if (i % NO_LIKES_EVERY === 0) return { enabled: true, like: false };
+  return null;
+}
+
+function wantsNewPhotos(i) {
+  return i % MUTED_EVERY !== 0 && i % NO_NEW_PHOTOS_EVERY !== 0 && i % QUIET_EVERY !== 0;
+}
+
+before(async () => {
+  const writer = db.bulkWriter();
+  const lastSeen = admin.firestore.Timestamp.now();
+  for (let i = 0; i < FOLLOWER_COUNT; i++) {
+    const data = { username: `user ${i}` };
+    const { devices, legacy } = tokensOf(i);
+    if (legacy) data.fcmToken = legacy;
+    const prefs = prefsOf(i);
+    if (prefs) {
+      data.notificationPrefs = prefs;
+      data.pushFiltered = true;
+    }
+    writer.set(db.collection("users").doc(followerId(i)), data);
+    devices.forEach((token, d) => {
+      writer.set(db.doc(`users/${followerId(i)}/devices/device-${d}`), {
+        token,
+        userId: followerId(i),
+        lastSeen,
+      });
+    });
+    writer.set(db.doc(`users/${AUTHOR_ID}/followers/${followerId(i)}`), { followedAt: new Date() });
+  }
+  writer.set(db.collection("users").doc(AUTHOR_ID), {
+    username: "author",
+    followersCount: FOLLOWER_COUNT,
+  });
+  await writer.close();
+});
+
+after(async () => {
+  fft.cleanup();
+});
+
+test("notifies every registered device of every follower who wants it, in batches of at most 500", async () => {
+  const photo = fft.firestore.makeDocumentSnapshot(
+    { authorId: AUTHOR_ID, uploadedBy: "author", description: "hi", timestamp: Date.now() },
+    "photos/photo-1"
+  );
+  await fft.wrap(functions.onPhotoUpload)({ data: photo, params: { photoId: "photo-1" } });
+
+  const expected = [];
+  for (let i = 0; i < FOLLOWER_COUNT; i++) {
+    if (!wantsNewPhotos(i)) continue;
+    const { devices, legacy } = tokensOf(i);
+    expected.push(...devices);
+    if (legacy) expected.push(legacy);
+  }
+  const sentTokens = sentBatches.flatMap((batch) => batch.tokens);
+
+  assert.ok(sentBatches.every((batch) => batch.tokens.length <= 500));
+  assert.strictEqual(sentTokens.length, expected.length);
+  assert.deepStrictEqual(new Set(sentTokens), new Set(expected));
+  assert.strictEqual(sentBatches[0].data.type, "new_photo");
+});
+
+test("skips followers who muted new photos or are in their quiet hours", async () => {
+  const sentTokens = new Set(sentBatches.flatMap((batch) => batch.tokens));
+  for (const i of [MUTED_EVERY, NO_NEW_PHOTOS_EVERY, QUIET_EVERY]) {
+    assert.strictEqual(sentTokens.has(`token-${i}`), false, `follower ${i}`);
+  }
+  assert.ok(sentTokens.has(`token-${NO_LIKES_EVERY}`));
+});
+
+test("prunes devices reported as unregistered and keeps the rest", async () => {
+  const stale = await db.doc(`users/${followerId(STALE_EVERY)}/devices/device-0`).get();
+  assert.strictEqual(stale.exists, false);
+
+  const valid = await db.doc(`users/${followerId(1)}/devices/device-0`).get();
+  assert.strictEqual(valid.get("token"), "token-1");
+
+  const legacy = await db.collection("users").doc(followerId(LEGACY_EVERY)).get();
+  assert.strictEqual(legacy.get("fcmToken"), `legacy-${LEGACY_EVERY}`);
+});
+
+test("fans the photo out to every follower's feed", async () => {
+  const item = await db.doc(`feeds/${followerId(FOLLOWER_COUNT - 1)}/items/photo-1`).get();
+  assert.ok(item.exists);
+  assert.strictEqual(item.get("photoId"), "photo-1");
+});
+
+test("sends one topic message instead of tokens once the author has enough followers", async () => {
+  process.env.TOPIC_FOLLOWER_THRESHOLD = String(FOLLOWER_COUNT);
+  const batchesBefore = sentBatches.length;
+  const photo = fft.firestore.makeDocumentSnapshot(
+    { authorId: AUTHOR_ID, uploadedBy: "author", description: "big", timestamp: Date.now() },
+    "photos/photo-2"
+  );
+  await fft.wrap(functions.onPhotoUpload)({ data: photo, params: { photoId: "photo-2" } });
+
+  assert.strictEqual(sentBatches.length, batchesBefore);
+  assert.strictEqual(topicMessages.length, 1);
+  assert.strictEqual(topicMessages[0].topic, `author_${AUTHOR_ID}`);
+  assert.strictEqual(topicMessages[0].data.photoId, "photo-2");
+
+  // The feed fan-out does not depend on the delivery mode
+  const item = await db.doc(`feeds/${followerId(0)}/items/photo-2`).get();
+  assert.ok(item.exists);
+});
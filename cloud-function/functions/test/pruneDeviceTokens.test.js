@@ -0,0 +1,68 @@
+// Local harness for the scheduled device pruning. Runs against the Firestore
+// emulator:
+//
+//   npm test   (starts the emulator through `firebase emulators:exec`)
+//
+const assert = require("node:assert");
+const { test, before, after } = require("node:test");
+
+process.env.GCLOUD_PROJECT = process.env.GCLOUD_PROJECT || "demo-picturegram";
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  throw new Error("FIRESTORE_EMULATOR_HOST is not set; run through `npm test`");
+}
+
+const fft = require("firebase-functions-test")({ projectId: process.env.GCLOUD_PROJECT });
+const admin = require("firebase-admin");
+const functions = require("../index");
+
+const db = admin.firestore();
+const DAY_MS = 24 * 60 * 60 * 1000;
+const USER_ID = "prune-user";
+// Read by the function on every run; small, so a few devices span several pages
+const PAGE_SIZE = 2;
+process.env.PRUNE_PAGE_SIZE = String(PAGE_SIZE);
+
+function device(id, userId = USER_ID) {
+  return db.doc(`users/${userId}/devices/${id}`);
+}
+
+function seenDaysAgo(days) {
+  return admin.firestore.Timestamp.fromMillis(Date.now() - days * DAY_MS);
+}
+
+before(async () => {
+  await Promise.all([
+    device("abandoned").set({ token: "old", userId: USER_ID, lastSeen: seenDaysAgo(45) }),
+    device("weekly").set({ token: "recent", userId: USER_ID, lastSeen: seenDaysAgo(6) }),
+    device("today").set({ token: "new", userId: USER_ID, lastSeen: seenDaysAgo(0) }),
+  ]);
+});
+
+after(async () => {
+  fft.cleanup();
+});
+
+test("deletes devices not seen for a month and keeps the others", async () => {
+  await functions.pruneDeviceTokens.run({ scheduleTime: new Date().toISOString() });
+
+  assert.strictEqual((await device("abandoned").get()).exists, false);
+  assert.strictEqual((await device("weekly").get()).exists, true);
+  assert.strictEqual((await device("today").get()).exists, true);
+});
+
+test("pages through more stale devices than fit in one page", async () => {
+  const userId = "prune-many";
+  const now = Date.now();
+  const stale = [];
+  for (let i = 0; i < PAGE_SIZE * 3 + 1; i++) {
+    // Pairs share a lastSeen, so a page boundary falls inside a tie
+    const lastSeen = admin.firestore.Timestamp.fromMillis(now - (40 + Math.floor(i / 2)) * DAY_MS);
+    stale.push(device(`stale-${i}`, userId).set({ token: `t${i}`, userId, lastSeen }));
+  }
+  await Promise.all([...stale, device("fresh", userId).set({ token: "fresh", userId, lastSeen: seenDaysAgo(1) })]);
+
+  await functions.pruneDeviceTokens.run({ scheduleTime: new Date().toISOString() });
+
+  const left = await db.collection(`users/${userId}/devices`).get();
+  assert.deepStrictEqual(left.docs.map((doc) => doc.id), ["fresh"]);
+});
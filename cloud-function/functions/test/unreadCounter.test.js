@@ -0,0 +1,113 @@
+// Local harness for the unread counter kept by onNotificationCreate and
+// onUnreadWatermarkWrite. Runs against the Firestore emulator:
+//
+//   npm test   (starts the emulator through `firebase emulators:exec`)
+//
+const assert = require("node:assert");
+const { test, before, after } = require("node:test");
+
+process.env.GCLOUD_PROJECT = process.env.GCLOUD_PROJECT || "demo-picturegram";
+if (!process.env.FIRESTORE_EMULATOR_HOST) {
+  throw new Error("FIRESTORE_EMULATOR_HOST is not set; run through `npm test`");
+}
+
+const fft = require("firebase-functions-test")({ projectId: process.env.GCLOUD_PROJECT });
+const admin = require("firebase-admin");
+const functions = require("../index");
+
+const db = admin.firestore();
+const USER_ID = "unread-user";
+const USERNAME = "unread-name";
+const counterRef = db.doc(`users/${USER_ID}/meta/unread`);
+
+async function notify(timestamp, userId = USER_ID, username = USERNAME) {
+  const notification = { type: "like", fromUser: "someone", toUser: username, toUserId: userId, timestamp };
+  const ref = await db.collection("notifications").add(notification);
+  await fft.wrap(functions.onNotificationCreate)({
+    data: fft.firestore.makeDocumentSnapshot(notification, ref.path),
+    params: { notificationId: ref.id },
+  });
+}
+
+// What NotificationWatermark.markReadUpTo writes, followed by the trigger it causes
+async function markReadUpTo(timestamp) {
+  const beforeSnap = await counterRef.get();
+  await counterRef.set({ lastReadAt: timestamp }, { merge: true });
+  const afterSnap = await counterRef.get();
+  await fft.wrap(functions.onUnreadWatermarkWrite)({
+    data: fft.makeChange(beforeSnap, afterSnap),
+    params: { userId: USER_ID },
+  });
+}
+
+async function count() {
+  return (await counterRef.get()).get("count");
+}
+
+// A user from before the watermark, with notifications stored the old way
+async function oldUser(userId, fields, notifications) {
+  await db.doc(`users/${userId}`).set({ username: userId, ...fields });
+  await Promise.all(notifications.map(({ timestamp, isRead }) =>
+    db.collection("notifications").add({ type: "like", fromUser: "someone", toUser: userId, timestamp, isRead })
+  ));
+}
+
+async function counter(userId) {
+  return (await db.doc(`users/${userId}/meta/unread`).get()).data();
+}
+
+before(async () => {
+  await db.doc(`users/${USER_ID}`).set({ username: USERNAME });
+});
+
+after(async () => {
+  fft.cleanup();
+});
+
+test("new notifications are counted", async () => {
+  await notify(1000);
+  await notify(2000);
+  assert.strictEqual(await count(), 2);
+});
+
+test("marking read keeps a notification newer than the watermark", async () => {
+  // Arrived while the list showing 1000 and 2000 was open
+  await notify(3000);
+  await markReadUpTo(2000);
+  assert.strictEqual(await count(), 1);
+});
+
+test("notifications at or before the watermark are not counted", async () => {
+  await notify(1500);
+  assert.strictEqual(await count(), 1);
+
+  await markReadUpTo(3000);
+  assert.strictEqual(await count(), 0);
+});
+
+test("an older user counts from the watermark on their user document", async () => {
+  await oldUser("unread-user-doc", { lastReadAt: 250 }, [{ timestamp: 200 }, { timestamp: 300 }]);
+  await notify(400, "unread-user-doc", "unread-user-doc");
+  assert.deepStrictEqual(await counter("unread-user-doc"), { count: 2, lastReadAt: 250 });
+});
+
+test("an older user without a watermark counts from their newest read notification", async () => {
+  await oldUser("unread-seeded", {}, [
+    { timestamp: 100, isRead: true },
+    { timestamp: 200, isRead: false },
+  ]);
+  await notify(300, "unread-seeded", "unread-seeded");
+
+  assert.deepStrictEqual(await counter("unread-seeded"), { count: 2, lastReadAt: 100 });
+  assert.strictEqual((await db.doc("users/unread-seeded").get()).get("lastReadAt"), 100);
+});
+
+test("an older user who never read anything counts from their first new notification", async () => {
+  await oldUser("unread-never-read", {}, [{ timestamp: 100, isRead: false }, { timestamp: 200 }]);
+  await notify(500, "unread-never-read", "unread-never-read");
+  assert.strictEqual((await counter("unread-never-read")).count, 1);
+
+  // Seeded once: later notifications count on from there
+  await notify(600, "unread-never-read", "unread-never-read");
+  assert.deepStrictEqual(await counter("unread-never-read"), { count: 2, lastReadAt: 499 });
+});
@@ -0,0 +1,175 @@
+// User documents: the search fields the client queries (UserSearchIndex.java),
+// the move of the old follower arrays into edge documents, and the one-off
+// backfill of older documents. Shared by index.js and scripts/backfillUsers.js.
+const admin = require("firebase-admin");
+
+// Keep in sync with UserSearchIndex.java on the client
+const MAX_PREFIX_LENGTH = 15;
+
+function normalizeName(name) {
+  return (name || "")
+    .normalize("NFD")
+    .replace(/\p{M}/gu, "")
+    .toLowerCase()
+    .trim()
+    .replace(/\s+/g, " ");
+}
+
+function prefixTokens(name) {
+  const normalized = normalizeName(name);
+  if (!normalized) return [];
+  const tokens = new Set();
+  for (const word of normalized.split(" ")) {
+    const max = Math.min(word.length, MAX_PREFIX_LENGTH);
+    for (let i = 1; i <= max; i++) {
+      tokens.add(word.substring(0, i));
+    }
+  }
+  return [...tokens];
+}
+
+// Search fields of a user document, or null if they are already current
+function searchFieldUpdate(data) {
+  const nameLower = normalizeName(data.username);
+  if (data.nameLower === nameLower && Array.isArray(data.namePrefixes)) return null;
+  return { nameLower, namePrefixes: prefixTokens(data.username) };
+}
+
+function hasFollowArrays(data) {
+  return Array.isArray(data.followers) || Array.isArray(data.following);
+}
+
+// Moves the old followers/following array fields of a user document into edge
+// documents on both users of every follow, and deletes the arrays. Entries of
+// users that no longer exist are dropped. The edges are marked migrated, which
+// onFollowerCreate does not count, so the caller must recount the users
+// returned (see recountFollows).
+async function migrateFollowArrays(db, userRef, data) {
+  const users = db.collection("users");
+  const ids = [...new Set([...(data.followers || []), ...(data.following || [])])]
+    .filter((id) => id && id !== userRef.id);
+  const existing = new Set();
+  if (ids.length > 0) {
+    const snapshots = await db.getAll(...ids.map((id) => users.doc(id)), { fieldMask: [] });
+    for (const snapshot of snapshots) {
+      if (snapshot.exists) existing.add(snapshot.id);
+    }
+  }
+
+  const writer = db.bulkWriter();
+  const writes = [];
+  const edge = { followedAt: admin.firestore.FieldValue.serverTimestamp(), migrated: true };
+  const touched = new Set([userRef.id]);
+  for (const id of data.followers || []) {
+    if (!existing.has(id)) continue;
+    writes.push(writer.set(userRef.collection("followers").doc(id), edge, { merge: true }));
+    writes.push(writer.set(users.doc(id).collection("following").doc(userRef.id), edge, { merge: true }));
+    touched.add(id);
+  }
+  for (const id of data.following || []) {
+    if (!existing.has(id)) continue;
+    writes.push(writer.set(userRef.collection("following").doc(id), edge, { merge: true }));
+    writes.push(writer.set(users.doc(id).collection("followers").doc(userRef.id), edge, { merge: true }));
+    touched.add(id);
+  }
+  writes.push(writer.update(userRef, {
+    followers: admin.firestore.FieldValue.delete(),
+    following: admin.firestore.FieldValue.delete(),
+  }));
+  // Taken before the writes are sent, so a failed one is never left unhandled
+  const written = Promise.all(writes);
+  await writer.close();
+  await written;
+  console.log("Migrated follow graph of user:", userRef.id);
+  return touched;
+}
+
+// Sets both follow counters of a user from its edge documents
+async function recountFollows(db, userId) {
+  const userRef = db.collection("users").doc(userId);
+  const [followers, following] = await Promise.all([
+    userRef.collection("followers").count().get(),
+    userRef.collection("following").count().get(),
+  ]);
+  await userRef.update({
+    followersCount: followers.data().count,
+    followingCount: following.data().count,
+  });
+}
+
+// Recounts these many users at a time
+const RECOUNT_CONCURRENCY = 10;
+
+// Pages through every user document and brings older ones up to date: writes
+// the search fields where they are missing or stale, and moves follower
+// arrays into edge documents. onUserWrite only does this when a document is
+// written, so users who never change their profile would stay invisible to
+// search, and their follows would be missing on the other user's side. Run
+// before shipping a client that only reads the edges. Safe to run again:
+// current documents are not written.
+async function backfillUsers(db, pageSize = 300) {
+  const query = db
+    .collection("users")
+    .orderBy(admin.firestore.FieldPath.documentId())
+    .limit(pageSize);
+
+  const writer = db.bulkWriter();
+  const touched = new Set();
+  let indexed = 0;
+  let migrated = 0;
+  let failed = 0;
+  let last = null;
+  for (;;) {
+    const page = await (last ? query.startAfter(last) : query).get();
+    for (const doc of page.docs) {
+      if (hasFollowArrays(doc.data())) {
+        try {
+          for (const id of await migrateFollowArrays(db, doc.ref, doc.data())) touched.add(id);
+          migrated++;
+        } catch (error) {
+          failed++;
+          console.error("Error migrating follow graph of user:", doc.id, error.message);
+        }
+      }
+      const update = searchFieldUpdate(doc.data());
+      if (!update) continue;
+      // Fails if the user was deleted after it was read
+      writer
+        .update(doc.ref, update)
+        .then(() => indexed++)
+        .catch((error) => {
+          failed++;
+          console.error("Error indexing user:", doc.id, error.message);
+        });
+    }
+    if (page.size < pageSize) break;
+    last = page.docs[page.size - 1];
+  }
+  await writer.close();
+
+  // Migrated edges are not counted by onFollowerCreate; count both sides once all edges are in
+  const recount = [...touched];
+  for (let i = 0; i < recount.length; i += RECOUNT_CONCURRENCY) {
+    await Promise.all(recount.slice(i, i + RECOUNT_CONCURRENCY).map((id) =>
+      recountFollows(db, id).catch((error) => {
+        failed++;
+        console.error("Error recounting follows of user:", id, error.message);
+      })
+    ));
+  }
+  console.log("Backfilled", indexed, "search indexes and", migrated, "follow graphs", {
+    recounted: recount.length,
+    failed,
+  });
+  return { indexed, migrated, failed };
+}
+
+module.exports = {
+  normalizeName,
+  prefixTokens,
+  searchFieldUpdate,
+  hasFollowArrays,
+  migrateFollowArrays,
+  recountFollows,
+  backfillUsers,
+};